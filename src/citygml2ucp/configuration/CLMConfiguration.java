@@ -1,8 +1,13 @@
 package citygml2ucp.configuration;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import citygml2ucp.tools.NetCDFBlockWriter;
 import citygml2ucp.tools.NetCDFData;
 import citygml2ucp.tools.WritableAxis;
 import citygml2ucp.tools.WritableDimension;
@@ -10,7 +15,8 @@ import citygml2ucp.tools.WritableField;
 import citygml2ucp.tools.WritableFieldDouble;
 import citygml2ucp.tools.WritableRotatedPole;
 import ucar.ma2.Index;
-import ucar.unidata.geoloc.LatLonPoint;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFileWriter;
 
 /**
  * A class that sets up basic configuration properties for a CCLM run.
@@ -49,6 +55,12 @@ public class CLMConfiguration extends NetCDFData {
 	 */
 	protected final WritableField lat, lon;
 
+	/**
+	 * Calculation of {@link #lat} and {@link #lon}, {@code null} until started
+	 * by {@link #startTrueLatLon(Executor)}
+	 */
+	private CompletableFuture<Void> trueLatLon;
+
 	/**
 	 * Initialize with default values of CLM
 	 * 
@@ -121,8 +133,6 @@ public class CLMConfiguration extends NetCDFData {
 		lat = new WritableFieldDouble("lat", dimlist, "latitude", "latitude",
 				"degrees north", "");
 		addToWrite(lat);
-
-		calculateTrueLatLon();
 	}
 
 	/**
@@ -139,19 +149,82 @@ public class CLMConfiguration extends NetCDFData {
 	}
 
 	/**
-	 * Calculate the true non-rotated coordinates.
+	 * Start the calculation of the true non-rotated coordinates in the
+	 * background, one task for every row.
+	 * 
+	 * They are not needed before the output, so reading the input does not have
+	 * to wait for them. If the calculation has not been started, they are
+	 * calculated when they are needed first.
+	 * 
+	 * @param exec Executor of the rows
+	 */
+	public synchronized void startTrueLatLon(Executor exec) {
+		if (trueLatLon != null) {
+			return;
+		}
+		CompletableFuture<?>[] rows = new CompletableFuture<?>[meridionalAxis.getLength()];
+		for (int j = 0; j < rows.length; j++) {
+			int row = j;
+			rows[j] = CompletableFuture.runAsync(() -> calculateTrueLatLon(row), exec);
+		}
+		trueLatLon = CompletableFuture.allOf(rows);
+	}
+
+	/**
+	 * Calculate the true non-rotated coordinates of a row with one call of the
+	 * projection for all its points.
+	 * 
+	 * @param j Latitude index in rotated system
+	 */
+	private void calculateTrueLatLon(int j) {
+		int ie = zonalAxis.getLength();
+		double[][] rotated = new double[2][ie];
+		double[][] latLon = new double[2][ie];
+		Arrays.fill(rotated[1], meridionalAxis.getValue(j));
+		for (int i = 0; i < ie; i++) {
+			rotated[0][i] = zonalAxis.getValue(i);
+		}
+		// latLon is { lat[], lon[] }
+		rotpol.projToLatLon(rotated, latLon);
+		System.arraycopy(latLon[0], 0, lat.getData(), lat.offset(j, 0), ie);
+		System.arraycopy(latLon[1], 0, lon.getData(), lon.offset(j, 0), ie);
+	}
+
+	/**
+	 * Wait until the true non-rotated coordinates have been calculated,
+	 * calculate them in this thread if not started.
 	 */
-	protected void calculateTrueLatLon() {
-		Index ilat = lat.getIndex();
-		Index ilon = lon.getIndex();
-		for (int i = 0; i < zonalAxis.getLength(); i++) {
-			for (int j = 0; j < meridionalAxis.getLength(); j++) {
-				LatLonPoint llp = rotpol.projToLatLon(zonalAxis.getValue(i),
-						meridionalAxis.getValue(j));
-				lat.set(ilat.set(j, i), llp.getLatitude());
-				lon.set(ilon.set(j, i), llp.getLongitude());
+	protected void waitForTrueLatLon() {
+		CompletableFuture<Void> calculation;
+		synchronized (this) {
+			if (trueLatLon == null) {
+				startTrueLatLon(Runnable::run);
 			}
+			calculation = trueLatLon;
 		}
+		calculation.join();
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetcdfFileWriter ncfile)
+			throws IOException, InvalidRangeException {
+		waitForTrueLatLon();
+		super.writeToNetCDFfile(ncfile);
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetCDFBlockWriter writer)
+			throws IOException, InvalidRangeException {
+		waitForTrueLatLon();
+		super.writeToNetCDFfile(writer);
+	}
+
+	public WritableAxis getMeridionalAxis() {
+		return meridionalAxis;
+	}
+
+	public WritableAxis getZonalAxis() {
+		return zonalAxis;
 	}
 
 	/**
@@ -309,6 +382,7 @@ public class CLMConfiguration extends NetCDFData {
 		if (i >= getIe_tot() || i < 0) {
 			throw new IllegalArgumentException("i out of range.");
 		}
+		waitForTrueLatLon();
 		Index ind = lat.getIndex();
 		return lat.get(ind.set(j, i));
 	}
@@ -331,6 +405,7 @@ public class CLMConfiguration extends NetCDFData {
 		if (i >= getIe_tot() || i < 0) {
 			throw new IllegalArgumentException("i out of range");
 		}
+		waitForTrueLatLon();
 		Index ind = lon.getIndex();
 		return lon.get(ind.set(j, i));
 	}
@@ -3,14 +3,24 @@
  */
 package citygml2ucp.configuration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import citygml2ucp.tools.GridField;
+import citygml2ucp.tools.SparseWritableField;
 import citygml2ucp.tools.WritableAxis;
 import citygml2ucp.tools.WritableDimension;
 import citygml2ucp.tools.WritableField;
 import citygml2ucp.tools.WritableFieldDouble;
 import citygml2ucp.tools.WritableFieldInt;
+import ucar.ma2.DataType;
 import ucar.ma2.Index;
 import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.ProjectionPoint;
@@ -53,22 +63,22 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	/**
 	 * Probability to have a building on a certain height level
 	 */
-	protected WritableField fr_roof;
+	protected GridField fr_roof;
 
 	/**
 	 * Probability to have a building in a grid cell
 	 */
-	protected WritableField fr_build;
+	protected GridField fr_build;
 
 	/**
 	 * Street width
 	 */
-	protected WritableField w_street;
+	protected GridField w_street;
 
 	/**
 	 * Fraction of buildings whose height was reduced to the maximum
 	 */
-	protected WritableField fr_roof_adj;
+	protected GridField fr_roof_adj;
 	
 	/**
 	 * Urban fraction of a grid cell
@@ -78,22 +88,33 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	/**
 	 * Width of a building
 	 */
-	protected WritableField w_build;
+	protected GridField w_build;
 
 	/**
 	 * Fraction of street direction in a grid cell
 	 */
-	protected WritableField fr_udir;
+	protected GridField fr_udir;
 
 	/**
 	 * Fraction of an urban class in a grid cell
 	 */
-	protected WritableField fr_uclass;
+	protected GridField fr_uclass;
+
+	/**
+	 * Sum of areas in a street (used for normalization, not written).
+	 */
+	private GridField streetSurfaceSum;
+
+	/**
+	 * Store the urban fields only for grid cells with buildings?
+	 */
+	private final boolean sparse;
 
 	/**
-	 * Sum of areas in a street (used for normalization).
+	 * Number of grid cells processed at once by
+	 * {@link #postProcess(boolean, double, int)} if the urban fields are sparse
 	 */
-	private double streetSurfaceSum[][][][];
+	private static final int SPARSE_CHUNK_SIZE = 1024;
 
 	private void initalizeUrbanFields(int n_uclass, double[] ang_udir,
 			int[] ke_uhl, double[] height) {
@@ -178,13 +199,13 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 		ldim.add(0, this.n_uclass);
 		// ldim is now nucdim, latdim, londim
 
-		this.fr_uclass = new WritableFieldDouble("FR_UCLASS", ldim,
+		this.fr_uclass = newUrbanField("FR_UCLASS", ldim,
 				"urban_classes_fraction", "urban classes fraction", "1",
 				"rotated_pole");
 		addToWrite(this.fr_uclass);
 
 		// building fraction
-		this.fr_build = new WritableFieldDouble("FR_BUILD", ldim,
+		this.fr_build = newUrbanField("FR_BUILD", ldim,
 				"building_fraction",
 				"fraction of building surface", "1",
 				"rotated_pole");
@@ -193,45 +214,61 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 		ldim.add(1, this.ang_udir);
 		// ldim is now nucdim, angle_udir, latdim, londim
 
-		this.fr_udir = new WritableFieldDouble("FR_UDIR", ldim,
+		this.fr_udir = newUrbanField("FR_UDIR", ldim,
 				"fraction_street_direction", "fraction of street directions", "1", "rotated_pole");
 		addToWrite(fr_udir);
 
 		// street width
-		this.w_street = new WritableFieldDouble("W_STREET", ldim,
+		this.w_street = newUrbanField("W_STREET", ldim,
 				"street_width", "street width", "m",
 				"rotated_pole");
 		addToWrite(this.w_street);
 
 		// building width
-		this.w_build = new WritableFieldDouble("W_BUILD", ldim,
+		this.w_build = newUrbanField("W_BUILD", ldim,
 				"building_width", "building width", "m",
 				"rotated_pole");
 		addToWrite(this.w_build);
 		
 		// adjusted roof fraction
-		this.fr_roof_adj = new WritableFieldDouble("FR_ROOF_AD", ldim,
+		this.fr_roof_adj = newUrbanField("FR_ROOF_AD", ldim,
 				"fr_roof_adjusted", "fraction roof adjusted", "1",
 				"rotated_pole");
 		addToWrite(this.fr_roof_adj);
 
+		this.streetSurfaceSum = newUrbanField("street_surface_sum", ldim, "", "", "m2", "");
+
 
 		ldim.add(2, this.height1);
 		// dims is now nucdim, angle_udir, zdim, latdim, londim
 
 		// building probability
-		this.fr_roof = new WritableFieldDouble("FR_ROOF", ldim,
+		this.fr_roof = newUrbanField("FR_ROOF", ldim,
 				"building_height_fraction",
 				"building height fraction", "1",
 				"rotated_pole");
 		addToWrite(this.fr_roof);
 
-		streetSurfaceSum = new double[getNuclasses()][getNstreedir()][getJe_tot()][getIe_tot()];
+	}
 
+	/**
+	 * Create a field of urban data with latitude and longitude as last
+	 * dimensions, which is sparse if {@link #sparse}.
+	 */
+	private GridField newUrbanField(String name, List<WritableDimension> dimlist,
+			String standard_name, String long_name, String units,
+			String grid_mapping) {
+		if (sparse) {
+			return new SparseWritableField(name, dimlist, standard_name, long_name, units,
+					grid_mapping, DataType.DOUBLE);
+		}
+		return new WritableFieldDouble(name, dimlist, standard_name, long_name, units,
+				grid_mapping);
 	}
 
 	public UrbanCLMConfiguration() {
 		super();
+		this.sparse = false;
 		initalizeUrbanFields(1, new double[] { -45., 0., 45., 90., },
 				new int[] { 10 }, new double[] { 0., 3., 7., 10., 13., 19.,
 						25., 30., 38., 45. });
@@ -241,8 +278,23 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 			double dlon, double startlat_tot, double startlon_tot, int ie_tot,
 			int je_tot, int nuclasses, double[] streetdir, int[] ke_urban,
 			double[] height) {
+		this(pollat, pollon, dlat, dlon, startlat_tot, startlon_tot, ie_tot,
+				je_tot, nuclasses, streetdir, ke_urban, height, false);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param sparse store the urban fields only for grid cells with buildings
+	 *               (for large domains with few urban cells)?
+	 */
+	public UrbanCLMConfiguration(double pollat, double pollon, double dlat,
+			double dlon, double startlat_tot, double startlon_tot, int ie_tot,
+			int je_tot, int nuclasses, double[] streetdir, int[] ke_urban,
+			double[] height, boolean sparse) {
 		super(pollat, pollon, dlat, dlon, startlat_tot, startlon_tot, ie_tot,
 				je_tot);
+		this.sparse = sparse;
 		initalizeUrbanFields(nuclasses, streetdir, ke_urban, height);
 	}
 
@@ -288,6 +340,16 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 		fr_urb.set(ind.set(lat, lon), value);
 	}
 
+	/**
+	 * Get the backing array of the urban fraction for fast access, the value of
+	 * a grid cell is at {@code lat * getIe_tot() + lon}.
+	 * 
+	 * @return Backing array
+	 */
+	public double[] getUrbanFracData() {
+		return fr_urb.getData();
+	}
+
 	public double getUrbanFrac(int lat, int lon) {
 		Index ind = fr_urb.getIndex();
 		return fr_urb.get(ind.set(lat, lon));
@@ -307,12 +369,17 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	 * Only one urban class so far, so set the fraction of this one class to 1.
 	 */
 	public void fakeUrbanClassFrac() {
+		int[] cells = getUrbanCells();
+		forUrbanCells(cells, 0, getNUrbanCells(cells), this::fakeUrbanClassFrac);
+		setSparseDefault(fr_uclass, 1.);
+	}
+
+	private void fakeUrbanClassFrac(int lat, int lon) {
+		double[] frUclass = fr_uclass.getCellData(lat, lon);
+		int cell = fr_uclass.getCellOffset(lat, lon);
+		int stride = fr_uclass.getCellStride();
 		for (int uc = 0; uc < getNuclasses(); uc++) {
-			for (int lat = 0; lat < getJe_tot(); lat++) {
-				for (int lon = 0; lon < getIe_tot(); lon++) {
-					setUrbanClassFrac(uc, lat, lon, 1.);
-				}
-			}
+			frUclass[cell + uc * stride] = 1.;
 		}
 	}
 
@@ -320,24 +387,27 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	 * Calculate the building width from A_B/A_S = B/W .
 	 */
 	public void calculateBuildingWidth() {
-		Index index = w_build.getIndex();
+		int[] cells = getUrbanCells();
+		forUrbanCells(cells, 0, getNUrbanCells(cells), this::calculateBuildingWidth);
+	}
+
+	private void calculateBuildingWidth(int lat, int lon) {
+		double[] wBuild = w_build.getCellData(lat, lon);
+		double[] wStreet = w_street.getCellData(lat, lon);
+		double[] frBuild = fr_build.getCellData(lat, lon);
+		double[] frUclass = fr_uclass.getCellData(lat, lon);
+		double frUrb = fr_urb.getData()[fr_urb.offset(lat, lon)];
+		// all urban fields have the same layout of a cell
+		int cell = fr_build.getCellOffset(lat, lon);
+		int stride = fr_build.getCellStride();
 		for (int uc = 0; uc < getNuclasses(); uc++) {
+			double bfrac = frBuild[cell + uc * stride];
 			for (int dir = 0; dir < getNstreedir(); dir++) {
-				for (int lat = 0; lat < getJe_tot(); lat++) {
-					for (int lon = 0; lon < getIe_tot(); lon++) {
-						index.set(uc, dir, lat, lon);
-						double bfrac = getBuildingFrac(uc, lat, lon);
-						if (bfrac > 1.e-12) {
-							w_build
-									.set(index, bfrac
-											/ (getUrbanFrac(lat, lon)
-													* getUrbanClassFrac(uc,
-															lat, lon) - bfrac)
-											* getStreetWidth(uc, dir, lat, lon));
-						} else {
-							w_build.set(index, 0.);
-						}
-					}
+				int i = cell + (uc * getNstreedir() + dir) * stride;
+				if (bfrac > 1.e-12) {
+					wBuild[i] = bfrac / (frUrb * frUclass[cell + uc * stride] - bfrac) * wStreet[i];
+				} else {
+					wBuild[i] = 0.;
 				}
 			}
 		}
@@ -501,13 +571,17 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	 * Normalize the area of buildings to the cell size.
 	 */
 	public void normBuildingFrac() {
+		int[] cells = getUrbanCells();
+		forUrbanCells(cells, 0, getNUrbanCells(cells), this::normBuildingFrac);
+	}
+
+	private void normBuildingFrac(int lat, int lon) {
+		double[] frBuild = fr_build.getCellData(lat, lon);
+		int cell = fr_build.getCellOffset(lat, lon);
+		int stride = fr_build.getCellStride();
+		double area = getArea(lat);
 		for (int uc = 0; uc < getNuclasses(); uc++) {
-			for (int lat = 0; lat < getJe_tot(); lat++) {
-				for (int lon = 0; lon < getIe_tot(); lon++) {
-					setBuildingFrac(uc, lat, lon, getBuildingFrac(uc, lat, lon)
-							/ getArea(lat));
-				}
-			}
+			frBuild[cell + uc * stride] = frBuild[cell + uc * stride] / area;
 		}
 	}
 
@@ -516,16 +590,20 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	 * surface.
 	 */
 	public void normStreetWidth() {
+		int[] cells = getUrbanCells();
+		forUrbanCells(cells, 0, getNUrbanCells(cells), this::normStreetWidth);
+	}
+
+	private void normStreetWidth(int lat, int lon) {
+		double[] wStreet = w_street.getCellData(lat, lon);
+		double[] surfaceSum = streetSurfaceSum.getCellData(lat, lon);
+		int cell = w_street.getCellOffset(lat, lon);
+		int stride = w_street.getCellStride();
 		for (int uc = 0; uc < getNuclasses(); uc++) {
 			for (int dir = 0; dir < getNstreedir(); dir++) {
-				for (int lat = 0; lat < getJe_tot(); lat++) {
-					for (int lon = 0; lon < getIe_tot(); lon++) {
-						if (streetSurfaceSum[uc][dir][lat][lon] > 0) {
-							setStreetWidth(uc, dir, lat, lon, getStreetWidth(
-									uc, dir, lat, lon)
-									/ streetSurfaceSum[uc][dir][lat][lon]);
-						}
-					}
+				int i = cell + (uc * getNstreedir() + dir) * stride;
+				if (surfaceSum[i] > 0) {
+					wStreet[i] = wStreet[i] / surfaceSum[i];
 				}
 			}
 		}
@@ -545,7 +623,9 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 		if (lon >= getIe_tot() || lon < 0) {
 			throw new IllegalArgumentException("lon not in range");
 		}
-		streetSurfaceSum[uc][dir][lat][lon] += value;
+		Index ind = streetSurfaceSum.getIndex();
+		ind.set(uc, dir, lat, lon);
+		streetSurfaceSum.set(ind, streetSurfaceSum.get(ind) + value);
 	}
 
 	public void incStreetWidth(int uc, int dir, int lat, int lon, double value) {
@@ -621,50 +701,62 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	 * the fraction of the street direction in a grid cell.
 	 */
 	public void normBuildProbAndCalcStreetFraction() {
+		int[] cells = getUrbanCells();
+		double[] sumStreet = new double[getNstreedir()];
+		forUrbanCells(cells, 0, getNUrbanCells(cells),
+				(lat, lon) -> normBuildProbAndCalcStreetFraction(lat, lon, sumStreet));
+	}
+
+	/**
+	 * @param sumStreet Array of length {@link #getNstreedir()} for intermediate
+	 *                  results
+	 */
+	private void normBuildProbAndCalcStreetFraction(int lat, int lon, double[] sumStreet) {
+		double[] frRoof = fr_roof.getCellData(lat, lon);
+		double[] frRoofAdj = fr_roof_adj.getCellData(lat, lon);
+		double[] frUdir = fr_udir.getCellData(lat, lon);
+		int cell = fr_roof.getCellOffset(lat, lon);
+		int stride = fr_roof.getCellStride();
 		for (int uc = 0; uc < getNuclasses(); uc++) {
-			for (int lat = 0; lat < getJe_tot(); lat++) {
-				for (int lon = 0; lon < getIe_tot(); lon++) {
-					double sum = 0.;
-					double[] sumStreet = new double[getNstreedir()];
-					for (int sd = 0; sd < getNstreedir(); sd++) {
-						sumStreet[sd] = 0.;
-						for (int lev = 0; lev < getKe_urban(uc); lev++) {
-							sumStreet[sd] += getBuildProb(uc, sd, lev, lat, lon);
-						}
-						sum += sumStreet[sd];
-					}
-					if (sum > 1e-14) {
-						sum = 1. / sum;
-						for (int sd = 0; sd < getNstreedir(); sd++) {
-							if (sumStreet[sd] > 1.e-12) {
-								for (int lev = 0; lev < getKe_urban(uc); lev++) {
-									setBuildProb(uc, sd, lev, lat, lon,
-											getBuildProb(uc, sd, lev, lat, lon)
-													/ sumStreet[sd]);
-								}
-								setBuildProbAdjusted(uc, sd, lat, lon,
-										getBuildProbAdjusted(uc, sd, lat, lon)
-												/ sumStreet[sd]);
-							} else {
-								for (int lev = 0; lev < getKe_urban(uc); lev++) {
-									setBuildProb(uc, sd, lev, lat, lon, 0.);
-								}
-							}
-
-							for (int lev = getKe_urban(uc); lev < ke_urbanmax; lev++) {
-								setBuildProb(uc, sd, lev, lat, lon, 0.);
-							}
-
-							setStreetFrac(uc, sd, lat, lon, sum * sumStreet[sd]);
+			int ke = getKe_urban(uc);
+			double sum = 0.;
+			for (int sd = 0; sd < getNstreedir(); sd++) {
+				int roofOffset = cell + (uc * getNstreedir() + sd) * ke_urbanmax * stride;
+				sumStreet[sd] = 0.;
+				for (int lev = 0; lev < ke; lev++) {
+					sumStreet[sd] += frRoof[roofOffset + lev * stride];
+				}
+				sum += sumStreet[sd];
+			}
+			if (sum > 1e-14) {
+				sum = 1. / sum;
+				for (int sd = 0; sd < getNstreedir(); sd++) {
+					int roofOffset = cell + (uc * getNstreedir() + sd) * ke_urbanmax * stride;
+					int dirOffset = cell + (uc * getNstreedir() + sd) * stride;
+					if (sumStreet[sd] > 1.e-12) {
+						for (int lev = 0; lev < ke; lev++) {
+							frRoof[roofOffset + lev * stride] = frRoof[roofOffset + lev * stride] / sumStreet[sd];
 						}
+						frRoofAdj[dirOffset] = frRoofAdj[dirOffset] / sumStreet[sd];
 					} else {
-						for (int sd = 0; sd < getNstreedir(); sd++) {
-							for (int lev = 0; lev < ke_urbanmax; lev++) {
-								setBuildProb(uc, sd, lev, lat, lon, 0.);
-							}
-							setStreetFrac(uc, sd, lat, lon, 0.);
+						for (int lev = 0; lev < ke; lev++) {
+							frRoof[roofOffset + lev * stride] = 0.;
 						}
 					}
+
+					for (int lev = ke; lev < ke_urbanmax; lev++) {
+						frRoof[roofOffset + lev * stride] = 0.;
+					}
+
+					frUdir[dirOffset] = sum * sumStreet[sd];
+				}
+			} else {
+				for (int sd = 0; sd < getNstreedir(); sd++) {
+					int roofOffset = cell + (uc * getNstreedir() + sd) * ke_urbanmax * stride;
+					for (int lev = 0; lev < ke_urbanmax; lev++) {
+						frRoof[roofOffset + lev * stride] = 0.;
+					}
+					frUdir[cell + (uc * getNstreedir() + sd) * stride] = 0.;
 				}
 			}
 		}
@@ -677,55 +769,199 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 	 * Building fraction > 1.e-12  and urban fraction > frUrbLimit define an urban cell.
 	 */
 	public void defineMissingData(double frUrbLimit) {
+		int[] cells = getUrbanCells();
+		forUrbanCells(cells, 0, getNUrbanCells(cells), (lat, lon) -> defineMissingData(frUrbLimit, lat, lon));
+		defineMissingDataSparse(cells);
+	}
+
+	private void defineMissingData(double frUrbLimit, int lat, int lon) {
+		double[] frRoof = fr_roof.getCellData(lat, lon);
+		double[] frUdir = fr_udir.getCellData(lat, lon);
+		double[] wStreet = w_street.getCellData(lat, lon);
+		double[] wBuild = w_build.getCellData(lat, lon);
+		double[] frBuild = fr_build.getCellData(lat, lon);
+		double[] frUclass = fr_uclass.getCellData(lat, lon);
+		double[] frUrb = fr_urb.getData();
+		int urbOffset = fr_urb.offset(lat, lon);
+		int cell = fr_build.getCellOffset(lat, lon);
+		int stride = fr_build.getCellStride();
 		for (int uc = 0; uc < getNuclasses(); uc++) {
-			for (int lat = 0; lat < getJe_tot(); lat++) {
-				for (int lon = 0; lon < getIe_tot(); lon++) {
-					boolean setUndef = true;
-					// output if one street direction is used
-					for (int id = 0; id < getNstreedir(); id++) {
-						if (getStreetFrac(uc, id, lat, lon) > 1.e-10) {
-							setUndef = false;
-							break;
-						}
-					}
-					// no output if one street direction has strange values
-					for (int id = 0; id < getNstreedir(); id++) {
-						if (getStreetWidth(uc, id, lat, lon) < 0.) {
-							setUndef = true;
-							break;
-						}
-						if (getBuildingWidth(uc, id, lat, lon) < 0.) {
-							setUndef = true;
-							break;
-						}
-					}
-					setUndef = (getBuildingFrac(uc, lat, lon) < 1.e-12)
-							|| (getBuildingFrac(uc, lat, lon) > 1.)
-							|| (getUrbanFrac(lat, lon) < frUrbLimit)
-							|| setUndef;
-					if (setUndef) {
-						for (int sd = 0; sd < getNstreedir(); sd++) {
-							setBuildingWidth(uc, sd, lat, lon,
-									w_build.missingValue);
-							setStreetFrac(uc, sd, lat, lon,
-									fr_udir.missingValue);
-							setStreetWidth(uc, sd, lat, lon,
-									fr_udir.missingValue);
-							setUrbanClassFrac(uc, lat, lon,
-									fr_uclass.missingValue);
-							for (int h = 0; h < ke_urbanmax; h++) {
-								setBuildProb(uc, sd, h, lat, lon,
-										fr_roof.missingValue);
-							}
-						}
-						setUrbanFrac(lat, lon, fr_urb.missingValue);
-						setBuildingFrac(uc, lat, lon, fr_build.missingValue);
+			int ucOffset = cell + uc * stride;
+			boolean setUndef = true;
+			// output if one street direction is used
+			for (int id = 0; id < getNstreedir(); id++) {
+				if (frUdir[cell + (uc * getNstreedir() + id) * stride] > 1.e-10) {
+					setUndef = false;
+					break;
+				}
+			}
+			// no output if one street direction has strange values
+			for (int id = 0; id < getNstreedir(); id++) {
+				int dirOffset = cell + (uc * getNstreedir() + id) * stride;
+				if (wStreet[dirOffset] < 0.) {
+					setUndef = true;
+					break;
+				}
+				if (wBuild[dirOffset] < 0.) {
+					setUndef = true;
+					break;
+				}
+			}
+			double bfrac = frBuild[ucOffset];
+			setUndef = (bfrac < 1.e-12)
+					|| (bfrac > 1.)
+					|| (frUrb[urbOffset] < frUrbLimit)
+					|| setUndef;
+			if (setUndef) {
+				for (int sd = 0; sd < getNstreedir(); sd++) {
+					int dirOffset = cell + (uc * getNstreedir() + sd) * stride;
+					wBuild[dirOffset] = w_build.getMissingValue();
+					frUdir[dirOffset] = fr_udir.getMissingValue();
+					wStreet[dirOffset] = fr_udir.getMissingValue();
+					frUclass[ucOffset] = fr_uclass.getMissingValue();
+					int roofOffset = cell + (uc * getNstreedir() + sd) * ke_urbanmax * stride;
+					for (int h = 0; h < ke_urbanmax; h++) {
+						frRoof[roofOffset + h * stride] = fr_roof.getMissingValue();
 					}
 				}
+				frUrb[urbOffset] = fr_urb.missingValue;
+				frBuild[ucOffset] = fr_build.getMissingValue();
 			}
 		}
 	}
 
+	/**
+	 * Set the missing values of the cells without buildings if the urban fields
+	 * are sparse, which would all be undefined by
+	 * {@link #defineMissingData(double, int, int)}.
+	 * 
+	 * @param cells Cells with buildings, see {@link #getUrbanCells()}
+	 */
+	private void defineMissingDataSparse(int[] cells) {
+		if (!sparse) {
+			return;
+		}
+		setSparseDefault(w_build, w_build.getMissingValue());
+		setSparseDefault(fr_udir, fr_udir.getMissingValue());
+		setSparseDefault(w_street, fr_udir.getMissingValue());
+		setSparseDefault(fr_uclass, fr_uclass.getMissingValue());
+		setSparseDefault(fr_roof, fr_roof.getMissingValue());
+		setSparseDefault(fr_build, fr_build.getMissingValue());
+		double[] frUrb = fr_urb.getData();
+		int k = 0;
+		for (int key = 0; key < frUrb.length; key++) {
+			if (k < cells.length && cells[k] == key) {
+				k++;
+			} else {
+				frUrb[key] = fr_urb.missingValue;
+			}
+		}
+	}
+
+	/**
+	 * Apply all calculations after the summation of the buildings in one pass:
+	 * {@link #fakeUrbanClassFrac()}, {@link #normBuildingFrac()},
+	 * {@link #normBuildProbAndCalcStreetFraction()}, {@link #normStreetWidth()},
+	 * {@link #calculateBuildingWidth()} and optionally
+	 * {@link #defineMissingData(double)}.
+	 * 
+	 * Every grid cell is processed completely before the next one, so its data
+	 * stays in the cache. The cells are independent and processed in parallel in
+	 * chunks of a latitude row (or of a number of cells with buildings if the
+	 * urban fields are sparse). The result is the same as calling the methods one
+	 * after the other.
+	 * 
+	 * @param consistentOutput apply {@link #defineMissingData(double)}?
+	 * @param frUrbLimit       Limit of the urban fraction for
+	 *                         {@link #defineMissingData(double)}
+	 * @param nThreads         Number of threads
+	 * @throws InterruptedException Interrupted while waiting for the threads
+	 * @throws ExecutionException   Error in the calculation of a chunk
+	 */
+	public void postProcess(boolean consistentOutput, double frUrbLimit, int nThreads)
+			throws InterruptedException, ExecutionException {
+		int[] cells = getUrbanCells();
+		int nCells = getNUrbanCells(cells);
+		int chunkSize = sparse ? SPARSE_CHUNK_SIZE : getIe_tot();
+		ExecutorService exec = Executors.newFixedThreadPool(nThreads);
+		try {
+			List<Future<?>> chunks = new ArrayList<>();
+			for (int from = 0; from < nCells; from += chunkSize) {
+				int chunkFrom = from;
+				int chunkTo = Math.min(from + chunkSize, nCells);
+				chunks.add(exec.submit(() -> {
+					double[] sumStreet = new double[getNstreedir()];
+					forUrbanCells(cells, chunkFrom, chunkTo, (lat, lon) -> {
+						fakeUrbanClassFrac(lat, lon);
+						normBuildingFrac(lat, lon);
+						normBuildProbAndCalcStreetFraction(lat, lon, sumStreet);
+						normStreetWidth(lat, lon);
+						calculateBuildingWidth(lat, lon);
+						if (consistentOutput) {
+							defineMissingData(frUrbLimit, lat, lon);
+						}
+					});
+				}));
+			}
+			for (Future<?> chunk : chunks) {
+				chunk.get();
+			}
+		} finally {
+			exec.shutdown();
+		}
+		setSparseDefault(fr_uclass, 1.);
+		if (consistentOutput) {
+			defineMissingDataSparse(cells);
+		}
+	}
+
+	/**
+	 * Operation on a grid cell
+	 */
+	private interface CellKernel {
+		void apply(int lat, int lon);
+	}
+
+	/**
+	 * Get the grid cells which may contain buildings.
+	 * 
+	 * @return Sorted cells as {@code lat * ie_tot + lon} if the urban fields are
+	 *         sparse, {@code null} for all cells otherwise
+	 */
+	private int[] getUrbanCells() {
+		if (!sparse) {
+			return null;
+		}
+		return Stream.of(fr_roof, fr_build, w_street, fr_roof_adj, w_build, fr_udir, fr_uclass, streetSurfaceSum)
+				.flatMapToInt((field) -> Arrays.stream(((SparseWritableField) field).getCells()))
+				.distinct().sorted().toArray();
+	}
+
+	private int getNUrbanCells(int[] cells) {
+		return cells == null ? getJe_tot() * getIe_tot() : cells.length;
+	}
+
+	/**
+	 * Apply an operation to the grid cells {@code from} to {@code to}
+	 * (exclusive) of {@code cells}, see {@link #getUrbanCells()}.
+	 */
+	private void forUrbanCells(int[] cells, int from, int to, CellKernel kernel) {
+		for (int i = from; i < to; i++) {
+			int key = cells == null ? i : cells[i];
+			kernel.apply(key / getIe_tot(), key % getIe_tot());
+		}
+	}
+
+	/**
+	 * Set the value of grid cells without buildings if the urban fields are
+	 * sparse.
+	 */
+	private void setSparseDefault(GridField field, double value) {
+		if (sparse) {
+			((SparseWritableField) field).setDefaultValue(value);
+		}
+	}
+
 	public int getKe_urbanMax() {
 		return ke_urbanmax;
 	}
@@ -756,6 +992,10 @@ public class UrbanCLMConfiguration extends CLMConfiguration {
 		ke_uhl.setInt(ind.set(uc), ke);
 	}
 
+	public WritableAxis getHeightAxis() {
+		return height1;
+	}
+
 	public int getHeightIndex(double height) {
 		return this.height1.getIndexOf(height);
 	}
@@ -1,22 +1,18 @@
 package citygml2ucp.convert;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
-import java.util.List; //import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.citygml4j.CityGMLContext;
 import org.citygml4j.builder.jaxb.CityGMLBuilder;
@@ -27,12 +23,19 @@ import org.citygml4j.xml.io.CityGMLInputFactory;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
 import org.proj4.PJ;
+import org.proj4.PJException;
 
 import citygml2ucp.configuration.UrbanCLMConfiguration;
+import citygml2ucp.convert.CityGMLConverterData.RecordedBuilding;
+import citygml2ucp.tools.GMLInput;
+import citygml2ucp.tools.GMLInputPipeline;
+import citygml2ucp.tools.LazyPolygon3dWithVisibilities;
+import citygml2ucp.tools.NetCDFBlockWriter;
+import citygml2ucp.tools.NetCDFChunking;
+import citygml2ucp.tools.ProgressReporter;
+import citygml2ucp.tools.StaxBuildingReader;
 import ucar.nc2.Attribute;
-import ucar.nc2.NetcdfFile;
 import ucar.nc2.NetcdfFileWriter;
-import ucar.nc2.Variable;
 import ucar.nc2.units.DateFormatter;
 
 /**
@@ -52,46 +55,108 @@ public class CityGMLConverter {
 	 *            Urban configuration to store the data to
 	 * @throws IOException
 	 *             File from conf not found
+	 * @throws InterruptedException
+	 *             Interrupted while reading
+	 * @throws PJException
+	 *             Error in coordinate transformation of regridded raster
 	 */
 	private static void readImpSurfaceFile(CityGMLConverterConf conf,
-			UrbanCLMConfiguration uclm) throws IOException {
-		if (conf.impSurfFileNC) {
-			NetcdfFile ncfile = NetcdfFile.open(conf.impSurfFile);
-			Variable v = ncfile.findVariable(conf.variableImpSurf);
-			double[][] data = (double[][]) v.read().copyToNDJavaArray();
-			ncfile.close();
-			for (int lat = 0; lat < conf.je_tot; lat++) {
-				for (int lon = 0; lon < conf.ie_tot; lon++) {
-					uclm.setUrbanFrac(lat, lon, data[lat][lon]);
-				}
+			UrbanCLMConfiguration uclm) throws IOException, InterruptedException, PJException {
+		new ImperviousSurfaceReader(conf, uclm).read();
+	}
+	
+	/**
+	 * Create an output file in the format of the configuration.
+	 * 
+	 * @param conf
+	 *            Configuration of this run
+	 * @param file
+	 *            Name of the file
+	 * @return New NetCDF file in define mode
+	 * @throws IOException
+	 */
+	private static NetcdfFileWriter createNetCDFfile(CityGMLConverterConf conf, String file)
+			throws IOException {
+		if (conf.netcdf4Output) {
+			return NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf4, file,
+					new NetCDFChunking(conf.chunkLat, conf.chunkLon, conf.deflateLevel, conf.shuffle));
+		}
+		return NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file);
+	}
+
+	/**
+	 * Read the buildings of a CityGML file.
+	 * 
+	 * @param file
+	 *            CityGML document
+	 * @param stream
+	 *            Decompressed content of the document, closed afterwards
+	 * @param conf
+	 *            Configuration of this run
+	 * @param in
+	 *            citygml4j input factory
+	 * @param cgml
+	 *            City data to add the buildings to
+	 * @param stats
+	 *            Statistics of this run
+	 * @return file read without errors?
+	 * @throws Exception
+	 */
+	private static boolean readFile(GMLInput file, InputStream stream, CityGMLConverterConf conf,
+			CityGMLInputFactory in, CityGMLConverterData cgml, CityGMLConverterStats stats) throws Exception {
+		boolean success = true;
+		if (conf.staxReader) {
+			StaxBuildingReader reader;
+			try {
+				reader = new StaxBuildingReader(stream, file.toString());
+			} catch (XMLStreamException e) {
+				stats.addReadError(file.toString());
+				System.err.println("Cannot read " + file);
+				stream.close();
+				return false;
 			}
-		} else {
-			Scanner scanner = new Scanner(new File(conf.impSurfFile));
-			for (int i = 0; i < conf.skipLines; i++) {
-				if (scanner.hasNextLine()) {
-					scanner.nextLine();
-				} else {
-					scanner.close();
-					throw new IOException(
-							"Impervious Surface has less lines then skipped at beginning.");
+			// buildings are read one by one, so keep those read before an error
+			try {
+				while (reader.hasNext()) {
+					cgml.addBuilding(reader.next());
 				}
+			} catch (XMLStreamException e) {
+				stats.addReadError(file.toString());
+				System.err.println("Cannot read " + file);
+				success = false;
 			}
-			while (scanner.hasNextLine()) {
-				Scanner lScanner = new Scanner(scanner.nextLine());
-				lScanner.useDelimiter(conf.sepString);
-				List<Double> values = new LinkedList<>();
-				while (lScanner.hasNext()) {
-					values.add(Double.parseDouble(lScanner.next()));
-				}
-				int lat = uclm.getRLatIndex(values.get(conf.rowLat - 1));
-				int lon = uclm.getRLonIndex(values.get(conf.rowLon - 1));
-				uclm.setUrbanFrac(lat, lon, values.get(conf.rowImpSurf - 1));
-				lScanner.close();
+
+			reader.close();
+			return success;
+		}
+
+		CityGMLReader reader = in.createCityGMLReader(file.toString(), stream);
+		while (reader.hasNext()) {
+			CityGML citygml;
+			// try to read feature and skip if failed
+			try{
+				citygml = reader.nextFeature();
+			} catch ( CityGMLReadException e ) {
+				stats.addReadError(file.toString());;
+				System.err.println("Cannot read " + file);
+				success = false;
+				break;
+			}
+
+			if (citygml.getCityGMLClass() == CityGMLClass.CITY_MODEL) {
+				CityModel cityModel = (CityModel)citygml;
+
+				cgml.addBuildings(cityModel);
+				// everything that is need is now in cgmlct, rest can be deleted
+				cityModel = null;
 			}
-			scanner.close();
 		}
+
+		reader.close();
+		stream.close();
+		return success;
 	}
-	
+
 	/**
 	 * Main routine of the converter.
 	 * 
@@ -121,7 +186,16 @@ public class CityGMLConverter {
 		UrbanCLMConfiguration uclm = new UrbanCLMConfiguration(conf.pollat,
 				conf.pollon, conf.dlat, conf.dlon, conf.startlat_tot,
 				conf.startlon_tot, conf.ie_tot, conf.je_tot, conf.n_uclass,
-				conf.angle_udir, conf.ke_uhl, conf.hhl_uhl);
+				conf.angle_udir, conf.ke_uhl, conf.hhl_uhl, conf.sparseGrid);
+		// true coordinates are only needed for the output, so they are calculated
+		// in the background, the submitted rows are finished after shutdown
+		ExecutorService latLonExec = Executors.newFixedThreadPool(conf.nThreads, (r) -> {
+			Thread thread = new Thread(r, "true-lat-lon");
+			thread.setDaemon(true);
+			return thread;
+		});
+		uclm.startTrueLatLon(latLonExec);
+		latLonExec.shutdown();
 
 		PJ sourcePJ = new PJ(conf.proj4code);
 		PJ targetPJ = new PJ("+init=epsg:4326 +latlong");
@@ -131,63 +205,64 @@ public class CityGMLConverter {
 		CityGMLBuilder builder = ctx.createCityGMLBuilder();
 		CityGMLInputFactory in = builder.createCityGMLInputFactory();
 
-		List<Path> paths = new ArrayList<>();
-		Path folder = Path.of(conf.inputGMLFolder);
-		if (Files.isDirectory(folder)) {
-			Files.walk(Paths.get(conf.inputGMLFolder))
-					.filter((p) -> p.toFile().getAbsolutePath().toLowerCase().endsWith("gml")
-							|| p.toFile().getAbsolutePath().toLowerCase().endsWith("xml"))
-					.forEach((p) -> paths.add(p));
-			if (paths.isEmpty()) {
-				System.err.println("No gml or xml files in " + conf.inputGMLFolder + " found");
-				System.err.println("Stopping now");
-				System.exit(10);
-			}
-		} else {
-			paths.add(folder);
+		List<GMLInput> paths = GMLInput.find(Path.of(conf.inputGMLFolder));
+		if (paths.isEmpty()) {
+			System.err.println("No gml or xml files in " + conf.inputGMLFolder + " found");
+			System.err.println("Stopping now");
+			System.exit(10);
 		}
 		
 		CityGMLConverterStats stats = new CityGMLConverterStats(conf);
+		if (conf.heightDistribution) {
+			stats.recordHeightDistribution(uclm);
+		}
 
 		readImpSurfaceFile(conf, uclm);
 
-		// lock for parallel execution
-		Lock lock = new ReentrantLock();
-		
-		CityGMLConverterData cgml = new CityGMLConverterData(uclm, conf, sourcePJ, targetPJ, stats, df, lock);
+		CityGMLConverterData cgml = new CityGMLConverterData(uclm, conf, sourcePJ, targetPJ, stats, df);
 		System.out.println("Reading files");
 
 		int pathsLengthLength = (int)(Math.log10(paths.size())+1);
+		List<CityGMLGeometryCache> caches = new ArrayList<>();
+		if (conf.geometryCache) {
+			for (GMLInput file : paths) {
+				caches.add(new CityGMLGeometryCache(file, Path.of(conf.cacheFolder), conf.staxReader));
+			}
+		}
+		// files are read and decompressed ahead of parsing, and hashed for the
+		// geometry cache, files probably read from the cache are not read ahead
+		GMLInputPipeline pipeline = new GMLInputPipeline(paths, conf.nThreadsInput, conf.geometryCache,
+				conf.geometryCache ? (index) -> caches.get(index).isCandidate() : null);
 		// here loop over citygmlfiles
 		for (int i = 0; i < paths.size(); i++) {
 
-			Path file = paths.get(i);
+			GMLInput file = paths.get(i);
 
 			System.out.println(" File " + String.format("%" + pathsLengthLength + "d",i + 1) + "/"
 					+ paths.size() + ": " + file);
 
-			CityGMLReader reader = in.createCityGMLReader(file.toFile());
-			while (reader.hasNext()) {
-				CityGML citygml;
-				// try to read feature and skip if failed
-				try{
-					citygml = reader.nextFeature();
-				} catch ( CityGMLReadException e ) {
-					stats.addReadError(file.toString());;
-					System.err.println("Cannot read " + file);
-					break;
+			if (conf.geometryCache) {
+				CityGMLGeometryCache cache = caches.get(i);
+				if (cache.load(cgml)) {
+					System.out.println("  Buildings read from geometry cache");
+					pipeline.skip(i);
+					continue;
 				}
-
-				if (citygml.getCityGMLClass() == CityGMLClass.CITY_MODEL) {
-					CityModel cityModel = (CityModel)citygml;
-
-					cgml.addBuildings(cityModel);
-					// everything that is need is now in cgmlct, rest can be deleted
-					cityModel = null;
+				// cache all buildings, the domain may change
+				cgml.startRecording();
+				boolean success = readFile(file, pipeline.open(i), conf, in, cgml, stats);
+				List<RecordedBuilding> fileBuildings = cgml.stopRecording();
+				// do not cache incompletely read files
+				if (success) {
+					cache.write(fileBuildings, pipeline.getContentHash(i));
 				}
+			} else {
+				readFile(file, pipeline.open(i), conf, in, cgml, stats);
 			}
-
-			reader.close();
+		}
+		pipeline.close();
+		if (stats.getOutOfDomain() > 0) {
+			System.out.println("Skipped " + stats.getOutOfDomain() + " building(s) outside of the domain");
 		}
 		
 		int nChunks;
@@ -208,52 +283,93 @@ public class CityGMLConverter {
 					nThreadsLocal + " thread(s)");
 		}
 
+		long visibilityStartTime = new Date().getTime();
 		ExecutorService exec = Executors.newFixedThreadPool(nThreadsLocal);
 		
+		ProgressReporter progress = new ProgressReporter("Visibility", cgml.buildings.size(), "buildings",
+				"wall pairs", conf.progressInterval, conf.progressJson);
+		List<Future<?>> chunks = new ArrayList<>();
 		for (int indexChunk = 0; indexChunk < nChunks; indexChunk++) {
-			exec.execute(new CityGMLVisibilityRunnable(cgml, indexChunk * conf.nBuildingsPerThread,
+			chunks.add(exec.submit(new CityGMLVisibilityRunnable(cgml, indexChunk * conf.nBuildingsPerThread,
 					Math.min((indexChunk + 1) * nBuildingsPerThreadLocal, cgml.buildings.size()), indexChunk,
-					nChunks, conf));
+					nChunks, conf, progress)));
+		}
+
+		// all visibility chunks have to be finished
+		for (Future<?> chunk : chunks) {
+			chunk.get();
+		}
+		progress.close();
+		long streetStartTime = 0;
+		long streetEndTime = 0;
+		if (!conf.saveMemory) {
+			// street properties with the same threads after the visibility calculation
+			streetStartTime = new Date().getTime();
+			cgml.calcStreetProperties(exec, nBuildingsPerThreadLocal);
+			streetEndTime = new Date().getTime();
 		}
-				
 		exec.shutdown();
 		exec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-		
-		if (!conf.saveMemory) cgml.calcStreetProperties();
-		
-		System.out.println("Largest Building: " + df.format(Collections.max(stats.getBuildingHeights())) + " m");
-		System.out.println("Smallest Building: " + df.format(Collections.min(stats.getBuildingHeights())) + " m");
-
-		uclm.fakeUrbanClassFrac();
-		uclm.normBuildingFrac();
-		uclm.normBuildProbAndCalcStreetFraction();
-		uclm.normStreetWidth();
-		uclm.calculateBuildingWidth();
-		if (conf.consistentOutput) {
-			uclm.defineMissingData(conf.frUrbLimit);
+		long visibilityEndTime = new Date().getTime();
+		cgml.addGridSums();
+
+		if (cgml.metrics != null) {
+			cgml.metrics.setVisibilitySeconds((visibilityEndTime - visibilityStartTime) / 1000.);
+			cgml.metrics.writeJson(Path.of(conf.metricsFile), cgml.buildings.size());
+			stats.setVisibilityMetrics(cgml.metrics, cgml.buildings.size());
 		}
+
+		if (LazyPolygon3dWithVisibilities.getNCreated() > 0) {
+			System.out.println("Polygons from geometry cache never used: "
+					+ LazyPolygon3dWithVisibilities.getNNotMaterialised() + "/"
+					+ LazyPolygon3dWithVisibilities.getNCreated());
+		}
+		
+		System.out.println("Largest Building: " + df.format(stats.getBuildingHeights().getMax()) + " m");
+		System.out.println("Smallest Building: " + df.format(stats.getBuildingHeights().getMin()) + " m");
+		System.out.println("Mean Building height: " + df.format(stats.getBuildingHeights().getMean()) + " m");
+		System.out.println("Building height quantiles (10 %, 50 %, 90 %): "
+				+ df.format(stats.getBuildingHeights().getQuantile(0.1)) + " m, "
+				+ df.format(stats.getBuildingHeights().getQuantile(0.5)) + " m, "
+				+ df.format(stats.getBuildingHeights().getQuantile(0.9)) + " m");
+
+		uclm.postProcess(conf.consistentOutput, conf.frUrbLimit, conf.nThreads);
 		
 		long lasted = new Date().getTime() - startTime;
 		System.out.printf("Urban parameter calculation took %.1f minutes%n",
 				lasted / 1000. / 60.);
+		System.out.printf(" Visibility calculation and averaging to grid cells: %.1f minutes (%.0f %%)%n",
+				(visibilityEndTime - visibilityStartTime) / 1000. / 60.,
+				100. * (visibilityEndTime - visibilityStartTime) / lasted);
+		if (!conf.saveMemory) {
+			System.out.printf("  of which averaging to grid cells: %.1f minutes (%.0f %%)%n",
+					(streetEndTime - streetStartTime) / 1000. / 60.,
+					100. * (streetEndTime - streetStartTime) / lasted);
+		}
 		
 		System.out.println("Creating output");
 		// text logs
 		stats.writeLogs();
 		
-		// building statistics
-		NetcdfFileWriter ncfile = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, conf.statsFile);
-		stats.toNetCDFfile(ncfile);
-		ncfile.close();
-		
-		// main output
-		ncfile = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, conf.outputFile);
-		// Add additional parameters to NetCDF file.
-		DateFormatter dfDate = new DateFormatter();
-		ncfile.addGroupAttribute(null, new Attribute("creation_date", dfDate.toDateTimeString(new Date())));
-		conf.toNetCDFfile(ncfile);
-		uclm.toNetCDFfile(ncfile);
-		ncfile.close();
+		// fields are prepared for output in parallel to writing
+		ExecutorService outputExec = Executors.newFixedThreadPool(conf.nThreads);
+		try {
+			// building statistics
+			NetcdfFileWriter ncfile = createNetCDFfile(conf, conf.statsFile);
+			stats.toNetCDFfile(new NetCDFBlockWriter(ncfile, outputExec, conf.nThreads));
+			ncfile.close();
+
+			// main output
+			ncfile = createNetCDFfile(conf, conf.outputFile);
+			// Add additional parameters to NetCDF file.
+			DateFormatter dfDate = new DateFormatter();
+			ncfile.addGroupAttribute(null, new Attribute("creation_date", dfDate.toDateTimeString(new Date())));
+			conf.toNetCDFfile(ncfile);
+			uclm.toNetCDFfile(new NetCDFBlockWriter(ncfile, outputExec, conf.nThreads));
+			ncfile.close();
+		} finally {
+			outputExec.shutdown();
+		}
 
 		System.out.println("Finished");
 	}
@@ -106,6 +106,21 @@ public class CityGMLConverterConf {
 	private static final double hhl_uhlDefault[] = { 0., 5., 10., 15., 20., 25.,
 			30., 35., 40., 45. };
 
+	/**
+	 * Store the urban fields only for grid cells with buildings (for large
+	 * domains with few urban cells)?
+	 */
+	boolean sparseGrid;
+	private static boolean sparseGridDefault = false;
+
+	/**
+	 * Accumulate fields written as integer or float in double precision?
+	 * Otherwise, they are accumulated in their output type, which needs less
+	 * memory. Sparse fields always accumulate in double precision.
+	 */
+	boolean doubleAccumulators;
+	private static boolean doubleAccumulatorsDefault = false;
+
 	/**
 	 * Input coordinate system for proj4 transformation
 	 */
@@ -144,12 +159,25 @@ public class CityGMLConverterConf {
 	int nThreads;
 	private static int nThreadsDefault = 1;
 
+	/**
+	 * Number of CityGML files read and decompressed in parallel ahead of parsing
+	 */
+	int nThreadsInput;
+	private static int nThreadsInputDefault = 2;
+
 	/**
 	 * Number of buildings per thread
 	 */
 	int nBuildingsPerThread;
 	private static int nBuildingsPerThreadDefault = 1000;
 
+	/**
+	 * Sum grid cell values in a fixed order, so results do not depend on the
+	 * number of threads and their timing?
+	 */
+	boolean deterministic;
+	private static boolean deterministicDefault = false;
+
 	
 	/**
 	 * Folder/File of the CityGML data set
@@ -157,6 +185,25 @@ public class CityGMLConverterConf {
 	String inputGMLFolder;
 	private static String inputGMLFolderDefault = "/home/schubert/Documents/workspace/datasets/gml/";
 
+	/**
+	 * Read the CityGML files with the lightweight StAX reader instead of
+	 * citygml4j?
+	 */
+	boolean staxReader;
+	private static boolean staxReaderDefault = false;
+
+	/**
+	 * Cache the buildings of every CityGML file in a binary file for later runs?
+	 */
+	boolean geometryCache;
+	private static boolean geometryCacheDefault = false;
+
+	/**
+	 * Folder of the geometry cache (relative to outputFolder)
+	 */
+	String cacheFolder;
+	private static String cacheFolderDefault = "cache/";
+
 	/**
 	 * Output folder
 	 */
@@ -175,6 +222,39 @@ public class CityGMLConverterConf {
 	String statsFile;
 	private static String statsFileDefault = "stats.nc";
 
+	/**
+	 * Write the number of buildings per urban height level of every grid cell
+	 * to statsFile?
+	 */
+	boolean heightDistribution;
+	private static boolean heightDistributionDefault = false;
+
+	/**
+	 * Write the output files in NetCDF-4 format with chunking and compression
+	 * (needs the NetCDF-C library)?
+	 */
+	boolean netcdf4Output;
+	private static boolean netcdf4OutputDefault = false;
+
+	/**
+	 * Chunk lengths in latitude and longitude direction of NetCDF-4 output
+	 */
+	int chunkLat, chunkLon;
+	private static int chunkLatDefault = 64;
+	private static int chunkLonDefault = 64;
+
+	/**
+	 * Deflate level (0: no compression, 1-9) of NetCDF-4 output
+	 */
+	int deflateLevel;
+	private static int deflateLevelDefault = 1;
+
+	/**
+	 * Use shuffle filter before compression of NetCDF-4 output?
+	 */
+	boolean shuffle;
+	private static boolean shuffleDefault = true;
+
 	/**
 	 * ASCII file which includes the impervious surface
 	 */
@@ -183,6 +263,33 @@ public class CityGMLConverterConf {
 
 	boolean impSurfFileNC;
 	private static boolean impSurfFileNCDefault = true;
+
+	/**
+	 * Regrid the impervious surface from a raster in another coordinate system
+	 * in impSurfFile (NetCDF, variableImpSurf)?
+	 */
+	boolean impSurfRegrid;
+	private static boolean impSurfRegridDefault = false;
+
+	/**
+	 * Coordinate system of the impervious surface raster for proj4, by default
+	 * proj4code
+	 */
+	String impSurfProj4code;
+
+	/**
+	 * Coordinate variables of the cell centres of the impervious surface raster
+	 */
+	String impSurfXVariable, impSurfYVariable;
+	private static String impSurfXVariableDefault = "x";
+	private static String impSurfYVariableDefault = "y";
+
+	/**
+	 * Number of samples per raster cell and direction to determine the overlap
+	 * of raster cells with grid cells
+	 */
+	int impSurfSubsamples;
+	private static int impSurfSubsamplesDefault = 2;
 	
 	String logFile;
 	private static String logFileDefault = "run.log";
@@ -238,6 +345,32 @@ public class CityGMLConverterConf {
 	boolean debugOutput;
 	private static boolean debugOutputDefault = false;
 
+	/**
+	 * Interval of the progress reports of the visibility calculation in seconds
+	 * (no reports if 0)
+	 */
+	double progressInterval;
+	private static double progressIntervalDefault = 10.;
+
+	/**
+	 * Report the progress as JSON lines?
+	 */
+	boolean progressJson;
+	private static boolean progressJsonDefault = false;
+
+	/**
+	 * Count the work of the visibility calculation and write it to the log and
+	 * metricsFile?
+	 */
+	boolean metrics;
+	private static boolean metricsDefault = false;
+
+	/**
+	 * JSON file of the visibility metrics
+	 */
+	String metricsFile;
+	private static String metricsFileDefault = "metrics.json";
+
 	boolean saveMemory;
 	private static boolean saveMemoryDefault = false;
 
@@ -299,6 +432,8 @@ public class CityGMLConverterConf {
 			angle_udir = prop.getDoubleArray("angle_udir", angle_udirDefault);
 			ke_uhl = prop.getIntArray("ke_uhl", ke_uhlDefault);
 			hhl_uhl = prop.getDoubleArray("hhl_uhl", hhl_uhlDefault);
+			sparseGrid = prop.getBoolean("sparseGrid", sparseGridDefault);
+			doubleAccumulators = prop.getBoolean("doubleAccumulators", doubleAccumulatorsDefault);
 
 			proj4code = prop.getString("proj4code", proj4codeDefault);
 
@@ -313,11 +448,18 @@ public class CityGMLConverterConf {
 
 			nThreads = prop.getInt("nThreads", nThreadsDefault);
 			nBuildingsPerThread = prop.getInt("nBuildingsPerThread", nBuildingsPerThreadDefault);
+			nThreadsInput = prop.getInt("nThreadsInput", nThreadsInputDefault);
+			deterministic = prop.getBoolean("deterministic", deterministicDefault);
 			
 			inputGMLFolder = prop.getString("inputGMLFolder",
 					inputGMLFolderDefault);
+			staxReader = prop.getBoolean("staxReader", staxReaderDefault);
 			outputFolder = prop.getString("outputFolder", outputFolderDefault);
 
+			geometryCache = prop.getBoolean("geometryCache", geometryCacheDefault);
+			cacheFolder = prop.getString("cacheFolder", cacheFolderDefault);
+			cacheFolder = outputFolder + cacheFolder;
+
 			logFile = prop.getString("logFile", logFileDefault);
 			logFile = outputFolder + logFile;
 
@@ -326,9 +468,24 @@ public class CityGMLConverterConf {
 
 			statsFile = prop.getString("statsFile", statsFileDefault);
 			statsFile = outputFolder + statsFile;
+			heightDistribution = prop.getBoolean("heightDistribution", heightDistributionDefault);
+
+			netcdf4Output = prop.getBoolean("netcdf4Output", netcdf4OutputDefault);
+			chunkLat = prop.getInt("chunkLat", chunkLatDefault);
+			chunkLon = prop.getInt("chunkLon", chunkLonDefault);
+			deflateLevel = prop.getInt("deflateLevel", deflateLevelDefault);
+			shuffle = prop.getBoolean("shuffle", shuffleDefault);
 
 			impSurfFileNC = prop.getBoolean("impSurfFileNC", impSurfFileNCDefault);
 			impSurfFile = prop.getString("impSurfFile", impSurfFileDefault);
+			impSurfRegrid = prop.getBoolean("impSurfRegrid", impSurfRegridDefault);
+			impSurfProj4code = prop.getString("impSurfProj4code", proj4code);
+			impSurfXVariable = prop.getString("impSurfXVariable", impSurfXVariableDefault);
+			impSurfYVariable = prop.getString("impSurfYVariable", impSurfYVariableDefault);
+			impSurfSubsamples = prop.getInt("impSurfSubsamples", impSurfSubsamplesDefault);
+			if (impSurfSubsamples < 1) {
+				throw new IllegalArgumentException("impSurfSubsamples must be positive");
+			}
 
 			rowLat = prop.getInt("rowLat", rowLatDefault);
 			rowLon = prop.getInt("rowLon", rowLonDefault);
@@ -349,6 +506,11 @@ public class CityGMLConverterConf {
 
 			debugOutput = prop.getBoolean("debugOutput",
 					debugOutputDefault);
+			progressInterval = prop.getDouble("progressInterval", progressIntervalDefault);
+			progressJson = prop.getBoolean("progressJson", progressJsonDefault);
+			metrics = prop.getBoolean("metrics", metricsDefault);
+			metricsFile = prop.getString("metricsFile", metricsFileDefault);
+			metricsFile = outputFolder + metricsFile;
 
 			saveMemory = prop.getBoolean("saveMemory",
 					saveMemoryDefault);
@@ -2,10 +2,14 @@ package citygml2ucp.convert;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.vecmath.Point3d;
 
@@ -31,19 +35,23 @@ import org.citygml4j.util.bbox.BoundingBoxOptions;
 import org.proj4.PJ;
 import org.proj4.PJException;
 
+import citygml2ucp.configuration.CLMConfiguration;
 import citygml2ucp.configuration.UrbanCLMConfiguration;
+import citygml2ucp.convert.CityGMLConverterStats.Diagnostic;
+import citygml2ucp.tools.BuildingGeometry;
 import citygml2ucp.tools.CityGMLTools;
 import citygml2ucp.tools.Polygon3d;
-import citygml2ucp.tools.Polygon3dVisibility;
 import citygml2ucp.tools.Polygon3dWithVisibilities;
 import citygml2ucp.tools.SimpleBuilding;
+import citygml2ucp.tools.VisibilityQueue;
 import ucar.unidata.geoloc.ProjectionPoint;
 
 /**
  * Calculation of the main properties of a city element.
  * 
  * This can be used as a single thread. All necessary locking is done in this
- * class, no external locks are required.
+ * class, no external locks are required. Grid cell sums are collected per
+ * thread and added to the urban configuration by {@link #addGridSums()}.
  * 
  * @author Sebastian Schubert
  * 
@@ -52,6 +60,13 @@ class CityGMLConverterData {
 
 	private final DecimalFormat df;
 
+	/**
+	 * Copy of df for every thread, DecimalFormat is not thread-safe
+	 */
+	private final ThreadLocal<DecimalFormat> debugFormat;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
 	/**
 	 * Number of urban class when no urban classes are considered
 	 */
@@ -78,7 +93,61 @@ class CityGMLConverterData {
 
 	final List<SimpleBuilding> buildings;
 
-	private final Lock lock;
+	/**
+	 * Counters of the visibility calculation, {@code null} if
+	 * {@code conf.metrics} is not set
+	 */
+	final VisibilityMetrics metrics;
+
+	/**
+	 * Grid sums of all threads, see {@link #addGridSums()}
+	 */
+	private final List<CityGMLGridSums> gridSums = new ArrayList<>();
+
+	/**
+	 * Grid sums of the current thread
+	 */
+	private final ThreadLocal<CityGMLGridSums> threadGridSums;
+
+	/**
+	 * Visibility arrays of the current thread, reused for all walls
+	 */
+	private static final ThreadLocal<VisibilityQueue> visibilityQueue = ThreadLocal
+			.withInitial(VisibilityQueue::new);
+
+	/**
+	 * Grid sums of fixed work units of {@code conf.nBuildingsPerThread}
+	 * buildings, used instead of the ones of the threads if
+	 * {@code conf.deterministic}
+	 */
+	private final Map<Integer, CityGMLGridSums> unitGridSums = new ConcurrentHashMap<>();
+
+	/**
+	 * Domain in rotated coordinates including the visibility halo
+	 */
+	private final double minRLat, maxRLat, minRLon, maxRLon;
+
+	/**
+	 * Building added while recording together with its diagnostics
+	 */
+	static class RecordedBuilding {
+		final SimpleBuilding building;
+		/**
+		 * Diagnostics of the building as { kind, building id, surface id }
+		 */
+		final List<Object[]> diagnostics;
+
+		RecordedBuilding(SimpleBuilding building, List<Object[]> diagnostics) {
+			this.building = building;
+			this.diagnostics = diagnostics;
+		}
+	}
+
+	/**
+	 * Buildings added since {@link #startRecording()}, {@code null} if not
+	 * recording
+	 */
+	private List<RecordedBuilding> recordedBuildings;
 
 	/**
 	 * Constructor.
@@ -95,7 +164,7 @@ class CityGMLConverterData {
 	 * @throws PJException
 	 */
 	public CityGMLConverterData(UrbanCLMConfiguration uclm, CityGMLConverterConf conf, PJ sourcePJ, PJ targetPJ,
-			CityGMLConverterStats stats, DecimalFormat df, Lock lock) {
+			CityGMLConverterStats stats, DecimalFormat df) {
 		this.uclm = uclm;
 		this.conf = conf;
 		this.sourcePJ = sourcePJ;
@@ -105,8 +174,77 @@ class CityGMLConverterData {
 		this.buildings = new ArrayList<SimpleBuilding>();
 
 		this.df = df;
-		
-		this.lock = lock;
+		this.debugFormat = ThreadLocal.withInitial(() -> (DecimalFormat) df.clone());
+		this.metrics = conf.metrics ? new VisibilityMetrics() : null;
+
+		this.threadGridSums = ThreadLocal.withInitial(() -> {
+			CityGMLGridSums sums = new CityGMLGridSums(uclm);
+			synchronized (gridSums) {
+				gridSums.add(sums);
+			}
+			return sums;
+		});
+
+		// buildings outside of the domain can still hide or receive walls of
+		// buildings inside, so keep the ones within the visibility radii
+		double haloLat = Math.toDegrees(
+				(conf.maxbuild_radius + conf.maxcheck_radius) / (CLMConfiguration.RADIUS_EARTH * 1000.));
+		this.minRLat = uclm.getRLat(0) - 0.5 * uclm.getDlat() - haloLat;
+		this.maxRLat = uclm.getRLat(uclm.getJe_tot() - 1) + 0.5 * uclm.getDlat() + haloLat;
+		// zonal extent of the halo largest at the highest latitude
+		double maxAbsRLat = Math.min(Math.max(Math.abs(minRLat), Math.abs(maxRLat)), 89.);
+		double haloLon = haloLat / Math.cos(Math.toRadians(maxAbsRLat));
+		this.minRLon = uclm.getRLon(0) - 0.5 * uclm.getDlon() - haloLon;
+		this.maxRLon = uclm.getRLon(uclm.getIe_tot() - 1) + 0.5 * uclm.getDlon() + haloLon;
+	}
+
+	/**
+	 * Start recording the added buildings and their diagnostics, including the
+	 * ones outside of the domain, e.g., to store them in the geometry cache.
+	 * 
+	 * While recording, the geometry of all buildings is created, but only the
+	 * diagnostics of buildings inside of the domain or the halo are added to the
+	 * log, as without recording.
+	 */
+	public void startRecording() {
+		recordedBuildings = new ArrayList<>();
+		stats.startRecording();
+	}
+
+	/**
+	 * Stop recording the added buildings.
+	 * 
+	 * @return Buildings added since {@link #startRecording()} with their
+	 *         diagnostics
+	 */
+	public List<RecordedBuilding> stopRecording() {
+		List<RecordedBuilding> recorded = recordedBuildings;
+		recordedBuildings = null;
+		stats.stopRecording();
+		return recorded;
+	}
+
+	/**
+	 * Is a location inside of the domain including the visibility halo?
+	 * 
+	 * @param rotatedCoordinates Location in rotated coordinates
+	 * @return inside of domain or halo?
+	 */
+	private boolean isInDomainOrHalo(ProjectionPoint rotatedCoordinates) {
+		double rlat = rotatedCoordinates.getY();
+		double rlon = rotatedCoordinates.getX();
+		return rlat >= minRLat && rlat <= maxRLat && rlon >= minRLon && rlon <= maxRLon;
+	}
+
+	/**
+	 * Get the location of a building from its bounding box.
+	 * 
+	 * @param lc Lower corner of the bounding box
+	 * @param uc Upper corner of the bounding box
+	 * @return Centre and lower position of the building
+	 */
+	private static Point3d getLocation(double[] lc, double[] uc) {
+		return new Point3d(0.5 * (lc[0] + uc[0]), 0.5 * (lc[1] + uc[1]), lc[2]);
 	}
 
 	public void addBuildings(CityModel base) throws PJException {
@@ -140,15 +278,18 @@ class CityGMLConverterData {
 				} else {
 					boundingShape = building.getBoundedBy();
 				}
-				List<Double> lc = boundingShape.getEnvelope().getLowerCorner().getValue();
-				List<Double> uc = boundingShape.getEnvelope().getUpperCorner().getValue();
-				double xpos = 0.5 * (lc.get(0) + uc.get(0));
-				double ypos = 0.5 * (lc.get(1) + uc.get(1));
-
-				ProjectionPoint rotatedCoordinates;
-				// keep centre and lower position for transformation
-				Point3d location = new Point3d(xpos, ypos, lc.get(2));
-				rotatedCoordinates = calcLatLonIndices(location);
+				List<Double> lcList = boundingShape.getEnvelope().getLowerCorner().getValue();
+				List<Double> ucList = boundingShape.getEnvelope().getUpperCorner().getValue();
+				double[] lc = { lcList.get(0), lcList.get(1), lcList.get(2) };
+				double[] uc = { ucList.get(0), ucList.get(1), ucList.get(2) };
+
+				// skip buildings far away from the domain before their geometry is created
+				Point3d location = getLocation(lc, uc);
+				ProjectionPoint rotatedCoordinates = calcLatLonIndices(location);
+				if (recordedBuildings == null && !isInDomainOrHalo(rotatedCoordinates)) {
+					stats.addOutOfDomain();
+					continue;
+				}
 
 				// analyse semantic elements of building: get walls, roofs and
 				// ground surfaces
@@ -203,56 +344,300 @@ class CityGMLConverterData {
 							.println("Building " + building.getId() + " has no boundary surfaces nor building parts nor Lod1Solid.");
 				}
 
-				double height;
-				if (!buildingRoofs.isEmpty()) {
-					// calculate weighted mean of heights of roofs and use it as
-					// height information
-					double sumRoofArea = 0.;
-					height = 0.;
-
-					for (Polygon3d roof : buildingRoofs) {
-						double roofArea = roof.getXYProjectedArea();
-						sumRoofArea += roofArea;
-						// height of roof - ground height
-						height += roofArea * (roof.getHeight() - lc.get(2));
-					}
-					// normalize
-					height /= sumRoofArea;
-				} else {
-					stats.addNoRoof(buildingId);
-					// maximum height = height of bounding of bounding box
-					height = uc.get(2) - lc.get(2);
+				addBuilding(buildingName, buildingId, lc, uc, location, rotatedCoordinates, buildingWalls,
+						buildingRoofs, buildingGrounds);
+			}
+		}
+	}
+
+	/**
+	 * Add a building read by {@link citygml2ucp.tools.StaxBuildingReader}.
+	 * 
+	 * The same surfaces as in {@link #addBuildings(CityModel)} are considered.
+	 * 
+	 * @param building Geometry of the building
+	 * @throws PJException
+	 */
+	public void addBuilding(BuildingGeometry building) throws PJException {
+		String buildingName = building.name;
+		String buildingId = building.id;
+		if (conf.debugOutput) {
+			if (buildingName == "") {
+				System.out.println("  Found building with ID " + buildingId);
+			} else {
+				System.out.println("  Found building with ID " + buildingId + " and name " + buildingName);
+			}
+		}
+
+		// skip buildings far away from the domain before their geometry is created
+		double[] lc = building.getLowerCorner();
+		double[] uc = building.getUpperCorner();
+		Point3d location = getLocation(lc, uc);
+		ProjectionPoint rotatedCoordinates = calcLatLonIndices(location);
+		if (recordedBuildings == null && !isInDomainOrHalo(rotatedCoordinates)) {
+			stats.addOutOfDomain();
+			return;
+		}
+
+		List<Polygon3dWithVisibilities> buildingWalls = new ArrayList<>();
+		List<Polygon3dWithVisibilities> buildingRoofs = new ArrayList<>();
+		List<Polygon3d> buildingGrounds = new ArrayList<>();
+		if (!building.boundarySurfaces.isEmpty()) {
+			if (!building.parts.isEmpty()) {
+				stats.addIgnoredBuildingPart(buildingId);
+			}
+			for (BuildingGeometry.Surface surface : building.boundarySurfaces) {
+				addSurfaceToPolygons(surface, buildingId, buildingWalls, buildingRoofs, buildingGrounds);
+			}
+		} else if (building.lod1Solid != null) {
+			// add building parts
+			for (BuildingGeometry part : building.parts) {
+				addLod1DSolidToPolygons(part.lod1Solid, buildingId, buildingWalls, buildingRoofs, buildingGrounds);
+			}
+			// add main part
+			addLod1DSolidToPolygons(building.lod1Solid, buildingId, buildingWalls, buildingRoofs, buildingGrounds);
+		} else if (!building.parts.isEmpty()) {
+			for (BuildingGeometry part : building.parts) {
+				for (BuildingGeometry.Surface surface : part.boundarySurfaces) {
+					addSurfaceToPolygons(surface, buildingId, buildingWalls, buildingRoofs, buildingGrounds);
 				}
+			}
+		} else {
+			System.out.println("Building " + buildingId + " has no boundary surfaces nor building parts nor Lod1Solid.");
+		}
 
-				double area = 0.;
-				if (!buildingGrounds.isEmpty()) {
-					for (Polygon3d ground : buildingGrounds) {
-						area += ground.getXYProjectedArea();
-					}
-					// area in km2
-					area /= 1000000.;
-				} else {
-					stats.addNoGround(buildingId);
+		addBuilding(buildingName, buildingId, lc, uc, location, rotatedCoordinates, buildingWalls, buildingRoofs,
+				buildingGrounds);
+	}
+
+	/**
+	 * Add a building with its surfaces to the list of buildings and the statistics.
+	 * 
+	 * @param buildingName       Name of the building
+	 * @param buildingId         ID of the building
+	 * @param lc                 Lower corner of the bounding box
+	 * @param uc                 Upper corner of the bounding box
+	 * @param location           Centre and lower position of the building
+	 * @param rotatedCoordinates Location in rotated coordinates
+	 * @param buildingWalls      Walls of the building
+	 * @param buildingRoofs      Roofs of the building
+	 * @param buildingGrounds    Grounds of the building
+	 */
+	private void addBuilding(String buildingName, String buildingId, double[] lc, double[] uc, Point3d location,
+			ProjectionPoint rotatedCoordinates, List<Polygon3dWithVisibilities> buildingWalls,
+			List<Polygon3dWithVisibilities> buildingRoofs, List<Polygon3d> buildingGrounds) {
+		double height;
+		if (!buildingRoofs.isEmpty()) {
+			// calculate weighted mean of heights of roofs and use it as
+			// height information
+			double sumRoofArea = 0.;
+			height = 0.;
+
+			for (Polygon3d roof : buildingRoofs) {
+				double roofArea = roof.getXYProjectedArea();
+				sumRoofArea += roofArea;
+				// height of roof - ground height
+				height += roofArea * (roof.getHeight() - lc[2]);
+			}
+			// normalize
+			height /= sumRoofArea;
+		} else {
+			stats.addNoRoof(buildingId);
+			// maximum height = height of bounding of bounding box
+			height = uc[2] - lc[2];
+		}
+
+		double area = 0.;
+		if (!buildingGrounds.isEmpty()) {
+			for (Polygon3d ground : buildingGrounds) {
+				area += ground.getXYProjectedArea();
+			}
+			// area in km2
+			area /= 1000000.;
+		} else {
+			stats.addNoGround(buildingId);
+		}
+
+		if (!buildingWalls.isEmpty()) {
+			// check coplanarity
+			for (Polygon3dWithVisibilities wall : buildingWalls) {
+				if (!wall.checkCoplanarity()) {
+					stats.addNonPlanar(buildingId, wall.id);
 				}
+			}
+		} else {
+			stats.addNoWall(buildingId);
+			// ignore this building for visibility for now
+		}
 
-				if (!buildingWalls.isEmpty()) {
-					// check coplanarity
-					for (Polygon3dWithVisibilities wall : buildingWalls) {
-						if (!wall.checkCoplanarity()) {
-							stats.addNonPlanar(buildingId, wall.id);
-						}
-					}
+		SimpleBuilding simpleBuilding = newSimpleBuilding(buildingName, buildingId, location, rotatedCoordinates,
+				height, area, buildingRoofs, buildingWalls);
+		if (recordedBuildings != null) {
+			// diagnostics of buildings outside of domain and halo are only cached
+			recordedBuildings.add(
+					new RecordedBuilding(simpleBuilding, stats.endBuilding(isInDomainOrHalo(rotatedCoordinates))));
+		}
+		addSimpleBuilding(simpleBuilding, rotatedCoordinates);
+	}
+
+	/**
+	 * Create a building with the indices of its grid cell, which are -1 if it is
+	 * outside of the domain.
+	 */
+	private SimpleBuilding newSimpleBuilding(String buildingName, String buildingId, Point3d location,
+			ProjectionPoint rotatedCoordinates, double height, double area, List<Polygon3dWithVisibilities> roofs,
+			List<Polygon3dWithVisibilities> walls) {
+		int irlat, irlon;
+		try {
+			irlat = uclm.getRLatIndex(rotatedCoordinates.getY());
+			irlon = uclm.getRLonIndex(rotatedCoordinates.getX());
+		} catch (IllegalArgumentException e) {
+			irlat = -1;
+			irlon = -1;
+		}
+		return new SimpleBuilding(buildingName, buildingId, location, height, area, roofs, walls, irlat, irlon);
+	}
+
+	/**
+	 * Add a building to the list of buildings if it is inside of the domain or
+	 * the halo, and to the statistics if it is inside of the domain.
+	 * 
+	 * @param building           Building
+	 * @param rotatedCoordinates Location of the building in rotated coordinates
+	 */
+	private void addSimpleBuilding(SimpleBuilding building, ProjectionPoint rotatedCoordinates) {
+		if (!isInDomainOrHalo(rotatedCoordinates)) {
+			stats.addOutOfDomain();
+			return;
+		}
+		this.buildings.add(building);
+		if (building.isInDomain()) {
+			// add some statistics
+			stats.addBuilding(building.height, building.area, building.irlat, building.irlon);
+		}
+	}
+
+	/**
+	 * Add a building restored from the geometry cache.
+	 * 
+	 * Only the grid indices are calculated. The diagnostics are added to the log
+	 * if the building is inside of the domain or the halo, as if it was read from
+	 * the CityGML file.
+	 * 
+	 * @param buildingName Name of the building
+	 * @param buildingId   ID of the building
+	 * @param location     Centre and lower position of the building
+	 * @param height       Height of the building
+	 * @param area         Ground area of the building in km2
+	 * @param roofs        Roofs of the building
+	 * @param walls        Walls of the building
+	 * @param diagnostics  Diagnostics of the building as { kind, building id,
+	 *                     surface id }
+	 * @throws PJException
+	 */
+	void addCachedBuilding(String buildingName, String buildingId, Point3d location, double height, double area,
+			List<Polygon3dWithVisibilities> roofs, List<Polygon3dWithVisibilities> walls, List<Object[]> diagnostics)
+			throws PJException {
+		ProjectionPoint rotatedCoordinates = calcLatLonIndices(location);
+		if (isInDomainOrHalo(rotatedCoordinates)) {
+			for (Object[] diagnostic : diagnostics) {
+				stats.addDiagnostic((Diagnostic) diagnostic[0], (String) diagnostic[1], (String) diagnostic[2]);
+			}
+		}
+		addSimpleBuilding(
+				newSimpleBuilding(buildingName, buildingId, location, rotatedCoordinates, height, area, roofs, walls),
+				rotatedCoordinates);
+	}
+
+	/**
+	 * Create the polygons of a boundary surface and sort them into walls, roofs
+	 * and grounds.
+	 * 
+	 * @param surface         Boundary surface
+	 * @param buildingId      ID of the building
+	 * @param buildingWalls   Walls of the building
+	 * @param buildingRoofs   Roofs of the building
+	 * @param buildingGrounds Grounds of the building
+	 */
+	private void addSurfaceToPolygons(BuildingGeometry.Surface surface, String buildingId,
+			List<Polygon3dWithVisibilities> buildingWalls, List<Polygon3dWithVisibilities> buildingRoofs,
+			List<Polygon3d> buildingGrounds) {
+		List<Polygon3dWithVisibilities> polygons = new ArrayList<>();
+		for (double[] coord : surface.polygons) {
+			try {
+				if (coord == null) {
+					throw new IllegalArgumentException("Polygon cannot be handled.");
+				}
+				polygons.add(new Polygon3dWithVisibilities(surface.id, coord));
+			} catch (IllegalArgumentException e) {
+				stats.addInvalid(buildingId, surface.id);
+			}
+		}
+		switch (surface.type) {
+		case WALL:
+			buildingWalls.addAll(polygons);
+			break;
+		case ROOF:
+			buildingRoofs.addAll(polygons);
+			break;
+		case GROUND:
+			buildingGrounds.addAll(polygons);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * @param solid
+	 * @param buildingId
+	 * @param buildingWalls
+	 * @param buildingRoofs
+	 * @param buildingGrounds
+	 */
+	private void addLod1DSolidToPolygons(BuildingGeometry.Solid solid, String buildingId,
+			List<Polygon3dWithVisibilities> buildingWalls, List<Polygon3dWithVisibilities> buildingRoofs,
+			List<Polygon3d> buildingGrounds) {
+		if (solid == null || solid.invalid) {
+			stats.addIgnoredBuildingPart(buildingId);
+			return;
+		}
+		List<Polygon3dWithVisibilities> horizontalSurfaces = new ArrayList<>();
+		for (double[] coord : solid.polygons) {
+			try {
+				if (coord == null) {
+					throw new IllegalArgumentException("Polygon cannot be handled.");
+				}
+				Polygon3dWithVisibilities polygon = new Polygon3dWithVisibilities(buildingId, coord);
+				if (polygon.isHorizontal()) {
+					horizontalSurfaces.add(polygon);
 				} else {
-					stats.addNoWall(buildingId);
-					// ignore this building for visibility for now
+					buildingWalls.add(polygon);
 				}
+			} catch (IllegalArgumentException e) {
+				stats.addInvalid(buildingId, solid.id);
+			}
+		}
+		sortHorizontalSurfaces(horizontalSurfaces, buildingRoofs, buildingGrounds);
+	}
 
-				this.buildings.add(new SimpleBuilding(buildingName, buildingId, location, height, area,
-						buildingRoofs, buildingWalls, uclm.getRLatIndex(rotatedCoordinates.getY()),
-						uclm.getRLonIndex(rotatedCoordinates.getX())));
-				// add some statistics
-				stats.addBuildingHeight(height);
-				stats.addBuildingGround(area);
+	/**
+	 * Assume horizontal surfaces of a LoD1 solid below average height are ground,
+	 * above are roof.
+	 * 
+	 * @param horizontalSurfaces Horizontal surfaces of the solid
+	 * @param buildingRoofs      Roofs of the building
+	 * @param buildingGrounds    Grounds of the building
+	 */
+	private static void sortHorizontalSurfaces(List<Polygon3dWithVisibilities> horizontalSurfaces,
+			List<Polygon3dWithVisibilities> buildingRoofs, List<Polygon3d> buildingGrounds) {
+		double avHeight = horizontalSurfaces.stream().mapToDouble(hs -> hs.getHeight()).average().orElse(Double.NaN);
+
+		for (Polygon3dWithVisibilities horizontalSurface : horizontalSurfaces) {
+			if (horizontalSurface.getHeight() < avHeight) {
+				buildingGrounds.add(horizontalSurface);
+			} else {
+				buildingRoofs.add(horizontalSurface);
 			}
 		}
 	}
@@ -286,17 +671,9 @@ class CityGMLConverterData {
 					stats.addInvalid(buildingId, surfaceCS.getId());
 				}
 			}
-			
-			double avHeight = horizontalSurfaces.stream().mapToDouble(hs -> hs.getHeight()).average().orElse(Double.NaN);
 
 			// assume horizontal surfaces below average is ground, above is roof
-			for (Polygon3dWithVisibilities horizontalSurface : horizontalSurfaces) {
-				if (horizontalSurface.getHeight() < avHeight) {
-					buildingGrounds.add(horizontalSurface);							
-				} else {
-					buildingRoofs.add(horizontalSurface);
-				}						
-			}
+			sortHorizontalSurfaces(horizontalSurfaces, buildingRoofs, buildingGrounds);
 		
 		} catch (Exception e) {
 			stats.addIgnoredBuildingPart(buildingId);
@@ -369,14 +746,117 @@ class CityGMLConverterData {
 		return (uclm.rotpol.latLonToProj(xyz[1], xyz[0]));
 	}
 
-	void calcStreetPropertiesForBuilding(SimpleBuilding building) {
+	/**
+	 * Get the grid sums to use for a building.
+	 * 
+	 * @param iBuilding Index of the building
+	 * @return Sums of the work unit of the building if {@code conf.deterministic},
+	 *         otherwise the sums of the current thread
+	 */
+	private CityGMLGridSums getGridSums(int iBuilding) {
+		if (conf.deterministic) {
+			// a work unit is processed by one thread only
+			return unitGridSums.computeIfAbsent(iBuilding / conf.nBuildingsPerThread,
+					(unit) -> new CityGMLGridSums(uclm));
+		}
+		return threadGridSums.get();
+	}
+
+	/**
+	 * Mean distance of the visible walls of a wall, weighted with their area.
+	 * 
+	 * The visible walls are averaged by increasing distance, starting at
+	 * {@code mindist}, until their area reaches the area of the sending wall or
+	 * all of them are used.
+	 * 
+	 * @param queue         Queue to fill with the visibilities of the wall
+	 * @param sendingWall   Wall with visibilities
+	 * @param eff           use effective distance and weight the area with the
+	 *                      cosine of the angle?
+	 * @param mindist       Minimal distance of the visible walls, nearer ones are
+	 *                      skipped unless they are the last ones
+	 * @param centroidOrder order visibilities with the same distance by the
+	 *                      centroid of the receiving wall?
+	 * @param counters      Counters of the averaged walls or {@code null}
+	 * @param debug         Debug output of the visible walls or {@code null}
+	 * @param df            Format of the debug output
+	 * @return mean distance, NaN if the summed area is too small
+	 */
+	static double meanDistance(VisibilityQueue queue, Polygon3dWithVisibilities sendingWall, boolean eff,
+			double mindist, boolean centroidOrder, VisibilityMetrics.Counters counters, StringBuilder debug,
+			DecimalFormat df) {
+		// visibilities by increasing distance, only as many as needed are ordered
+		queue.fill(sendingWall, eff, centroidOrder);
+
+		// mean until area of sending surface is reached
+		double maxArea = sendingWall.getArea();
+		double sumArea = 0;
+		double distance = 0;
+		int ind = queue.poll();
+
+		while (queue.remaining() > 0 && queue.distance[ind] < mindist) {
+			ind = queue.poll();
+		}
+
+		while (true) {
+			if (Double.isNaN(queue.distance[ind])) {
+				System.out.println("distance is nan");
+			}
+
+			if (debug != null) {
+				debug.append("   Considering target with area "
+						+ df.format(queue.area[ind]) + ", distance "
+						+ df.format(queue.distance[ind]) + ", and ID "
+						+ queue.receiving[ind].id).append(LINE_SEPARATOR);
+			}
+
+			double weight = queue.area[ind];
+			if (eff) {
+				weight *= Math.abs(queue.cosAngle[ind]);
+			}
+			distance += queue.distance[ind] * weight;
+			sumArea += weight;
+
+			if (counters != null) {
+				counters.averagedTargets++;
+			}
+
+			if (sumArea >= maxArea || queue.remaining() == 0) {
+				break;
+			}
+			ind = queue.poll();
+		}
+		if (counters != null) {
+			counters.averagedWalls++;
+		}
+		if (sumArea < 1.e-5)
+			return Double.NaN;
+		return distance / sumArea;
+	}
+
+	void calcStreetPropertiesForBuilding(int iBuilding) {
+		SimpleBuilding building = buildings.get(iBuilding);
+		// buildings of the halo only influence the visibility
+		if (!building.isInDomain()) {
+			return;
+		}
+		// debug output of the building printed at once, null if not needed
+		StringBuilder debug = null;
+		DecimalFormat df = null;
 		if (conf.debugOutput) {
+			debug = new StringBuilder();
+			df = debugFormat.get();
 			if (building.name == "") {
-				System.out.println(" Building with ID " + building.id);
+				debug.append(" Building with ID " + building.id).append(LINE_SEPARATOR);
 			} else {
-				System.out.println(" Building with ID " + building.id + " and name " + building.name);
+				debug.append(" Building with ID " + building.id + " and name " + building.name)
+						.append(LINE_SEPARATOR);
 			}
 		}
+		// added to uclm by addGridSums
+		CityGMLGridSums sums = getGridSums(iBuilding);
+		VisibilityQueue queue = visibilityQueue.get();
+		VisibilityMetrics.Counters counters = metrics == null ? null : metrics.get();
 		for (Polygon3dWithVisibilities sendingWall : building.walls) {
 
 			if (sendingWall.isHorizontal())
@@ -388,49 +868,15 @@ class CityGMLConverterData {
 				continue;
 			}
 
-			if (conf.debugOutput) {
-				System.out.println(
-						"  Wall with area " + df.format(sendingWall.getArea()) + " and ID " + sendingWall.id);
-			}
-
-			List<Polygon3dVisibility> visibilityList = sendingWall.generateVisibilityList(conf.effDist);
-			Collections.sort(visibilityList);
-
-			// mean until area of sending surface is reached
-			double maxArea = sendingWall.getArea();
-			double sumArea = 0;
-			double distance = 0;
-			int ind = 0;
-
-			while (ind < visibilityList.size() - 1
-					&& visibilityList.get(ind).distance < conf.mindist) {
-				ind++;
+			if (debug != null) {
+				debug.append("  Wall with area " + df.format(sendingWall.getArea()) + " and ID " + sendingWall.id)
+						.append(LINE_SEPARATOR);
 			}
 
-			do {
-				if (Double.isNaN(visibilityList.get(ind).distance)) {
-					System.out.println("distance is nan");
-				}
-
-				if (conf.debugOutput) {
-					System.out.println("   Considering target with area "
-							+ df.format(visibilityList.get(ind).receiving.getArea()) + ", distance "
-							+ df.format(visibilityList.get(ind).distance) + ", and ID "
-							+ visibilityList.get(ind).receiving.id);
-				}
-
-				double weight = visibilityList.get(ind).receiving.getArea();
-				if (conf.effDist) {
-					weight *= Math.abs(visibilityList.get(ind).getCosAngle());
-				}
-				distance += visibilityList.get(ind).distance * weight;
-				sumArea += weight;
-
-				ind += 1;
-			} while (sumArea < maxArea && ind < visibilityList.size());
-			if (sumArea < 1.e-5)
+			double distance = meanDistance(queue, sendingWall, conf.effDist, conf.mindist, conf.deterministic,
+					counters, debug, df);
+			if (Double.isNaN(distance))
 				continue;
-			distance /= sumArea;
 
 			int indexAngle = 0;
 			indexAngle = uclm.getStreetdirIndex(sendingWall.getAngle());
@@ -441,38 +887,87 @@ class CityGMLConverterData {
 			} catch (IllegalArgumentException e) {
 				// assume that building is too high for specified hhl_uhl so use highest possibility
 				indexHeight = uclm.getKe_urban(iuc) - 1;
-				lock.lock();
-				uclm.incBuildProbAdjusted(iuc, indexAngle, building.irlat, building.irlon, sendingWall.getArea());
-				lock.unlock();
-				if (conf.debugOutput) {
-					System.out.println("   Building with height " 
+				sums.incBuildProbAdjusted(iuc, indexAngle, building.irlat, building.irlon, sendingWall.getArea());
+				if (debug != null) {
+					debug.append("   Building with height " 
 							+ df.format(building.height)
 							+ " reduced to " 
-							+ df.format(uclm.getUrbanHeight(indexHeight)));
+							+ df.format(uclm.getUrbanHeight(indexHeight))).append(LINE_SEPARATOR);
 				}
 			}
 
-			lock.lock();
 			// Weight distance with surface size
-			uclm.incStreetWidth(iuc, indexAngle, building.irlat, building.irlon, distance * sendingWall.getArea());
-			uclm.incStreetSurfaceSum(iuc, indexAngle, building.irlat, building.irlon, sendingWall.getArea());
+			sums.incStreetWidth(iuc, indexAngle, building.irlat, building.irlon, distance * sendingWall.getArea());
+			sums.incStreetSurfaceSum(iuc, indexAngle, building.irlat, building.irlon, sendingWall.getArea());
 			
-			uclm.incBuildProb(iuc, indexAngle, indexHeight, building.irlat, building.irlon, sendingWall.getArea());
-			lock.unlock();
+			sums.incBuildProb(iuc, indexAngle, indexHeight, building.irlat, building.irlon, sendingWall.getArea());
+		}
+		sums.incBuildingFrac(iuc, building.irlat, building.irlon, building.area);
+		if (debug != null) {
+			System.out.print(debug);
+		}
+	}
+
+	/**
+	 * Add the grid sums of all threads to the urban configuration. Has to be
+	 * called after {@link #calcStreetPropertiesForBuilding(int)} has finished for
+	 * all buildings.
+	 * 
+	 * If {@code conf.deterministic}, the sums of the work units are combined
+	 * pairwise in a fixed tree order, so the result is bitwise reproducible.
+	 */
+	public void addGridSums() {
+		if (conf.deterministic) {
+			List<CityGMLGridSums> level = new ArrayList<>(new TreeMap<>(unitGridSums).values());
+			unitGridSums.clear();
+			while (level.size() > 1) {
+				List<CityGMLGridSums> next = new ArrayList<>((level.size() + 1) / 2);
+				for (int i = 0; i < level.size(); i += 2) {
+					if (i + 1 < level.size()) {
+						level.get(i).merge(level.get(i + 1));
+					}
+					next.add(level.get(i));
+				}
+				level = next;
+			}
+			for (CityGMLGridSums sums : level) {
+				sums.addTo(uclm);
+			}
+		}
+		synchronized (gridSums) {
+			for (CityGMLGridSums sums : gridSums) {
+				sums.addTo(uclm);
+			}
 		}
-		lock.lock();
-		uclm.incBuildingFrac(iuc, building.irlat, building.irlon, building.area);
-		lock.unlock();
 	}
 	
 	/**
 	 * Calculate urban parameters after visibility is know.
+	 * 
+	 * The buildings are split into chunks which are processed in parallel.
+	 * 
+	 * @param exec      Executor for the chunks
+	 * @param chunkSize Number of buildings per chunk, multiple of
+	 *                  {@code conf.nBuildingsPerThread} if
+	 *                  {@code conf.deterministic}
+	 * @throws InterruptedException Interrupted while waiting for the chunks
+	 * @throws ExecutionException   Error in the calculation of a chunk
 	 */
-	public void calcStreetProperties() {
+	public void calcStreetProperties(ExecutorService exec, int chunkSize)
+			throws InterruptedException, ExecutionException {
 		System.out.println("Averaging of surface properties to grid cells");
-		for (SimpleBuilding building : buildings) {
-			calcStreetPropertiesForBuilding(building);
-			
+		List<Future<?>> chunks = new ArrayList<>();
+		for (int start = 0; start < buildings.size(); start += chunkSize) {
+			int chunkStart = start;
+			int chunkEnd = Math.min(start + chunkSize, buildings.size());
+			chunks.add(exec.submit(() -> {
+				for (int iBuilding = chunkStart; iBuilding < chunkEnd; iBuilding++) {
+					calcStreetPropertiesForBuilding(iBuilding);
+				}
+			}));
+		}
+		for (Future<?> chunk : chunks) {
+			chunk.get();
 		}
 	}
 
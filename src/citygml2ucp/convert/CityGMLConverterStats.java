@@ -3,23 +3,26 @@
  */
 package citygml2ucp.convert;
 
-import java.io.File;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
+import citygml2ucp.configuration.UrbanCLMConfiguration;
 import citygml2ucp.tools.DimensionsAndVariables;
+import citygml2ucp.tools.IndexedField;
 import citygml2ucp.tools.NetCDFData;
+import citygml2ucp.tools.SparseWritableField;
+import citygml2ucp.tools.StatisticsColumn;
+import citygml2ucp.tools.WritableColumn;
 import citygml2ucp.tools.WritableDimension;
 import citygml2ucp.tools.WritableField;
-import citygml2ucp.tools.WritableFieldFloat;
+import citygml2ucp.tools.WritableFieldInt;
+import ucar.ma2.DataType;
 import ucar.ma2.Index;
-import ucar.ma2.InvalidRangeException;
 import ucar.nc2.NetcdfFileWriter;
 
 /**
@@ -31,64 +34,67 @@ import ucar.nc2.NetcdfFileWriter;
 public class CityGMLConverterStats extends NetCDFData {
 
 	/**
-	 * Map for all invalid polygons
+	 * Kinds of diagnostics of a run
 	 */
-	private Map<String,List<String>> invalid = new HashMap<>();
-	
-	/**
-	 * Map for all non planar polygons
-	 */
-	private Map<String,List<String>> nonPlanar = new HashMap<>();
+	public enum Diagnostic {
+		INVALID, NON_PLANAR, IGNORED_BUILDING_PART, NO_WALL, NO_ROOF, NO_GROUND,
+		// not recorded, only appended to keep the ordinals of the geometry cache
+		READ_ERROR, SURFACE_WITHOUT_DISTANCE
+	}
 
 	/**
-	 * Map for surfaces without distances taken into account
+	 * Diagnostics of the building being added while recording as { kind,
+	 * building id, surface id }, {@code null} if not recording
 	 */
-	private Map<String,List<String>> surfaceWithoutDistance = new HashMap<>();
+	private List<Object[]> buildingDiagnostics;
 
 	/**
-	 * List for files with read error
+	 * Diagnostics of the run
 	 */
-	private List<String> readErrorList = new LinkedList<>();
+	private final DiagnosticsLog diagnostics;
 
 	/**
-	 * List for files with ignored buildingParts
+	 * Number of buildings skipped because they are outside of the domain
 	 */
-	private List<String> ignoredBuildingPartList = new LinkedList<>();
-	
-	/**
-	 * List for buildings with no defined wall
-	 */
-	private List<String> noWallList = new LinkedList<>();
+	private int nOutOfDomain = 0;
 
 	/**
-	 * List for buildings with no defined roof
+	 * Configuration of the run
 	 */
-	private List<String> noRoofList = new LinkedList<>();
-	
+	private final CityGMLConverterConf conf;
+
 	/**
-	 * List for buildings with no defined ground
+	 * Metrics of the visibility calculation for the log, {@code null} if not
+	 * collected
 	 */
-	private List<String> noGroundList = new LinkedList<>();
+	private VisibilityMetrics metrics;
 
 	/**
-	 * Configuration of the run
+	 * Number of buildings of the visibility calculation
 	 */
-	private final CityGMLConverterConf conf;
+	private int nVisibilityBuildings;
 
 	/**
 	 * Height of the buildings
 	 */
-	private List<Double> buildingHeights = new ArrayList<Double>();
+	private final StatisticsColumn buildingHeights = new StatisticsColumn();
 
 	/**
 	 * Ground size of the buildings
 	 */
-	private List<Double> buildingGrounds = new ArrayList<Double>();
+	private final StatisticsColumn buildingGrounds = new StatisticsColumn();
+
+	/**
+	 * Number of buildings per urban height level of every grid cell, {@code null}
+	 * if not recorded
+	 */
+	private IndexedField heightDistribution;
 
 	/**
-	 * Field for output
+	 * Urban configuration for the height distribution
 	 */
-	private WritableField buildingHeightsNetCDF, buildingGroundsNetCDF;
+	private UrbanCLMConfiguration uclm;
+
 	/**
 	 * Unlimited dimension for output
 	 */
@@ -102,57 +108,62 @@ public class CityGMLConverterStats extends NetCDFData {
 	 */
 	public CityGMLConverterStats(CityGMLConverterConf conf) {
 		this.conf = conf;
+		this.diagnostics = new DiagnosticsLog(Path.of(conf.logFile).toAbsolutePath().getParent());
 
 		unlimetedDimension = new WritableDimension("counter", 0, true, true,
 				false);
 		toWrite.add(unlimetedDimension);
 	}
 
-	
-	private void addMapElements(Map<String, List<String>> map, String key, String value) {
-		List<String> list;
-		if (map.containsKey(key)) {
-			list = map.get(key);
-			// put surface id that includes the faulty polygon in the list
-			list.add(value);
+
+	/**
+	 * Add a diagnostic to the log, or keep it for {@link #endBuilding(boolean)}
+	 * if recording.
+	 */
+	private void add(Diagnostic kind, String buildingId, String surfaceId) {
+		if (buildingDiagnostics != null) {
+			buildingDiagnostics.add(new Object[] { kind, buildingId, surfaceId });
 		} else {
-			list = new LinkedList<>();
-			// put surface id that includes the faulty polygon in the list
-			list.add(value);
-			// put list into Map
-			map.put(key, list);
+			addToLog(kind, buildingId, surfaceId);
 		}
 	}
-	
+
+	private void addToLog(Diagnostic kind, String buildingId, String surfaceId) {
+		try {
+			diagnostics.add(kind, buildingId, surfaceId);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * Add invalid polygon information.
 	 * @param buildingId
 	 * @param surfaceId
 	 */
 	public void addInvalid(String buildingId, String surfaceId) {
-		addMapElements(invalid, buildingId, surfaceId);
+		add(Diagnostic.INVALID, buildingId, surfaceId);
 	}
 	
 	/**
 	 * Add non planar information.
 	 * 
-	 * @param nonPlanar
-	 *            Map of building id and list of non-planar surface ids
+	 * @param buildingId
+	 * @param surfaceId
 	 */
 	public void addNonPlanar(String buildingId, String surfaceId) {
-		addMapElements(nonPlanar, buildingId, surfaceId);
+		add(Diagnostic.NON_PLANAR, buildingId, surfaceId);
 	}
 
 	/**
-	 * Add no surface but building fraction information.
+	 * Add no surface but building fraction information. Can be called by
+	 * several threads, not recorded.
 	 * 
-	 * @param id
-	 *            Number of file for which to add information
-	 * @param list
-	 *            List of ground sizes ignored
+	 * @param buildingId
+	 * @param surfaceId
 	 */
 	public void addSurfaceWithoutDistance(String buildingId, String surfaceId) {
-		addMapElements(surfaceWithoutDistance, buildingId, surfaceId);
+		addToLog(Diagnostic.SURFACE_WITHOUT_DISTANCE, buildingId, surfaceId);
 	}
 
 	/**
@@ -162,7 +173,7 @@ public class CityGMLConverterStats extends NetCDFData {
 	 *            String of file with read error
 	 */
 	public void addReadError(String readError) {
-		readErrorList.add(readError);
+		addToLog(Diagnostic.READ_ERROR, readError, null);
 	}
 
 	/**
@@ -172,7 +183,7 @@ public class CityGMLConverterStats extends NetCDFData {
 	 *            String of building Id
 	 */
 	public void addIgnoredBuildingPart(String buildingId) {
-		ignoredBuildingPartList.add(buildingId);
+		add(Diagnostic.IGNORED_BUILDING_PART, buildingId, null);
 	}
 	
 	
@@ -180,136 +191,205 @@ public class CityGMLConverterStats extends NetCDFData {
 	 * Add no wall information.
 	 * 
 	 * @param noWall
-	 *            List of building IDs with no defined wall
+	 *            Building ID with no defined wall
 	 */
 	public void addNoWall(String noWall) {
-		noWallList.add(noWall);
+		add(Diagnostic.NO_WALL, noWall, null);
 	}
 	
 	/**
 	 * Add no roof information.
 	 * 
 	 * @param noRoof
-	 *            List of building IDs with no defined roof
+	 *            Building ID with no defined roof
 	 */
 	public void addNoRoof(String noRoof) {
-		noRoofList.add(noRoof);
+		add(Diagnostic.NO_ROOF, noRoof, null);
 	}
 	
 	/**
 	 * Add no ground information.
 	 * 
-	 * @param noground
-	 *            List of building IDs with no defined ground
+	 * @param noGround
+	 *            Building ID with no defined ground
 	 */
 	public void addNoGround(String noGround) {
-		noGroundList.add(noGround);
+		add(Diagnostic.NO_GROUND, noGround, null);
 	}
 
-	
-	public List<Double> getBuildingHeights() {
-		return buildingHeights;
+	/**
+	 * Start recording the building diagnostics, e.g., to store them in the
+	 * geometry cache. While recording, the diagnostics of a building are only
+	 * added to the log by {@link #endBuilding(boolean)}.
+	 */
+	public void startRecording() {
+		buildingDiagnostics = new ArrayList<>();
 	}
 
+	/**
+	 * End the building being added while recording.
+	 * 
+	 * @param log add the diagnostics of the building to the log?
+	 * @return Diagnostics of the building as { kind, building id, surface id }
+	 */
+	public List<Object[]> endBuilding(boolean log) {
+		List<Object[]> diagnostics = buildingDiagnostics;
+		buildingDiagnostics = new ArrayList<>();
+		if (log) {
+			for (Object[] diagnostic : diagnostics) {
+				addToLog((Diagnostic) diagnostic[0], (String) diagnostic[1], (String) diagnostic[2]);
+			}
+		}
+		return diagnostics;
+	}
 
-	public void addBuildingHeight(double buildingHeight) {
-		this.buildingHeights.add(buildingHeight);
+	/**
+	 * Stop recording the building diagnostics.
+	 */
+	public void stopRecording() {
+		buildingDiagnostics = null;
 	}
 
-	
-	public List<Double> getBuildingGrounds() {
-		return buildingGrounds;
+	/**
+	 * Add a diagnostic recorded before.
+	 * 
+	 * @param kind       Kind of the diagnostic
+	 * @param buildingId Building ID
+	 * @param surfaceId  Surface ID, only used for invalid and non-planar surfaces
+	 */
+	public void addDiagnostic(Diagnostic kind, String buildingId, String surfaceId) {
+		addToLog(kind, buildingId, surfaceId);
 	}
 
+	/**
+	 * Add a building skipped because it is outside of the domain.
+	 */
+	public void addOutOfDomain() {
+		nOutOfDomain++;
+	}
 
-	public void addBuildingGround(Double buildingGround) {
-		this.buildingGrounds.add(buildingGround);
+	public int getOutOfDomain() {
+		return nOutOfDomain;
 	}
 
 	
-	private void writeStringList(Writer fw, String header, List<String> list) throws IOException {
-		fw.append(header);
-		fw.append(System.getProperty("line.separator"));
-		for (String element : list) {
-			fw.append(" " + element);
-			fw.append(System.getProperty("line.separator"));
-		}
+	public StatisticsColumn getBuildingHeights() {
+		return buildingHeights;
 	}
 
-	private void writeStringMap(Writer fw, String header, Map<String,List<String>> map) throws IOException {
-		fw.append(header);
-		fw.append(System.getProperty("line.separator"));
-		
-		for (Map.Entry<String, List<String>> entry : map.entrySet()) {
-			fw.append(" Building " + entry.getKey());
-			fw.append(System.getProperty("line.separator"));
+	public StatisticsColumn getBuildingGrounds() {
+		return buildingGrounds;
+	}
 
-			for (String elementOfElement : entry.getValue()) {
-				fw.append("  Surface " + elementOfElement);
-				fw.append(System.getProperty("line.separator"));
-			}
+	/**
+	 * Record the number of buildings per urban height level of every grid cell,
+	 * written as additional variable.
+	 * 
+	 * @param uclm
+	 *            Urban configuration with the grid and the urban height levels
+	 */
+	public void recordHeightDistribution(UrbanCLMConfiguration uclm) {
+		this.uclm = uclm;
+		List<WritableDimension> dimlist = new ArrayList<>();
+		dimlist.add(uclm.getHeightAxis());
+		dimlist.add(uclm.getMeridionalAxis());
+		dimlist.add(uclm.getZonalAxis());
+		String standard_name = "building_count";
+		String long_name = "number of buildings per urban height level";
+		if (conf.sparseGrid) {
+			heightDistribution = new SparseWritableField("N_BUILD", dimlist, standard_name, long_name,
+					"1", "rotated_pole", DataType.INT);
+		} else if (conf.doubleAccumulators) {
+			heightDistribution = new WritableField("N_BUILD", dimlist, standard_name, long_name,
+					"1", "rotated_pole", DataType.INT);
+		} else {
+			heightDistribution = new WritableFieldInt("N_BUILD", dimlist, standard_name, long_name,
+					"1", "rotated_pole");
 		}
 	}
 
-	
-	public void writeLogs() throws IOException {
-		File log = new File(conf.logFile);
-		
-		if (log.exists()) {
-			log.delete();
+	/**
+	 * Add a building inside of the domain.
+	 * 
+	 * @param height
+	 *            Height of the building
+	 * @param ground
+	 *            Ground size of the building
+	 * @param irlat
+	 *            Latitude index of the building
+	 * @param irlon
+	 *            Longitude index of the building
+	 */
+	public void addBuilding(double height, double ground, int irlat, int irlon) {
+		buildingHeights.add(height);
+		buildingGrounds.add(ground);
+		if (heightDistribution != null) {
+			int level;
+			try {
+				level = uclm.getHeightIndex(height);
+			} catch (IllegalArgumentException e) {
+				// building too high for hhl_uhl, use highest level
+				level = uclm.getKe_urbanMax() - 1;
+			}
+			synchronized (heightDistribution) {
+				Index ind = heightDistribution.getIndex();
+				ind.set(level, irlat, irlon);
+				heightDistribution.set(ind, heightDistribution.get(ind) + 1.);
+			}
 		}
-		
-		Writer fw = new FileWriter(log);
-		
-		writeStringList(fw, "* Files with read error", readErrorList);
-		writeStringList(fw, "* Building with ignored building parts", ignoredBuildingPartList);
-		writeStringList(fw, "* Building without roofs", noRoofList);
-		writeStringList(fw, "* Building without walls", noWallList);
-		writeStringList(fw, "* Building without grounds", noGroundList);
-	
-		writeStringMap(fw, "* Surfaces with invalid polygons", invalid);
-		writeStringMap(fw, "* Non-Planar surface", nonPlanar);
-		writeStringMap(fw, "* Surface without distance", surfaceWithoutDistance);
+	}
 
-		fw.close();
+	/**
+	 * Add the metrics of the visibility calculation to the log.
+	 * 
+	 * @param metrics
+	 *            Metrics of the visibility calculation
+	 * @param nBuildings
+	 *            Number of buildings of the visibility calculation
+	 */
+	void setVisibilityMetrics(VisibilityMetrics metrics, int nBuildings) {
+		this.metrics = metrics;
+		this.nVisibilityBuildings = nBuildings;
 	}
 
-	private void fillNetCDFVariables() {
-		Index ind = buildingHeightsNetCDF.getIndex();
-		for (int i = 0; i < buildingHeights.size(); i++) {
-			buildingHeightsNetCDF.setDouble(ind.set(i), buildingHeights.get(i));
-			buildingGroundsNetCDF.setDouble(ind.set(i), buildingGrounds.get(i));
+	public void writeLogs() throws IOException {
+		try (BufferedWriter fw = Files.newBufferedWriter(Path.of(conf.logFile))) {
+			fw.append("* Buildings outside of domain: " + nOutOfDomain);
+			fw.append(System.getProperty("line.separator"));
+			diagnostics.writeSection(fw, "* Files with read error", Diagnostic.READ_ERROR);
+			diagnostics.writeSection(fw, "* Building with ignored building parts", Diagnostic.IGNORED_BUILDING_PART);
+			diagnostics.writeSection(fw, "* Building without roofs", Diagnostic.NO_ROOF);
+			diagnostics.writeSection(fw, "* Building without walls", Diagnostic.NO_WALL);
+			diagnostics.writeSection(fw, "* Building without grounds", Diagnostic.NO_GROUND);
+
+			diagnostics.writeSection(fw, "* Surfaces with invalid polygons", Diagnostic.INVALID);
+			diagnostics.writeSection(fw, "* Non-Planar surface", Diagnostic.NON_PLANAR);
+			diagnostics.writeSection(fw, "* Surface without distance", Diagnostic.SURFACE_WITHOUT_DISTANCE);
+			if (metrics != null) {
+				metrics.writeSection(fw, nVisibilityBuildings);
+			}
+		} finally {
+			diagnostics.delete();
 		}
 	}
 
 	@Override
 	public DimensionsAndVariables addToNetCDFfile(NetcdfFileWriter ncfile) {
-		List<WritableDimension> dimlist = new ArrayList<>();
-		dimlist.add(unlimetedDimension);
 		unlimetedDimension.setLength(buildingHeights.size());
-		buildingHeightsNetCDF = new WritableFieldFloat("bheights", dimlist,
-				"Building Height", "Building Height", "", "");
-		toWrite.add(buildingHeightsNetCDF);
-		buildingGroundsNetCDF = new WritableFieldFloat("bgrounds", dimlist,
+		toWrite.add(new WritableColumn("bheights", unlimetedDimension,
+				"Building Height", "Building Height", "", buildingHeights));
+		toWrite.add(new WritableColumn("bgrounds", unlimetedDimension,
 				"Building Ground Surface size", "Building Ground Surface", "",
-				"");
-		toWrite.add(buildingGroundsNetCDF);
+				buildingGrounds));
+		if (heightDistribution != null) {
+			toWrite.add(uclm.rotpol);
+			toWrite.add(uclm.getHeightAxis());
+			toWrite.add(uclm.getMeridionalAxis());
+			toWrite.add(uclm.getZonalAxis());
+			toWrite.add(heightDistribution);
+		}
 
 		return super.addToNetCDFfile(ncfile);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * citygml2ucp.tools.NetCDFData#writeVariablesToNetCDFfile(ucar.nc2
-	 * .NetcdfFileWriteable)
-	 */
-	@Override
-	public void writeToNetCDFfile(NetcdfFileWriter ncfile)
-			throws IOException, InvalidRangeException {
-		fillNetCDFVariables();
-		super.writeToNetCDFfile(ncfile);
-	}
-
 }
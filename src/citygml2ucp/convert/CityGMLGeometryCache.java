@@ -0,0 +1,368 @@
+package citygml2ucp.convert;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.vecmath.Point3d;
+
+import org.proj4.PJException;
+
+import citygml2ucp.convert.CityGMLConverterData.RecordedBuilding;
+import citygml2ucp.convert.CityGMLConverterStats.Diagnostic;
+import citygml2ucp.tools.GMLInput;
+import citygml2ucp.tools.LazyPolygon3dWithVisibilities;
+import citygml2ucp.tools.Polygon3d;
+import citygml2ucp.tools.Polygon3dWithVisibilities;
+import citygml2ucp.tools.SimpleBuilding;
+
+/**
+ * Binary cache of the buildings read from one CityGML file.
+ *
+ * The cache includes everything of a {@link SimpleBuilding} that does not
+ * depend on the grid configuration (IDs, location, height, area and the
+ * vertices of walls and roofs) together with the diagnostics of every
+ * building, which are only added to the log for buildings inside of the domain
+ * or the halo. It is only used if it was written with the same reader and if
+ * path, size, modification time and content hash of the input file (see
+ * {@link GMLInput#contentHash()}) are unchanged. The content hash is only
+ * calculated if all other parts match. The cache file is memory-mapped for
+ * reading. Restored polygons are {@link LazyPolygon3dWithVisibilities}.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class CityGMLGeometryCache {
+
+	/**
+	 * Identifier of cache files, "CGUC"
+	 */
+	private static final int MAGIC = 0x43475543;
+
+	/**
+	 * Version of the format, increase with every change of the format
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * Building of the cache, added to the city data after the whole cache has
+	 * been decoded
+	 */
+	private static class CachedBuilding {
+		String name, id;
+		Point3d location;
+		double height, area;
+		List<Polygon3dWithVisibilities> roofs, walls;
+		List<Object[]> diagnostics;
+	}
+
+	/**
+	 * CityGML document
+	 */
+	private final GMLInput input;
+
+	/**
+	 * Absolute name of the input CityGML document
+	 */
+	private final String inputName;
+
+	/**
+	 * Reader of the buildings, buildings of different readers differ in their
+	 * geometry and diagnostics
+	 */
+	private final String reader;
+
+	/**
+	 * Cache file of the input file
+	 */
+	private final Path cacheFile;
+
+	/**
+	 * Fingerprint of the input file without the content hash
+	 */
+	private final long size, mtime;
+
+	/**
+	 * Constructor.
+	 *
+	 * Determines size and modification time of the input file, but not the
+	 * content hash.
+	 *
+	 * @param input       CityGML document
+	 * @param cacheFolder Folder with all cache files
+	 * @param staxReader  Are the buildings read with {@link citygml2ucp.tools.StaxBuildingReader}?
+	 * @throws IOException Input file cannot be read
+	 */
+	public CityGMLGeometryCache(GMLInput input, Path cacheFolder, boolean staxReader) throws IOException {
+		this.input = input;
+		this.inputName = input.entry == null ? input.file.toAbsolutePath().toString()
+				: input.file.toAbsolutePath() + "!" + input.entry;
+		this.reader = staxReader ? "stax" : "citygml4j";
+		this.size = Files.size(input.file);
+		this.mtime = Files.getLastModifiedTime(input.file).toMillis();
+
+		// name of the cache file from the name of the input
+		byte[] nameHash = GMLInput.newDigest().digest(inputName.getBytes(StandardCharsets.UTF_8));
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 16; i++) {
+			name.append(String.format("%02x", nameHash[i]));
+		}
+		this.cacheFile = cacheFolder.resolve(name.append(".bin").toString());
+	}
+
+	/**
+	 * Map the cache file.
+	 *
+	 * @return Content of the cache file, {@code null} if there is no cache file
+	 * @throws IOException Cache file cannot be read
+	 */
+	private ByteBuffer map() throws IOException {
+		if (!Files.isRegularFile(cacheFile) || Files.size(cacheFile) > Integer.MAX_VALUE) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Read the header of the cache file up to the content hash.
+	 *
+	 * @param buffer Content of the cache file
+	 * @return reader, input name, size and modification time match?
+	 */
+	private boolean matchesHeader(ByteBuffer buffer) {
+		try {
+			return buffer.getInt() == MAGIC && buffer.getInt() == VERSION && reader.equals(getString(buffer))
+					&& inputName.equals(getString(buffer)) && buffer.getLong() == size
+					&& buffer.getLong() == mtime;
+		} catch (BufferUnderflowException e) {
+			// no valid header
+			return false;
+		}
+	}
+
+	/**
+	 * Is there a cache file that matches the input file apart from the content
+	 * hash? This is cheap, the input file is not read.
+	 *
+	 * @return cache probably valid?
+	 */
+	public boolean isCandidate() {
+		try {
+			ByteBuffer buffer = map();
+			return buffer != null && matchesHeader(buffer);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Add the buildings of the cache to the city data if the cache is valid.
+	 *
+	 * The cache is decoded completely before anything is added to the city data,
+	 * so nothing is added if the cache file is incomplete or corrupt.
+	 *
+	 * @param cgml City data to add the buildings to
+	 * @return cache valid and buildings added?
+	 * @throws IOException Cache or input file cannot be read
+	 * @throws PJException Error in coordinate transformation
+	 */
+	public boolean load(CityGMLConverterData cgml) throws IOException, PJException {
+		ByteBuffer buffer = map();
+		if (buffer == null || !matchesHeader(buffer)) {
+			return false;
+		}
+
+		List<CachedBuilding> buildings = new ArrayList<>();
+		try {
+			byte[] cachedHash = getBytes(buffer);
+			// the input file is only hashed if everything else matches
+			if (!Arrays.equals(input.contentHash(), cachedHash)) {
+				return false;
+			}
+
+			int nBuildings = buffer.getInt();
+			for (int i = 0; i < nBuildings; i++) {
+				CachedBuilding building = new CachedBuilding();
+				building.name = getString(buffer);
+				building.id = getString(buffer);
+				building.location = new Point3d(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+				building.height = buffer.getDouble();
+				building.area = buffer.getDouble();
+				building.roofs = getPolygons(buffer);
+				building.walls = getPolygons(buffer);
+				building.diagnostics = getDiagnostics(buffer);
+				buildings.add(building);
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			// incomplete or corrupt cache, read the input file again
+			return false;
+		}
+
+		for (CachedBuilding building : buildings) {
+			cgml.addCachedBuilding(building.name, building.id, building.location, building.height, building.area,
+					building.roofs, building.walls, building.diagnostics);
+		}
+		return true;
+	}
+
+	/**
+	 * Write buildings and diagnostics of the input file to the cache.
+	 *
+	 * @param buildings Buildings of the input file with their diagnostics
+	 * @param hash      Content hash of the input file calculated while it was
+	 *                  read, calculated here if {@code null}
+	 * @throws IOException Cache file cannot be written
+	 */
+	public void write(List<RecordedBuilding> buildings, byte[] hash) throws IOException {
+		if (hash == null) {
+			hash = input.contentHash();
+		}
+		Files.createDirectories(cacheFile.getParent());
+		// write to temporary file first, so no incomplete cache file is left behind
+		Path tempFile = Files.createTempFile(cacheFile.getParent(), "cache", ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			putString(out, reader);
+			putString(out, inputName);
+			out.writeLong(size);
+			out.writeLong(mtime);
+			out.writeInt(hash.length);
+			out.write(hash);
+
+			out.writeInt(buildings.size());
+			for (RecordedBuilding recorded : buildings) {
+				SimpleBuilding building = recorded.building;
+				putString(out, building.name);
+				putString(out, building.id);
+				out.writeDouble(building.location.x);
+				out.writeDouble(building.location.y);
+				out.writeDouble(building.location.z);
+				out.writeDouble(building.height);
+				out.writeDouble(building.area);
+				putPolygons(out, building.roofs);
+				putPolygons(out, building.walls);
+				putDiagnostics(out, recorded.diagnostics);
+			}
+		}
+
+		Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void putString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		return new String(getBytes(buffer, length), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read a number of bytes followed by the bytes.
+	 */
+	private static byte[] getBytes(ByteBuffer buffer) {
+		return getBytes(buffer, buffer.getInt());
+	}
+
+	/**
+	 * Read bytes, the length is checked first so a corrupt length does not lead
+	 * to a huge allocation.
+	 */
+	private static byte[] getBytes(ByteBuffer buffer, int length) {
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Write diagnostics as number of diagnostics followed by kind, building ID
+	 * and surface ID of every diagnostic.
+	 */
+	private static void putDiagnostics(DataOutputStream out, List<Object[]> diagnostics) throws IOException {
+		out.writeInt(diagnostics.size());
+		for (Object[] diagnostic : diagnostics) {
+			out.writeByte(((Diagnostic) diagnostic[0]).ordinal());
+			putString(out, (String) diagnostic[1]);
+			putString(out, (String) diagnostic[2]);
+		}
+	}
+
+	private static List<Object[]> getDiagnostics(ByteBuffer buffer) {
+		int nDiagnostics = buffer.getInt();
+		if (nDiagnostics < 0 || nDiagnostics > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		List<Object[]> diagnostics = new ArrayList<>(nDiagnostics);
+		for (int i = 0; i < nDiagnostics; i++) {
+			Diagnostic kind = Diagnostic.values()[buffer.get()];
+			diagnostics.add(new Object[] { kind, getString(buffer), getString(buffer) });
+		}
+		return diagnostics;
+	}
+
+	/**
+	 * Write polygons as number of polygons followed by ID, number of vertices and
+	 * flat vertices of every polygon.
+	 */
+	private static void putPolygons(DataOutputStream out, List<? extends Polygon3d> polygons) throws IOException {
+		out.writeInt(polygons.size());
+		for (Polygon3d polygon : polygons) {
+			putString(out, polygon.id);
+			out.writeInt(polygon.getPoints().size());
+			for (Point3d point : polygon.getPoints()) {
+				out.writeDouble(point.x);
+				out.writeDouble(point.y);
+				out.writeDouble(point.z);
+			}
+		}
+	}
+
+	private static List<Polygon3dWithVisibilities> getPolygons(ByteBuffer buffer) {
+		int nPolygons = buffer.getInt();
+		if (nPolygons < 0 || nPolygons > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		List<Polygon3dWithVisibilities> polygons = new ArrayList<>(nPolygons);
+		for (int i = 0; i < nPolygons; i++) {
+			String id = getString(buffer);
+			int nPoints = buffer.getInt();
+			if (nPoints < 0 || nPoints > buffer.remaining() / (3 * Double.BYTES)) {
+				throw new BufferUnderflowException();
+			}
+			double[] coord = new double[3 * nPoints];
+			buffer.asDoubleBuffer().get(coord);
+			buffer.position(buffer.position() + Double.BYTES * coord.length);
+			// the geometry is only calculated if the polygon is used
+			polygons.add(new LazyPolygon3dWithVisibilities(id, coord));
+		}
+		return polygons;
+	}
+
+}
@@ -0,0 +1,154 @@
+package citygml2ucp.convert;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import citygml2ucp.configuration.UrbanCLMConfiguration;
+
+/**
+ * Sums of the street and building properties of grid cells collected by one
+ * thread.
+ *
+ * The sums are stored sparsely for the grid cells used and are added to the
+ * urban configuration after all buildings have been processed, so no locking
+ * is required while summing. This class is not thread-safe, every thread uses
+ * its own object.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class CityGMLGridSums {
+
+	private final int nuclasses, nstreetdir, ke_urbanmax, ie_tot;
+
+	/**
+	 * Number of values per street direction: street width, street surface sum,
+	 * adjusted building probability and building probability of each level
+	 */
+	private final int dirSize;
+
+	/**
+	 * Offset of the building fraction in the values of a cell
+	 */
+	private final int buildingFracOffset;
+
+	/**
+	 * Values of the grid cells, key is {@code irlat * ie_tot + irlon}
+	 */
+	private final Map<Integer, double[]> cells = new HashMap<>();
+
+	/**
+	 * Last cell used, the walls of a building are all in the same cell
+	 */
+	private int lastKey = -1;
+	private double[] lastCell;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param uclm Urban configuration defining the dimensions
+	 */
+	public CityGMLGridSums(UrbanCLMConfiguration uclm) {
+		this.nuclasses = uclm.getNuclasses();
+		this.nstreetdir = uclm.getNstreedir();
+		this.ke_urbanmax = uclm.getKe_urbanMax();
+		this.ie_tot = uclm.getIe_tot();
+		this.dirSize = 3 + ke_urbanmax;
+		this.buildingFracOffset = nuclasses * nstreetdir * dirSize;
+	}
+
+	private double[] getCell(int irlat, int irlon) {
+		int key = irlat * ie_tot + irlon;
+		if (key != lastKey) {
+			lastCell = cells.computeIfAbsent(key, (k) -> new double[buildingFracOffset + nuclasses]);
+			lastKey = key;
+		}
+		return lastCell;
+	}
+
+	private int getDirOffset(int uc, int dir) {
+		return (uc * nstreetdir + dir) * dirSize;
+	}
+
+	public void incStreetWidth(int uc, int dir, int irlat, int irlon, double value) {
+		getCell(irlat, irlon)[getDirOffset(uc, dir)] += value;
+	}
+
+	public void incStreetSurfaceSum(int uc, int dir, int irlat, int irlon, double value) {
+		getCell(irlat, irlon)[getDirOffset(uc, dir) + 1] += value;
+	}
+
+	public void incBuildProbAdjusted(int uc, int dir, int irlat, int irlon, double value) {
+		getCell(irlat, irlon)[getDirOffset(uc, dir) + 2] += value;
+	}
+
+	public void incBuildProb(int uc, int dir, int heighti, int irlat, int irlon, double value) {
+		getCell(irlat, irlon)[getDirOffset(uc, dir) + 3 + heighti] += value;
+	}
+
+	public void incBuildingFrac(int uc, int irlat, int irlon, double value) {
+		getCell(irlat, irlon)[buildingFracOffset + uc] += value;
+	}
+
+	/**
+	 * Add the sums of another object to these sums.
+	 *
+	 * @param other Sums to add, cleared afterwards
+	 */
+	public void merge(CityGMLGridSums other) {
+		for (Map.Entry<Integer, double[]> entry : other.cells.entrySet()) {
+			double[] cell = cells.get(entry.getKey());
+			if (cell == null) {
+				cells.put(entry.getKey(), entry.getValue());
+			} else {
+				double[] otherCell = entry.getValue();
+				for (int i = 0; i < cell.length; i++) {
+					cell[i] += otherCell[i];
+				}
+			}
+		}
+		other.cells.clear();
+		other.lastKey = -1;
+		other.lastCell = null;
+	}
+
+	/**
+	 * Add the sums to the urban configuration. Values which have not been
+	 * incremented are skipped.
+	 *
+	 * @param uclm Urban configuration
+	 */
+	public void addTo(UrbanCLMConfiguration uclm) {
+		for (Map.Entry<Integer, double[]> entry : cells.entrySet()) {
+			int irlat = entry.getKey() / ie_tot;
+			int irlon = entry.getKey() % ie_tot;
+			double[] cell = entry.getValue();
+			for (int uc = 0; uc < nuclasses; uc++) {
+				for (int dir = 0; dir < nstreetdir; dir++) {
+					int offset = getDirOffset(uc, dir);
+					if (cell[offset] != 0.) {
+						uclm.incStreetWidth(uc, dir, irlat, irlon, cell[offset]);
+					}
+					if (cell[offset + 1] != 0.) {
+						uclm.incStreetSurfaceSum(uc, dir, irlat, irlon, cell[offset + 1]);
+					}
+					if (cell[offset + 2] != 0.) {
+						uclm.incBuildProbAdjusted(uc, dir, irlat, irlon, cell[offset + 2]);
+					}
+					for (int lev = 0; lev < ke_urbanmax; lev++) {
+						if (cell[offset + 3 + lev] != 0.) {
+							uclm.incBuildProb(uc, dir, lev, irlat, irlon, cell[offset + 3 + lev]);
+						}
+					}
+				}
+				if (cell[buildingFracOffset + uc] != 0.) {
+					uclm.incBuildingFrac(uc, irlat, irlon, cell[buildingFracOffset + uc]);
+				}
+			}
+		}
+		cells.clear();
+		lastKey = -1;
+		lastCell = null;
+	}
+
+}
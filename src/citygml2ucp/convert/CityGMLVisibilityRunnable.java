@@ -5,6 +5,7 @@ package citygml2ucp.convert;
 
 import citygml2ucp.tools.Polygon3d;
 import citygml2ucp.tools.Polygon3dWithVisibilities;
+import citygml2ucp.tools.ProgressReporter;
 import citygml2ucp.tools.SimpleBuilding;
 
 /**
@@ -20,12 +21,16 @@ public class CityGMLVisibilityRunnable implements Runnable {
 	private final int start, end;
 	
 	private final int chunkIndex, nChunks;
+
+	private final ProgressReporter progress;
 		
 	/**
 	 * 
 	 */
-	public CityGMLVisibilityRunnable(CityGMLConverterData citydata, int start, int end, int chunkIndex, int nChunks, CityGMLConverterConf conf) {
+	public CityGMLVisibilityRunnable(CityGMLConverterData citydata, int start, int end, int chunkIndex, int nChunks,
+			CityGMLConverterConf conf, ProgressReporter progress) {
 		this.citydata = citydata;
+		this.progress = progress;
 		this.start = start;
 		this.end = end;
 		
@@ -38,58 +43,74 @@ public class CityGMLVisibilityRunnable implements Runnable {
 	@Override
 	public void run() {
 		
-		// length of maximum number in message
-		int outputLength;
-		if (nChunks == 1) {
-			// write number of building in case of only one chunk
-			outputLength = (int) (Math.log10(citydata.buildings.size()) + 1);
-		} else {
-			// write of chunk
-			outputLength = (int) (Math.log10(nChunks) + 1);
+		// length of maximum number in message, progress of single buildings is
+		// reported by progress
+		int outputLength = (int) (Math.log10(nChunks) + 1);
+		if (nChunks > 1) {
 			System.out.println(" Started chunk  " + String.format("%" + outputLength + "d", chunkIndex + 1)
 			+ "/" + nChunks);
 		}
+
+		// counted by this thread only, null if no metrics are collected
+		VisibilityMetrics.Counters metrics = citydata.metrics == null ? null : citydata.metrics.get();
 		
 		for (int iBuildingSending = this.start; iBuildingSending < this.end; iBuildingSending++) {
-			if (nChunks == 1) {
-				System.out.println(" Building " + String.format("%" + outputLength + "d", iBuildingSending + 1)
-						+ "/" + citydata.buildings.size());
-			}
 			SimpleBuilding buildingSending = citydata.buildings.get(iBuildingSending);
 
+			// results of buildings outside of the domain are not required
+			if (conf.saveMemory && !buildingSending.isInDomain()) {
+				progress.addDone(1);
+				continue;
+			}
+
+			// wall pairs tested for this building
+			long nPairs = 0;
+			// further work of this building, added to metrics once per building
+			long nCandidates = 0, nOccluders = 0, nVisible = 0;
+
 //			int iWallSendingStart;
 //			if (conf.saveMemory) {
 //				iWallSendingStart = buildingSending.walls.size();
 //			} else {
 //				iWallSendingStart = buildingSending.walls.size() - 1;
 //			}
-			for (int iWallSending = 0; iWallSending < buildingSending.walls.size(); iWallSending++) {
-				Polygon3dWithVisibilities wallSending = buildingSending.walls.get(iWallSending);
-
-				// check other buildings, skip current
-				int iBuildReceivingStart;
-				if (conf.saveMemory) {
-					iBuildReceivingStart = 0;
-				} else {
-					iBuildReceivingStart = iBuildingSending + 1;
+			// check other buildings, skip current
+			int iBuildReceivingStart;
+			if (conf.saveMemory) {
+				iBuildReceivingStart = 0;
+			} else {
+				iBuildReceivingStart = iBuildingSending + 1;
+			}
+
+			for (int iBuildingReceiving = iBuildReceivingStart ; iBuildingReceiving < citydata.buildings
+					.size(); iBuildingReceiving++) {
+
+				if (iBuildingSending == iBuildingReceiving)	continue;
+
+				SimpleBuilding buildingReceiving = citydata.buildings.get(iBuildingReceiving);
+
+				// nothing to store if both buildings are outside of the domain
+				if (!buildingSending.isInDomain() && !buildingReceiving.isInDomain()) {
+					continue;
 				}
-					
-				for (int iBuildingReceiving = iBuildReceivingStart ; iBuildingReceiving < citydata.buildings
-						.size(); iBuildingReceiving++) {
-					
-					if (iBuildingSending == iBuildingReceiving)	continue;
-					
-					SimpleBuilding buildingReceiving = citydata.buildings.get(iBuildingReceiving);
-
-					// if buildings are too far away, skip:
-					double distanceSendiungReceiving = buildingSending.location.distance(buildingReceiving.location);
-					if (distanceSendiungReceiving > citydata.conf.maxbuild_radius) {
-						continue;
-					}
+
+				// if buildings are too far away, skip:
+				double distanceSendiungReceiving = buildingSending.location.distance(buildingReceiving.location);
+				if (distanceSendiungReceiving > citydata.conf.maxbuild_radius) {
+					continue;
+				}
+
+				nCandidates++;
+
+				// the visibilities of every wall are added in the order of the
+				// receiving buildings and walls
+				for (int iWallSending = 0; iWallSending < buildingSending.walls.size(); iWallSending++) {
+					Polygon3dWithVisibilities wallSending = buildingSending.walls.get(iWallSending);
 
 					// distance is ok, so check every other surface
 					for (int iWallReceiving = 0; iWallReceiving < buildingReceiving.walls.size(); iWallReceiving++) {
 						Polygon3dWithVisibilities wallReceiving = buildingReceiving.walls.get(iWallReceiving);
+						nPairs++;
 
 						//							if (iBuildingSending == iBuildingReceiving && iWallSending >= iWallReceiving)
 						//								continue;
@@ -112,12 +133,13 @@ public class CityGMLVisibilityRunnable implements Runnable {
 							if (distenceDifference > citydata.conf.maxcheck_radius) {
 								continue;
 							}
+							nOccluders++;
 
 							// check wall surfaces
 							for (Polygon3dWithVisibilities wallChecking : buildingChecking.walls) {
 								// skip check surface if it is sending or receiving
 								if (wallChecking == wallSending || wallChecking == wallReceiving) continue;
-								if (wallChecking.isHitBy(wallSending.getCentroid(), wallReceiving.getCentroid())) {
+								if (wallChecking.isHitBy(wallSending.getCentroid(), wallReceiving.getCentroid(), metrics)) {
 									vis = false;
 									break;
 								}
@@ -128,7 +150,7 @@ public class CityGMLVisibilityRunnable implements Runnable {
 
 							// check roof surfaces
 							for (Polygon3d roofChecking : buildingChecking.roofs) {
-								if (roofChecking.isHitBy(wallSending.getCentroid(), wallReceiving.getCentroid())) {
+								if (roofChecking.isHitBy(wallSending.getCentroid(), wallReceiving.getCentroid(), metrics)) {
 									vis = false;
 									break;
 								}
@@ -139,6 +161,7 @@ public class CityGMLVisibilityRunnable implements Runnable {
 						}
 						
 						if (vis) {
+							nVisible++;
 							wallSending.visibilities.add(wallReceiving);
 							if (!conf.saveMemory) {
 								wallReceiving.visibilities.add(wallSending);
@@ -149,8 +172,17 @@ public class CityGMLVisibilityRunnable implements Runnable {
 				}
 			}
 			
+			progress.addPairs(nPairs);
+			if (metrics != null) {
+				metrics.candidateBuildings += nCandidates;
+				metrics.wallPairs += nPairs;
+				metrics.occluderBuildings += nOccluders;
+				metrics.visiblePairs += nVisible;
+			}
+			progress.addDone(1);
+
 			if (conf.saveMemory) {
-				citydata.calcStreetPropertiesForBuilding(buildingSending);
+				citydata.calcStreetPropertiesForBuilding(iBuildingSending);
 				// remove stored visibilities
 				for (Polygon3dWithVisibilities sending : buildingSending.walls) {
 					sending.visibilities = null;
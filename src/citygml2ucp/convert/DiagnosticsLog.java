@@ -0,0 +1,221 @@
+package citygml2ucp.convert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import citygml2ucp.convert.CityGMLConverterStats.Diagnostic;
+
+/**
+ * Thread-safe collection of the diagnostics of a run with bounded memory.
+ *
+ * Every thread appends the diagnostics to its own buffer, which is written to
+ * a temporary file per kind of diagnostic when full. Only the number of
+ * diagnostics of every kind is kept in memory. At the end, the temporary
+ * files are combined to the log of the run. Diagnostics with a surface are
+ * grouped by building as long as they follow each other in the same buffer.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class DiagnosticsLog {
+
+	/**
+	 * Number of characters buffered by a thread before written to the files
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	/**
+	 * Buffer of a thread
+	 */
+	private class Buffer {
+		final Map<Diagnostic, StringBuilder> text = new EnumMap<>(Diagnostic.class);
+		final Map<Diagnostic, String> lastBuilding = new EnumMap<>(Diagnostic.class);
+		int length;
+
+		synchronized void add(Diagnostic kind, String buildingId, String surfaceId) throws IOException {
+			StringBuilder sb = text.computeIfAbsent(kind, (k) -> new StringBuilder());
+			int before = sb.length();
+			if (hasSurface(kind)) {
+				if (!buildingId.equals(lastBuilding.get(kind))) {
+					sb.append(" Building ").append(buildingId).append(LINE_SEPARATOR);
+					lastBuilding.put(kind, buildingId);
+				}
+				sb.append("  Surface ").append(surfaceId).append(LINE_SEPARATOR);
+			} else {
+				sb.append(' ').append(buildingId).append(LINE_SEPARATOR);
+			}
+			length += sb.length() - before;
+			if (length >= BUFFER_SIZE) {
+				flush();
+			}
+		}
+
+		synchronized void flush() throws IOException {
+			for (Map.Entry<Diagnostic, StringBuilder> entry : text.entrySet()) {
+				if (entry.getValue().length() > 0) {
+					write(entry.getKey(), entry.getValue());
+					entry.getValue().setLength(0);
+				}
+			}
+			lastBuilding.clear();
+			length = 0;
+		}
+	}
+
+	/**
+	 * Directory of the temporary files
+	 */
+	private final Path directory;
+
+	private final ThreadLocal<Buffer> buffer;
+
+	/**
+	 * Buffers of all threads
+	 */
+	private final List<Buffer> buffers = new ArrayList<>();
+
+	/**
+	 * Temporary files and their writers, created when first needed
+	 */
+	private final Map<Diagnostic, Path> files = new EnumMap<>(Diagnostic.class);
+	private final Map<Diagnostic, Writer> writers = new EnumMap<>(Diagnostic.class);
+
+	private final Map<Diagnostic, LongAdder> counts = new EnumMap<>(Diagnostic.class);
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory Directory of the temporary files
+	 */
+	DiagnosticsLog(Path directory) {
+		this.directory = directory;
+		for (Diagnostic kind : Diagnostic.values()) {
+			counts.put(kind, new LongAdder());
+		}
+		buffer = ThreadLocal.withInitial(() -> {
+			Buffer b = new Buffer();
+			synchronized (buffers) {
+				buffers.add(b);
+			}
+			return b;
+		});
+	}
+
+	/**
+	 * Are diagnostics of this kind listed with their surface?
+	 */
+	static boolean hasSurface(Diagnostic kind) {
+		return kind == Diagnostic.INVALID || kind == Diagnostic.NON_PLANAR
+				|| kind == Diagnostic.SURFACE_WITHOUT_DISTANCE;
+	}
+
+	/**
+	 * Add a diagnostic.
+	 *
+	 * @param kind       Kind of the diagnostic
+	 * @param buildingId Building ID (file name for read errors)
+	 * @param surfaceId  Surface ID, only used if {@link #hasSurface(Diagnostic)}
+	 * @throws IOException Temporary file cannot be written
+	 */
+	void add(Diagnostic kind, String buildingId, String surfaceId) throws IOException {
+		counts.get(kind).increment();
+		buffer.get().add(kind, buildingId, surfaceId);
+	}
+
+	/**
+	 * Get the number of diagnostics of a kind.
+	 *
+	 * @param kind Kind of the diagnostic
+	 * @return Number of diagnostics
+	 */
+	long getCount(Diagnostic kind) {
+		return counts.get(kind).sum();
+	}
+
+	private void write(Diagnostic kind, CharSequence text) throws IOException {
+		Writer writer;
+		synchronized (writers) {
+			writer = writers.get(kind);
+			if (writer == null) {
+				Path file = files.get(kind);
+				if (file == null) {
+					file = Files.createTempFile(directory, "diagnostics", ".tmp");
+					file.toFile().deleteOnExit();
+					files.put(kind, file);
+				}
+				writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+				writers.put(kind, writer);
+			}
+		}
+		synchronized (writer) {
+			writer.append(text);
+		}
+	}
+
+	/**
+	 * Flush the buffers of all threads and close the temporary files, which are
+	 * opened again if needed. No diagnostics must be added at the same time.
+	 *
+	 * @throws IOException Temporary file cannot be written
+	 */
+	private void flush() throws IOException {
+		synchronized (buffers) {
+			for (Buffer b : buffers) {
+				b.flush();
+			}
+		}
+		synchronized (writers) {
+			for (Writer writer : writers.values()) {
+				writer.close();
+			}
+			writers.clear();
+		}
+	}
+
+	/**
+	 * Write the diagnostics of a kind to the log.
+	 *
+	 * @param out    Log
+	 * @param header Header of the diagnostics
+	 * @param kind   Kind of the diagnostic
+	 * @throws IOException
+	 */
+	void writeSection(BufferedWriter out, String header, Diagnostic kind) throws IOException {
+		flush();
+		out.append(header + ": " + getCount(kind));
+		out.append(LINE_SEPARATOR);
+		Path file = files.get(kind);
+		if (file != null) {
+			try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				in.transferTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Delete the temporary files.
+	 *
+	 * @throws IOException
+	 */
+	void delete() throws IOException {
+		flush();
+		for (Path file : files.values()) {
+			Files.deleteIfExists(file);
+		}
+		files.clear();
+	}
+
+}
@@ -0,0 +1,407 @@
+package citygml2ucp.convert;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.proj4.PJException;
+
+import citygml2ucp.configuration.UrbanCLMConfiguration;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+/**
+ * Reader of the impervious surface data, either from a NetCDF file on a grid
+ * starting at the same grid cell as the domain or from an ASCII file with one
+ * grid cell per line.
+ *
+ * Only the part of the NetCDF variable covering the domain is read in blocks
+ * of rows. The ASCII file is memory-mapped and split into ranges of lines,
+ * which are parsed in parallel. Only the columns of latitude, longitude and
+ * impervious surface are parsed. The values are stored in the order of the
+ * lines, so if a grid cell occurs several times, the last line is used.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class ImperviousSurfaceReader {
+
+	/**
+	 * Approximate number of values read from the NetCDF file at once
+	 */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Maximum length of a line in bytes
+	 */
+	private static final int MAX_LINE_LENGTH = 1 << 20;
+
+	/**
+	 * Maximum length of a range of lines in bytes
+	 */
+	private static final long MAX_RANGE_LENGTH = 1L << 30;
+
+	/**
+	 * Powers of ten which are exactly representable as double
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.;
+		}
+	}
+
+	private final CityGMLConverterConf conf;
+	private final UrbanCLMConfiguration uclm;
+
+	/**
+	 * Separator if it is a single character, otherwise -1
+	 */
+	private final int sepChar;
+
+	/**
+	 * Separator as regular expression if it is not a single character
+	 */
+	private final Pattern sepPattern;
+
+	/**
+	 * Number of columns to parse
+	 */
+	private final int nColumns;
+
+	/**
+	 * Values of the lines of a range of the file
+	 */
+	private static class Values {
+		int n = 0;
+		int[] cells = new int[1024];
+		double[] values = new double[1024];
+
+		void add(int cell, double value) {
+			if (n == cells.length) {
+				cells = Arrays.copyOf(cells, 2 * n);
+				values = Arrays.copyOf(values, 2 * n);
+			}
+			cells[n] = cell;
+			values[n] = value;
+			n++;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param conf Configuration of this run (includes file information)
+	 * @param uclm Urban configuration to store the data to
+	 */
+	public ImperviousSurfaceReader(CityGMLConverterConf conf, UrbanCLMConfiguration uclm) {
+		this.conf = conf;
+		this.uclm = uclm;
+		// the separator is a regular expression as used before by Scanner
+		String sep = conf.sepString;
+		if (sep.length() == 1 && ".$|()[]{}^?*+\\".indexOf(sep.charAt(0)) < 0) {
+			sepChar = sep.charAt(0);
+			sepPattern = null;
+		} else if (sep.length() == 2 && sep.charAt(0) == '\\' && sep.charAt(1) == 't') {
+			sepChar = '\t';
+			sepPattern = null;
+		} else {
+			sepChar = -1;
+			sepPattern = Pattern.compile(sep);
+		}
+		nColumns = Math.max(conf.rowImpSurf, Math.max(conf.rowLat, conf.rowLon));
+	}
+
+	/**
+	 * Read the file and set the urban fraction.
+	 *
+	 * @throws IOException              File cannot be read or NetCDF variable
+	 *                                  not suitable
+	 * @throws InterruptedException     Interrupted while waiting for the threads
+	 * @throws IllegalArgumentException Coordinate outside of the domain or
+	 *                                  illegal number
+	 * @throws PJException              Error in coordinate transformation of
+	 *                                  regridded raster
+	 */
+	public void read() throws IOException, InterruptedException, PJException {
+		if (conf.impSurfRegrid) {
+			new ImperviousSurfaceRegridder(conf, uclm).regrid();
+		} else if (conf.impSurfFileNC) {
+			readNetCDF();
+		} else {
+			readAscii();
+		}
+	}
+
+	/**
+	 * Read the part of the NetCDF variable covering the domain.
+	 */
+	private void readNetCDF() throws IOException {
+		int ie = uclm.getIe_tot();
+		int je = uclm.getJe_tot();
+		try (NetcdfFile ncfile = NetcdfFile.open(conf.impSurfFile)) {
+			Variable v = ncfile.findVariable(conf.variableImpSurf);
+			if (v == null) {
+				throw new IOException("Variable " + conf.variableImpSurf + " not found in "
+						+ conf.impSurfFile + ".");
+			}
+			int[] shape = v.getShape();
+			if (v.getRank() != 2 || !v.getDataType().isNumeric()) {
+				throw new IOException("Variable " + conf.variableImpSurf
+						+ " must be a numeric field with 2 dimensions.");
+			}
+			if (shape[0] < je || shape[1] < ie) {
+				throw new IOException("Variable " + conf.variableImpSurf
+						+ " smaller than the domain.");
+			}
+
+			double[] frUrb = uclm.getUrbanFracData();
+			int blockRows = Math.max(1, BLOCK_SIZE / ie);
+			for (int lat0 = 0; lat0 < je; lat0 += blockRows) {
+				int nRows = Math.min(blockRows, je - lat0);
+				Array block;
+				try {
+					block = v.read(new int[] { lat0, 0 }, new int[] { nRows, ie });
+				} catch (InvalidRangeException e) {
+					throw new IOException(e);
+				}
+				int offset = lat0 * ie;
+				if (v.getDataType() == DataType.DOUBLE) {
+					System.arraycopy(block.get1DJavaArray(DataType.DOUBLE), 0, frUrb, offset, nRows * ie);
+				} else {
+					// converted from the type of the file
+					for (int i = 0; i < nRows * ie; i++) {
+						frUrb[offset + i] = block.getDouble(i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the ASCII file.
+	 */
+	private void readAscii() throws IOException, InterruptedException {
+		Path file = Path.of(conf.impSurfFile);
+		long size = Files.size(file);
+		long start = skipHeader(file);
+
+		// ranges of about equal length, each thread gets several
+		int nRanges = (int) Math.max(4L * conf.nThreads, (size - start) / MAX_RANGE_LENGTH + 1);
+		long rangeLength = (size - start + nRanges - 1) / nRanges;
+
+		ExecutorService exec = Executors.newFixedThreadPool(conf.nThreads);
+		List<Future<Values>> ranges = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (long rangeStart = start; rangeStart < size; rangeStart += rangeLength) {
+				long from = rangeStart;
+				long to = Math.min(size, rangeStart + rangeLength);
+				ranges.add(exec.submit(() -> readRange(channel, size, from, to, from == start)));
+			}
+
+			double[] frUrb = uclm.getUrbanFracData();
+			for (Future<Values> range : ranges) {
+				Values values = range.get();
+				for (int i = 0; i < values.n; i++) {
+					frUrb[values.cells[i]] = values.values[i];
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			exec.shutdownNow();
+		}
+	}
+
+	/**
+	 * Find the start of the first line after the lines to skip.
+	 */
+	private long skipHeader(Path file) throws IOException {
+		long position = 0;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			for (int i = 0; i < conf.skipLines; i++) {
+				int c;
+				long lineStart = position;
+				while ((c = in.read()) >= 0) {
+					position++;
+					if (c == '\n') {
+						break;
+					}
+				}
+				if (c < 0 && position == lineStart) {
+					throw new IOException(
+							"Impervious Surface has less lines then skipped at beginning.");
+				}
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Read the lines starting in {@code [from, to)}.
+	 *
+	 * @param first {@code from} is the start of a line?
+	 */
+	private Values readRange(FileChannel channel, long size, long from, long to, boolean first)
+			throws IOException {
+		long mapStart = first ? from : from - 1;
+		long mapEnd = Math.min(size, to + MAX_LINE_LENGTH);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+		int end = (int) (to - mapStart);
+		int limit = buffer.limit();
+
+		int pos = 0;
+		if (!first) {
+			// line starting before the range belongs to the previous range
+			while (pos < limit && buffer.get(pos) != '\n') {
+				pos++;
+			}
+			pos++;
+		}
+
+		Values values = new Values();
+		int[] starts = new int[nColumns];
+		int[] ends = new int[nColumns];
+		while (pos < end) {
+			int lineEnd = pos;
+			while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			if (lineEnd == limit && mapEnd < size) {
+				throw new IOException("Line in " + conf.impSurfFile + " longer than "
+						+ MAX_LINE_LENGTH + " bytes.");
+			}
+			int next = lineEnd + 1;
+			if (lineEnd > pos && buffer.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			if (lineEnd > pos) {
+				readLine(buffer, pos, lineEnd, starts, ends, values);
+			}
+			pos = next;
+		}
+		return values;
+	}
+
+	/**
+	 * Parse a line and add its value.
+	 */
+	private void readLine(MappedByteBuffer buffer, int pos, int lineEnd, int[] starts, int[] ends,
+			Values values) {
+		if (sepChar >= 0) {
+			int column = 0;
+			int tokenStart = pos;
+			for (int i = pos; i <= lineEnd && column < nColumns; i++) {
+				if (i == lineEnd || buffer.get(i) == sepChar) {
+					starts[column] = tokenStart;
+					ends[column] = i;
+					column++;
+					tokenStart = i + 1;
+				}
+			}
+			if (column < nColumns) {
+				throw new IllegalArgumentException("Line in " + conf.impSurfFile + " has only "
+						+ column + " columns.");
+			}
+			double lat = parseDouble(buffer, starts[conf.rowLat - 1], ends[conf.rowLat - 1]);
+			double lon = parseDouble(buffer, starts[conf.rowLon - 1], ends[conf.rowLon - 1]);
+			double impSurf = parseDouble(buffer, starts[conf.rowImpSurf - 1], ends[conf.rowImpSurf - 1]);
+			add(lat, lon, impSurf, values);
+		} else {
+			String[] columns = sepPattern.split(getString(buffer, pos, lineEnd).trim());
+			add(Double.parseDouble(columns[conf.rowLat - 1]), Double.parseDouble(columns[conf.rowLon - 1]),
+					Double.parseDouble(columns[conf.rowImpSurf - 1]), values);
+		}
+	}
+
+	private void add(double lat, double lon, double impSurf, Values values) {
+		int irlat = uclm.getRLatIndex(lat);
+		int irlon = uclm.getRLonIndex(lon);
+		values.add(irlat * uclm.getIe_tot() + irlon, impSurf);
+	}
+
+	/**
+	 * Parse a decimal number.
+	 *
+	 * Numbers with up to 15 significant digits and without exponent are
+	 * converted directly, which is exact, all others by
+	 * {@link Double#parseDouble(String)}.
+	 */
+	private static double parseDouble(MappedByteBuffer buffer, int start, int end) {
+		// trimmed like in Double.parseDouble
+		while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		boolean digits = false;
+		int nDigits = 0;
+		int nFractionDigits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			byte c = buffer.get(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = 10 * mantissa + (c - '0');
+				digits = true;
+				if (mantissa > 0) {
+					nDigits++;
+				}
+				if (point) {
+					nFractionDigits++;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (i == end && digits && nDigits <= 15 && nFractionDigits < POWERS_OF_TEN.length) {
+			double value = mantissa / POWERS_OF_TEN[nFractionDigits];
+			return negative ? -value : value;
+		}
+
+		return Double.parseDouble(getString(buffer, start, end));
+	}
+
+	private static String getString(MappedByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,406 @@
+package citygml2ucp.convert;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.proj4.PJ;
+import org.proj4.PJException;
+
+import citygml2ucp.configuration.UrbanCLMConfiguration;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+/**
+ * Conservative regridding of an impervious surface raster in a projected
+ * coordinate system onto the rotated grid.
+ *
+ * The raster is a NetCDF variable with dimensions y and x and 1D coordinate
+ * variables of the cell centres. Every raster cell is divided into
+ * {@code impSurfSubsamples}² parts, whose centres are transformed to the
+ * rotated grid. The area of every part is added to the grid cell containing
+ * its centre, so the urban fraction of a grid cell is the area-weighted mean
+ * of the raster values covering it. Raster cells with missing values
+ * ({@code _FillValue}, {@code missing_value} or NaN) are not used, grid cells
+ * without any raster cell keep 0.
+ *
+ * Only the window of the raster covering the grid is read: the boundary of the
+ * grid is transformed to the coordinate system of the raster once and its
+ * bounding box is extended by a margin. The window is read in tiles of rows,
+ * which are transformed and summed in parallel, so the raster is never held
+ * in memory completely. The sums of the tiles are added in the order of the
+ * tiles, so the result does not depend on the number of threads.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class ImperviousSurfaceRegridder {
+
+	/**
+	 * Approximate number of raster cells of a tile
+	 */
+	private static final int TILE_SIZE = 1 << 18;
+
+	private final CityGMLConverterConf conf;
+	private final UrbanCLMConfiguration uclm;
+
+	/**
+	 * Coordinate transformation of every thread, PJ objects must not be shared
+	 */
+	private final ThreadLocal<PJ[]> pj;
+
+	/**
+	 * Range of the rotated coordinates covered by the grid
+	 */
+	private final double minRLat, maxRLat, minRLon, maxRLon;
+
+	/**
+	 * Cell boundaries of the raster in x and y direction
+	 */
+	private double[] xBounds, yBounds;
+
+	/**
+	 * Values marking missing data in the raster
+	 */
+	private double fillValue = Double.NaN, missingValue = Double.NaN;
+
+	/**
+	 * Sums of a tile for the grid cells in the bounding box of the tile
+	 */
+	private static class TileSums {
+		int lat0, lon0, nLat, nLon;
+		double[] value, area;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param conf Configuration of this run (includes file information)
+	 * @param uclm Urban configuration to store the data to
+	 */
+	public ImperviousSurfaceRegridder(CityGMLConverterConf conf, UrbanCLMConfiguration uclm) {
+		this.conf = conf;
+		this.uclm = uclm;
+		this.pj = ThreadLocal.withInitial(() -> new PJ[] { new PJ(conf.impSurfProj4code),
+				new PJ("+init=epsg:4326 +latlong") });
+		// same range as accepted by getRLatIndex and getRLonIndex
+		minRLat = uclm.getRLat(0) - uclm.getDlat() / 2.;
+		maxRLat = uclm.getRLat(uclm.getJe_tot() - 1) + uclm.getDlat() / 2.;
+		minRLon = uclm.getRLon(0) - uclm.getDlon() / 2.;
+		maxRLon = uclm.getRLon(uclm.getIe_tot() - 1) + uclm.getDlon() / 2.;
+	}
+
+	/**
+	 * Regrid the raster and set the urban fraction.
+	 *
+	 * @throws IOException          File cannot be read or variables not suitable
+	 * @throws InterruptedException Interrupted while waiting for the threads
+	 * @throws PJException          Error in coordinate transformation
+	 */
+	public void regrid() throws IOException, InterruptedException, PJException {
+		int ie = uclm.getIe_tot();
+		double[] frUrb = uclm.getUrbanFracData();
+		double[] area = new double[frUrb.length];
+
+		ExecutorService exec = Executors.newFixedThreadPool(conf.nThreads);
+		try (NetcdfFile ncfile = NetcdfFile.open(conf.impSurfFile)) {
+			Variable v = findVariable(ncfile, conf.variableImpSurf);
+			xBounds = getBounds(findVariable(ncfile, conf.impSurfXVariable));
+			yBounds = getBounds(findVariable(ncfile, conf.impSurfYVariable));
+			int nx = xBounds.length - 1;
+			int ny = yBounds.length - 1;
+			int[] shape = v.getShape();
+			if (v.getRank() != 2 || shape[0] != ny || shape[1] != nx) {
+				throw new IOException("Variable " + conf.variableImpSurf + " must have the dimensions "
+						+ conf.impSurfYVariable + " and " + conf.impSurfXVariable + ".");
+			}
+			Attribute fill = v.findAttribute("_FillValue");
+			if (fill != null) {
+				fillValue = fill.getNumericValue().doubleValue();
+			}
+			Attribute missing = v.findAttribute("missing_value");
+			if (missing != null) {
+				missingValue = missing.getNumericValue().doubleValue();
+			}
+
+			// x0, y0, x1, y1 (exclusive)
+			int[] window = getWindow();
+			int col0 = window[0];
+			int nCols = window[2] - window[0];
+
+			// read tiles in order, sum them in parallel and add the sums in order
+			Deque<Future<TileSums>> tiles = new ArrayDeque<>();
+			int tileRows = Math.max(1, TILE_SIZE / Math.max(1, nCols));
+			for (int y0 = window[1]; y0 < window[3]; y0 += tileRows) {
+				int row0 = y0;
+				int nRows = Math.min(tileRows, window[3] - y0);
+				Array tile;
+				try {
+					tile = v.read(new int[] { y0, col0 }, new int[] { nRows, nCols });
+				} catch (InvalidRangeException e) {
+					throw new IOException(e);
+				}
+				tiles.add(exec.submit(() -> sumTile(tile, row0, nRows, col0, nCols)));
+				// limit the number of tiles in memory
+				while (tiles.size() > 2 * conf.nThreads) {
+					addTileSums(tiles.poll().get(), frUrb, area, ie);
+				}
+			}
+			while (!tiles.isEmpty()) {
+				addTileSums(tiles.poll().get(), frUrb, area, ie);
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof PJException) {
+				throw (PJException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			exec.shutdownNow();
+		}
+
+		for (int i = 0; i < frUrb.length; i++) {
+			if (area[i] > 0.) {
+				frUrb[i] = frUrb[i] / area[i];
+			}
+		}
+	}
+
+	private static Variable findVariable(NetcdfFile ncfile, String name) throws IOException {
+		Variable v = ncfile.findVariable(name);
+		if (v == null) {
+			throw new IOException("Variable " + name + " not found.");
+		}
+		return v;
+	}
+
+	/**
+	 * Get the cell boundaries from the coordinates of the cell centres.
+	 */
+	private static double[] getBounds(Variable v) throws IOException {
+		if (v.getRank() != 1) {
+			throw new IOException("Coordinate variable " + v.getShortName() + " must have 1 dimension.");
+		}
+		Array centres = v.read();
+		int n = (int) centres.getSize();
+		if (n < 2) {
+			throw new IOException("Coordinate variable " + v.getShortName() + " needs at least 2 values.");
+		}
+		double[] bounds = new double[n + 1];
+		for (int i = 1; i < n; i++) {
+			bounds[i] = (centres.getDouble(i - 1) + centres.getDouble(i)) / 2.;
+		}
+		bounds[0] = 2. * centres.getDouble(0) - bounds[1];
+		bounds[n] = 2. * centres.getDouble(n - 1) - bounds[n - 1];
+		return bounds;
+	}
+
+	/**
+	 * Get the window of the raster covering the grid.
+	 *
+	 * The boundary of the grid is sampled at the cell boundaries and transformed
+	 * to the coordinate system of the raster. The bounding box of these points is
+	 * extended by the largest distance between neighbouring points, because the
+	 * boundary may bend outwards between them, and by a raster cell on every
+	 * side. If the boundary cannot be transformed, the complete raster is used.
+	 *
+	 * @return First column, first row, last column + 1 and last row + 1
+	 * @throws PJException Error in coordinate transformation
+	 */
+	private int[] getWindow() throws PJException {
+		int nx = xBounds.length - 1;
+		int ny = yBounds.length - 1;
+		int ie = uclm.getIe_tot();
+		int je = uclm.getJe_tot();
+
+		// boundary of the grid counter-clockwise as rlon, rlat
+		int nPoints = 2 * (ie + je);
+		double[][] rotated = new double[2][nPoints];
+		for (int i = 0; i < ie; i++) {
+			rotated[0][i] = minRLon + i * uclm.getDlon();
+			rotated[1][i] = minRLat;
+			rotated[0][ie + je + i] = maxRLon - i * uclm.getDlon();
+			rotated[1][ie + je + i] = maxRLat;
+		}
+		for (int j = 0; j < je; j++) {
+			rotated[0][ie + j] = maxRLon;
+			rotated[1][ie + j] = minRLat + j * uclm.getDlat();
+			rotated[0][2 * ie + je + j] = minRLon;
+			rotated[1][2 * ie + je + j] = maxRLat - j * uclm.getDlat();
+		}
+		double[][] latLon = new double[2][nPoints];
+		uclm.rotpol.projToLatLon(rotated, latLon);
+
+		// from lon, lat to the coordinate system of the raster
+		double[] xy = new double[2 * nPoints];
+		for (int i = 0; i < nPoints; i++) {
+			xy[2 * i] = latLon[1][i];
+			xy[2 * i + 1] = latLon[0][i];
+		}
+		PJ[] transform = pj.get();
+		transform[1].transform(transform[0], 2, xy, 0, nPoints);
+
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		double margin = 0.;
+		for (int i = 0; i < nPoints; i++) {
+			double x = xy[2 * i];
+			double y = xy[2 * i + 1];
+			if (!Double.isFinite(x) || !Double.isFinite(y)) {
+				return new int[] { 0, 0, nx, ny };
+			}
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+			int next = (i + 1) % nPoints;
+			margin = Math.max(margin, Math.hypot(xy[2 * next] - x, xy[2 * next + 1] - y));
+		}
+
+		int[] cols = getOverlap(xBounds, minX - margin, maxX + margin);
+		int[] rows = getOverlap(yBounds, minY - margin, maxY + margin);
+		return new int[] { cols[0], rows[0], cols[1], rows[1] };
+	}
+
+	/**
+	 * Get the cells overlapping a range, extended by a cell on both sides.
+	 *
+	 * @param bounds Increasing or decreasing cell boundaries
+	 * @param min    Lower end of the range
+	 * @param max    Upper end of the range
+	 * @return First cell and last cell + 1, both equal if no cell overlaps
+	 */
+	private static int[] getOverlap(double[] bounds, double min, double max) {
+		int first = -1, last = -1;
+		for (int i = 0; i < bounds.length - 1; i++) {
+			if (Math.min(bounds[i], bounds[i + 1]) <= max && Math.max(bounds[i], bounds[i + 1]) >= min) {
+				if (first < 0) {
+					first = i;
+				}
+				last = i;
+			}
+		}
+		if (first < 0) {
+			return new int[] { 0, 0 };
+		}
+		return new int[] { Math.max(0, first - 1), Math.min(bounds.length - 1, last + 2) };
+	}
+
+	private boolean isMissing(double value) {
+		return Double.isNaN(value) || value == fillValue || value == missingValue;
+	}
+
+	/**
+	 * Transform the sub-samples of a tile to the rotated grid and sum their
+	 * values and areas per grid cell.
+	 *
+	 * @param col0 First column of the tile in the raster
+	 * @param nx   Number of columns of the tile
+	 */
+	private TileSums sumTile(Array tile, int row0, int nRows, int col0, int nx) throws PJException {
+		int n = conf.impSurfSubsamples;
+		int nPoints = 0;
+		for (int i = 0; i < nRows * nx; i++) {
+			if (!isMissing(tile.getDouble(i))) {
+				nPoints += n * n;
+			}
+		}
+
+		// x1, y1, x2, y2, ... of the centres of the sub-samples
+		double[] xy = new double[2 * nPoints];
+		double[] value = new double[nPoints];
+		double[] area = new double[nPoints];
+		int k = 0;
+		for (int row = 0; row < nRows; row++) {
+			double y0 = yBounds[row0 + row];
+			double dy = (yBounds[row0 + row + 1] - y0) / n;
+			for (int col = 0; col < nx; col++) {
+				double cellValue = tile.getDouble(row * nx + col);
+				if (isMissing(cellValue)) {
+					continue;
+				}
+				double x0 = xBounds[col0 + col];
+				double dx = (xBounds[col0 + col + 1] - x0) / n;
+				for (int sy = 0; sy < n; sy++) {
+					for (int sx = 0; sx < n; sx++) {
+						xy[2 * k] = x0 + (sx + 0.5) * dx;
+						xy[2 * k + 1] = y0 + (sy + 0.5) * dy;
+						value[k] = cellValue;
+						area[k] = Math.abs(dx * dy);
+						k++;
+					}
+				}
+			}
+		}
+
+		// to geographical coordinates as lon, lat and then to rotated coordinates
+		PJ[] transform = pj.get();
+		transform[0].transform(transform[1], 2, xy, 0, nPoints);
+		double[][] latLon = new double[2][nPoints];
+		for (int i = 0; i < nPoints; i++) {
+			latLon[0][i] = xy[2 * i + 1];
+			latLon[1][i] = xy[2 * i];
+		}
+		double[][] rotated = new double[2][nPoints];
+		uclm.rotpol.latLonToProj(latLon, rotated, 0, 1);
+
+		// grid cells of the sub-samples, -1 if outside
+		int[] cells = new int[nPoints];
+		int minLat = Integer.MAX_VALUE, maxLat = -1, minLon = Integer.MAX_VALUE, maxLon = -1;
+		for (int i = 0; i < nPoints; i++) {
+			double rlon = rotated[0][i];
+			double rlat = rotated[1][i];
+			if (!(rlat >= minRLat && rlat <= maxRLat && rlon >= minRLon && rlon <= maxRLon)) {
+				cells[i] = -1;
+				continue;
+			}
+			int irlat = uclm.getRLatIndex(rlat);
+			int irlon = uclm.getRLonIndex(rlon);
+			cells[i] = irlat * uclm.getIe_tot() + irlon;
+			minLat = Math.min(minLat, irlat);
+			maxLat = Math.max(maxLat, irlat);
+			minLon = Math.min(minLon, irlon);
+			maxLon = Math.max(maxLon, irlon);
+		}
+
+		TileSums sums = new TileSums();
+		if (maxLat < 0) {
+			return sums;
+		}
+		sums.lat0 = minLat;
+		sums.lon0 = minLon;
+		sums.nLat = maxLat - minLat + 1;
+		sums.nLon = maxLon - minLon + 1;
+		sums.value = new double[sums.nLat * sums.nLon];
+		sums.area = new double[sums.nLat * sums.nLon];
+		for (int i = 0; i < nPoints; i++) {
+			if (cells[i] >= 0) {
+				int j = (cells[i] / uclm.getIe_tot() - sums.lat0) * sums.nLon
+						+ cells[i] % uclm.getIe_tot() - sums.lon0;
+				sums.value[j] += value[i] * area[i];
+				sums.area[j] += area[i];
+			}
+		}
+		return sums;
+	}
+
+	private static void addTileSums(TileSums sums, double[] value, double[] area, int ie) {
+		for (int lat = 0; lat < sums.nLat; lat++) {
+			for (int lon = 0; lon < sums.nLon; lon++) {
+				int i = (sums.lat0 + lat) * ie + sums.lon0 + lon;
+				value[i] += sums.value[lat * sums.nLon + lon];
+				area[i] += sums.area[lat * sums.nLon + lon];
+			}
+		}
+	}
+
+}
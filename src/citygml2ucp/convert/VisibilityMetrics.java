@@ -0,0 +1,177 @@
+package citygml2ucp.convert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import citygml2ucp.tools.HitCounter;
+
+/**
+ * Counters of the work done in the visibility calculation and the averaging to
+ * grid cells, to explain differences in the run time of cities.
+ *
+ * Every thread counts into its own {@link Counters} without synchronisation.
+ * The counters of all threads are summed up after the calculation, when no
+ * thread is counting anymore.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class VisibilityMetrics {
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	/**
+	 * Counters of a thread
+	 */
+	static class Counters extends HitCounter {
+		/**
+		 * Pairs of sending and receiving buildings within {@code maxbuild_radius}
+		 */
+		long candidateBuildings;
+		/**
+		 * Pairs of sending and receiving walls tested for visibility
+		 */
+		long wallPairs;
+		/**
+		 * Buildings passing the ellipse filter with {@code maxcheck_radius}
+		 */
+		long occluderBuildings;
+		/**
+		 * Wall pairs which can see each other
+		 */
+		long visiblePairs;
+		/**
+		 * Walls averaged to the grid cells and visible walls used for that
+		 */
+		long averagedWalls, averagedTargets;
+
+		void add(Counters other) {
+			super.add(other);
+			candidateBuildings += other.candidateBuildings;
+			wallPairs += other.wallPairs;
+			occluderBuildings += other.occluderBuildings;
+			visiblePairs += other.visiblePairs;
+			averagedWalls += other.averagedWalls;
+			averagedTargets += other.averagedTargets;
+		}
+	}
+
+	/**
+	 * Counters of all threads
+	 */
+	private final List<Counters> allCounters = new ArrayList<>();
+
+	private final ThreadLocal<Counters> counters = ThreadLocal.withInitial(() -> {
+		Counters c = new Counters();
+		synchronized (allCounters) {
+			allCounters.add(c);
+		}
+		return c;
+	});
+
+	/**
+	 * Duration of the visibility calculation and the averaging to grid cells in
+	 * seconds
+	 */
+	private double visibilitySeconds;
+
+	/**
+	 * Get the counters of the current thread.
+	 *
+	 * @return Counters only to be used by the current thread
+	 */
+	Counters get() {
+		return counters.get();
+	}
+
+	void setVisibilitySeconds(double visibilitySeconds) {
+		this.visibilitySeconds = visibilitySeconds;
+	}
+
+	/**
+	 * Sum of the counters of all threads, only valid if no thread is counting.
+	 *
+	 * @return Sum of all counters
+	 */
+	Counters getTotal() {
+		Counters total = new Counters();
+		synchronized (allCounters) {
+			for (Counters c : allCounters) {
+				total.add(c);
+			}
+		}
+		return total;
+	}
+
+	private static double ratio(long a, long b) {
+		return b > 0 ? (double) a / b : 0.;
+	}
+
+	/**
+	 * Write the metrics to the log.
+	 *
+	 * @param out        Log
+	 * @param nBuildings Number of buildings
+	 * @throws IOException
+	 */
+	void writeSection(BufferedWriter out, int nBuildings) throws IOException {
+		Counters total = getTotal();
+		out.append("* Visibility metrics");
+		out.append(LINE_SEPARATOR);
+		String[] lines = {
+				String.format(" Visibility calculation and averaging to grid cells: %.1f s", visibilitySeconds),
+				" Buildings: " + nBuildings,
+				String.format(" Candidate receiving buildings: %d (%.1f per building)", total.candidateBuildings,
+						ratio(total.candidateBuildings, nBuildings)),
+				String.format(" Wall pairs tested: %d (%.3g per second)", total.wallPairs,
+						visibilitySeconds > 0. ? total.wallPairs / visibilitySeconds : 0.),
+				String.format(" Occluding buildings passing the ellipse filter: %d (%.1f per wall pair)",
+						total.occluderBuildings, ratio(total.occluderBuildings, total.wallPairs)),
+				String.format(" Hit tests: %d (%.1f per wall pair)", total.getCalls(),
+						ratio(total.getCalls(), total.wallPairs)),
+				String.format(" Point-in-polygon tests: %d (%.1f %% of hit tests)", total.getContainsCalls(),
+						100. * ratio(total.getContainsCalls(), total.getCalls())),
+				String.format(" Hits: %d (%.1f %% of hit tests)", total.getHits(),
+						100. * ratio(total.getHits(), total.getCalls())),
+				String.format(" Visible wall pairs: %d (%.1f %% of wall pairs)", total.visiblePairs,
+						100. * ratio(total.visiblePairs, total.wallPairs)),
+				String.format(" Walls averaged to grid cells: %d with %d visible walls", total.averagedWalls,
+						total.averagedTargets) };
+		for (String line : lines) {
+			out.append(line);
+			out.append(LINE_SEPARATOR);
+		}
+	}
+
+	/**
+	 * Write the metrics to a JSON file.
+	 *
+	 * @param file       JSON file
+	 * @param nBuildings Number of buildings
+	 * @throws IOException
+	 */
+	void writeJson(Path file, int nBuildings) throws IOException {
+		Counters total = getTotal();
+		int nThreads;
+		synchronized (allCounters) {
+			nThreads = allCounters.size();
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(file)) {
+			out.append(String.format(Locale.ROOT,
+					"{%n  \"visibility_seconds\": %.3f,%n  \"threads\": %d,%n  \"buildings\": %d,%n"
+							+ "  \"candidate_buildings\": %d,%n  \"wall_pairs\": %d,%n"
+							+ "  \"occluder_buildings\": %d,%n  \"hit_tests\": %d,%n"
+							+ "  \"contains_calls\": %d,%n  \"hits\": %d,%n  \"visible_pairs\": %d,%n"
+							+ "  \"averaged_walls\": %d,%n  \"averaged_targets\": %d%n}%n",
+					visibilitySeconds, nThreads, nBuildings, total.candidateBuildings,
+					total.wallPairs, total.occluderBuildings, total.getCalls(), total.getContainsCalls(),
+					total.getHits(), total.visiblePairs, total.averagedWalls, total.averagedTargets));
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package citygml2ucp.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geometry of a building or building part as far as it is needed by the
+ * converter.
+ *
+ * This is the result of {@link StaxBuildingReader} and includes only the
+ * identification, the envelope and the exterior rings of the boundary surfaces
+ * and of the LoD1 solid.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class BuildingGeometry {
+
+	/**
+	 * Kind of a boundary surface
+	 */
+	public enum SurfaceType {
+		WALL, ROOF, GROUND, OTHER
+	}
+
+	/**
+	 * Boundary surface with its polygons.
+	 */
+	public static class Surface {
+
+		public final SurfaceType type;
+
+		public final String id;
+
+		/**
+		 * Coordinates of the exterior rings as x1, y1, z1, x2, y2, z2, ...;
+		 * {@code null} for polygons which cannot be handled
+		 */
+		public final List<double[]> polygons = new ArrayList<>();
+
+		public Surface(SurfaceType type, String id) {
+			this.type = type;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * LoD1 solid described by a composite surface.
+	 */
+	public static class Solid {
+
+		/**
+		 * ID of the composite surface
+		 */
+		public final String id;
+
+		/**
+		 * Coordinates of the exterior rings as x1, y1, z1, x2, y2, z2, ...;
+		 * {@code null} for polygons which cannot be handled
+		 */
+		public final List<double[]> polygons = new ArrayList<>();
+
+		/**
+		 * Solid is not given as composite surface
+		 */
+		public boolean invalid = false;
+
+		public Solid(String id) {
+			this.id = id;
+		}
+	}
+
+	public final String id;
+
+	public String name = "";
+
+	/**
+	 * Envelope as given in the file, {@code null} if not set
+	 */
+	double[] lowerCorner, upperCorner;
+
+	/**
+	 * Envelope calculated from all coordinates of the building
+	 */
+	private final double[] calcLowerCorner = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+	private final double[] calcUpperCorner = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+
+	public final List<Surface> boundarySurfaces = new ArrayList<>();
+
+	/**
+	 * LoD1 solid, {@code null} if not set
+	 */
+	public Solid lod1Solid;
+
+	public final List<BuildingGeometry> parts = new ArrayList<>();
+
+	public BuildingGeometry(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * Extend the calculated envelope by coordinates.
+	 *
+	 * @param coord Coordinates as x1, y1, z1, x2, y2, z2, ...
+	 */
+	void extendEnvelope(double[] coord) {
+		for (int i = 0; i + 2 < coord.length; i += 3) {
+			for (int j = 0; j < 3; j++) {
+				if (coord[i + j] < calcLowerCorner[j]) {
+					calcLowerCorner[j] = coord[i + j];
+				}
+				if (coord[i + j] > calcUpperCorner[j]) {
+					calcUpperCorner[j] = coord[i + j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Extend the calculated envelope by the one of a building part.
+	 *
+	 * @param part Building part
+	 */
+	void extendEnvelope(BuildingGeometry part) {
+		// part without any coordinates
+		if (part.calcLowerCorner[0] > part.calcUpperCorner[0]) {
+			return;
+		}
+		extendEnvelope(part.calcLowerCorner);
+		extendEnvelope(part.calcUpperCorner);
+	}
+
+	/**
+	 * Get the lower corner of the envelope, calculated from the coordinates if
+	 * not given in the file.
+	 *
+	 * @return x, y and z of the lower corner
+	 */
+	public double[] getLowerCorner() {
+		return lowerCorner != null ? lowerCorner : calcLowerCorner;
+	}
+
+	/**
+	 * Get the upper corner of the envelope, calculated from the coordinates if
+	 * not given in the file.
+	 *
+	 * @return x, y and z of the upper corner
+	 */
+	public double[] getUpperCorner() {
+		return upperCorner != null ? upperCorner : calcUpperCorner;
+	}
+
+}
@@ -31,5 +31,15 @@ public abstract class CityGMLTools {
 				"SurfaceProperty is neither OrientableSurface nor Polygon, handle this case!");
 	}
 
+	public static double[] coordinateArrayFromSurfaceProperty(SurfaceProperty surfaceProperty) {
+		List<Double> coord = coordinatesFromSurfaceProperty(surfaceProperty);
+		double[] coordArray = new double[coord.size()];
+		int i = 0;
+		for (Double c : coord) {
+			coordArray[i++] = c;
+		}
+		return coordArray;
+	}
+
 	
 }
@@ -0,0 +1,304 @@
+package citygml2ucp.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+
+/**
+ * Description of a field in a NetCDF file and writing of the field in blocks,
+ * shared by the fields independent of how they store their values.
+ * 
+ * The field is split into blocks of rows of the latitude dimension (the first
+ * dimension for fields with less than 2 dimensions) with about
+ * {@link #BLOCK_SIZE} values each. Every block is provided by the field and
+ * converted to the output type on its own, so no converted copy of the
+ * complete field is needed.
+ * 
+ * @author Sebastian Schubert
+ * 
+ */
+final class FieldOutput {
+
+	/**
+	 * Approximate number of values written to the NetCDF file at once
+	 */
+	static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Value of missing data of all fields
+	 */
+	static final double MISSING_VALUE = -999.;
+
+	/**
+	 * Provides the values of a block of a field.
+	 */
+	interface BlockSource {
+		/**
+		 * @param origin Origin of the block in the field
+		 * @param shape  Shape of the block
+		 * @return Values of the block with the given shape, of any type
+		 * @throws InvalidRangeException
+		 */
+		Array getBlock(int[] origin, int[] shape) throws InvalidRangeException;
+	}
+
+	/**
+	 * Name of the field variable in the NetCDF file
+	 */
+	private final String name;
+	/**
+	 * Standard name of the field in the NetCDF file
+	 */
+	private final String standard_name;
+	/**
+	 * More descriptive name of the field in the NetCDF file
+	 */
+	private final String long_name;
+	/**
+	 * Unit of the field in NetCDF file
+	 */
+	private final String units;
+	/**
+	 * Information about the mapping of the field, e.g. "rotated_pole"
+	 */
+	private final String grid_mapping;
+
+	/**
+	 * Dimensions of the field
+	 */
+	private final List<WritableDimension> dimlist;
+
+	/**
+	 * Output data type
+	 */
+	private final DataType outputType;
+
+	private boolean doOutputPart = false;
+
+	private int[] originPart;
+	private int[] shapePart;
+
+	private final Map<NetcdfFileWriter, DimensionsAndVariables> dimensionsAndVariablesAddedToNetcdf = new HashMap<>();
+
+	FieldOutput(String name, List<WritableDimension> dimlist, String standard_name, String long_name,
+			String units, String grid_mapping, DataType outputType) {
+		this.name = name;
+		this.standard_name = standard_name;
+		this.long_name = long_name;
+		this.units = units;
+		this.grid_mapping = grid_mapping;
+		this.dimlist = new ArrayList<>(dimlist);
+		this.outputType = outputType;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	DataType getOutputType() {
+		return outputType;
+	}
+
+	/**
+	 * @return Lengths of the dimensions
+	 */
+	int[] getShape() {
+		int[] shape = new int[dimlist.size()];
+		for (int i = 0; i < shape.length; i++) {
+			shape[i] = dimlist.get(i).getLength();
+		}
+		return shape;
+	}
+
+	/**
+	 * @return Size of the complete field in the output type
+	 */
+	long getSavedSizeBytes() {
+		long size = outputType.getSize();
+		for (int length : getShape()) {
+			size *= length;
+		}
+		return size;
+	}
+
+	void resetDim() {
+		setOutputPart(new int[dimlist.size()], getShape());
+	}
+
+	void setOutputPart(int[] origin, int[] shape) {
+		doOutputPart = true;
+		this.originPart = origin;
+		this.shapePart = shape;
+	}
+
+	int[] getOriginPart() {
+		return originPart;
+	}
+
+	int[] getShapePart() {
+		return shapePart;
+	}
+
+	DimensionsAndVariables addToNetCDFfile(NetcdfFileWriter ncfile) {
+		DimensionsAndVariables dimensionsAndVariables = this.dimensionsAndVariablesAddedToNetcdf.get(ncfile);
+		if (Objects.isNull(dimensionsAndVariables)) {
+			List<Dimension> ncdims = new ArrayList<>();
+			this.dimlist.forEach( (dim) -> ncdims.addAll(dim.addToNetCDFfile(ncfile).dimension) );
+			
+			Variable var = ncfile.addVariable(null, this.name, this.outputType, ncdims);
+			ncfile.addVariableAttribute(var, new Attribute("standard_name",
+					standard_name));
+			ncfile.addVariableAttribute(var, new Attribute("long_name", long_name));
+			ncfile.addVariableAttribute(var, getFillValueAttribute(ncfile));
+			if (!units.isEmpty()) {
+				ncfile.addVariableAttribute(var, new Attribute("units", units));
+			}
+			if (!grid_mapping.isEmpty()) {
+				ncfile.addVariableAttribute(var, new Attribute("grid_mapping",
+						grid_mapping));
+			}
+			dimensionsAndVariables = new DimensionsAndVariables(ncdims, Arrays.asList(var));
+			this.dimensionsAndVariablesAddedToNetcdf.put(ncfile, dimensionsAndVariables);
+		}
+		return dimensionsAndVariables;
+	}
+
+	/**
+	 * The fill value has to be of the output type in NetCDF-4 files, NetCDF-3
+	 * files keep the double value.
+	 */
+	private Attribute getFillValueAttribute(NetcdfFileWriter ncfile) {
+		if (ncfile.getVersion().isNetdf4format()) {
+			switch (outputType) {
+			case FLOAT:
+				return new Attribute("_FillValue", (float) MISSING_VALUE);
+			case INT:
+				return new Attribute("_FillValue", (int) MISSING_VALUE);
+			default:
+				break;
+			}
+		}
+		return new Attribute("_FillValue", MISSING_VALUE);
+	}
+
+	/**
+	 * Origin of the part of the field to write.
+	 */
+	private int[] getOutputOrigin() {
+		return doOutputPart ? originPart.clone() : new int[dimlist.size()];
+	}
+
+	/**
+	 * Shape of the part of the field to write.
+	 */
+	private int[] getOutputShape() {
+		return doOutputPart ? shapePart.clone() : getShape();
+	}
+
+	/**
+	 * Dimension along which the field is split into blocks for writing, latitude
+	 * for fields with at least 2 dimensions.
+	 */
+	private int getBlockDimension() {
+		return Math.max(0, dimlist.size() - 2);
+	}
+
+	/**
+	 * Split the part of the field to write into blocks of rows of the block
+	 * dimension with about {@link #BLOCK_SIZE} values each.
+	 * 
+	 * @return First row and number of rows of every block
+	 */
+	private List<int[]> getBlockRows() {
+		int blockDim = getBlockDimension();
+		int[] shape = getShape();
+		long rowSize = 1;
+		for (int i = 0; i < shape.length; i++) {
+			if (i != blockDim) {
+				rowSize *= shape[i];
+			}
+		}
+		int blockRows = (int) Math.max(1, BLOCK_SIZE / Math.max(1, rowSize));
+		int rowStart = getOutputOrigin()[blockDim];
+		int rowEnd = rowStart + getOutputShape()[blockDim];
+		List<int[]> blocks = new ArrayList<>();
+		for (int row0 = rowStart; row0 < rowEnd; row0 += blockRows) {
+			blocks.add(new int[] { row0, Math.min(blockRows, rowEnd - row0) });
+		}
+		return blocks;
+	}
+
+	/**
+	 * Position of a block in the file.
+	 * 
+	 * @param row0 First row of the block
+	 */
+	private int[] getFileOrigin(int row0) {
+		int blockDim = getBlockDimension();
+		int[] fileOrigin = new int[dimlist.size()];
+		fileOrigin[blockDim] = row0 - getOutputOrigin()[blockDim];
+		return fileOrigin;
+	}
+
+	/**
+	 * Get a block of the part of the field to write in the output type.
+	 * 
+	 * @param source Values of the field
+	 * @param row0   First row of the block
+	 * @param nRows  Number of rows
+	 * @return Converted block
+	 * @throws InvalidRangeException
+	 */
+	private Array getBlock(BlockSource source, int row0, int nRows) throws InvalidRangeException {
+		int blockDim = getBlockDimension();
+		int[] origin = getOutputOrigin();
+		int[] shape = getOutputShape();
+		origin[blockDim] = row0;
+		shape[blockDim] = nRows;
+		return NetCDFBlockWriter.convert(source.getBlock(origin, shape), outputType);
+	}
+
+	/**
+	 * Write the field block by block.
+	 * 
+	 * @param ncfile NetCDF file
+	 * @param source Values of the field
+	 * @throws IOException
+	 * @throws InvalidRangeException
+	 */
+	void write(NetcdfFileWriter ncfile, BlockSource source) throws IOException, InvalidRangeException {
+		Variable var = dimensionsAndVariablesAddedToNetcdf.get(ncfile).variable.get(0);
+		for (int[] rows : getBlockRows()) {
+			ncfile.write(var, getFileOrigin(rows[0]), getBlock(source, rows[0], rows[1]));
+		}
+	}
+
+	/**
+	 * Write the field block by block, the blocks are converted to the output
+	 * type in parallel.
+	 * 
+	 * @param writer Writer of the NetCDF file
+	 * @param source Values of the field
+	 * @throws IOException
+	 * @throws InvalidRangeException
+	 */
+	void write(NetCDFBlockWriter writer, BlockSource source) throws IOException, InvalidRangeException {
+		Variable var = dimensionsAndVariablesAddedToNetcdf.get(writer.getNetcdfFile()).variable.get(0);
+		for (int[] rows : getBlockRows()) {
+			writer.write(var, getFileOrigin(rows[0]), () -> getBlock(source, rows[0], rows[1]));
+		}
+	}
+
+}
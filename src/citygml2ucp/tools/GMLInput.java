@@ -0,0 +1,256 @@
+package citygml2ucp.tools;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * A CityGML document, which is either a plain file, a gzip or zstd compressed
+ * file, or an entry of a zip archive.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class GMLInput {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * File including the document
+	 */
+	public final Path file;
+
+	/**
+	 * Name of the zip entry, {@code null} if no zip archive
+	 */
+	public final String entry;
+
+	/**
+	 * CRC and size of the zip entry
+	 */
+	private final long entryCrc, entrySize;
+
+	private GMLInput(Path file) {
+		this.file = file;
+		this.entry = null;
+		this.entryCrc = -1;
+		this.entrySize = -1;
+	}
+
+	private GMLInput(Path file, ZipEntry entry) {
+		this.file = file;
+		this.entry = entry.getName();
+		this.entryCrc = entry.getCrc();
+		this.entrySize = entry.getSize();
+	}
+
+	/**
+	 * Is the name one of a (compressed) CityGML file?
+	 *
+	 * @param name File name
+	 * @return CityGML file?
+	 */
+	private static boolean isGMLName(String name) {
+		String lower = name.toLowerCase();
+		if (lower.endsWith(".gz")) {
+			lower = lower.substring(0, lower.length() - 3);
+		} else if (lower.endsWith(".zst")) {
+			lower = lower.substring(0, lower.length() - 4);
+		}
+		return lower.endsWith("gml") || lower.endsWith("xml");
+	}
+
+	/**
+	 * Find all CityGML documents in a file or folder.
+	 *
+	 * Plain, gzip (.gz) and zstd (.zst) compressed .gml and .xml files are
+	 * considered as well as .gml and .xml entries of zip archives (.zip).
+	 *
+	 * @param path File or folder
+	 * @return CityGML documents
+	 * @throws IOException Folder or zip archive cannot be read
+	 */
+	public static List<GMLInput> find(Path path) throws IOException {
+		List<Path> files;
+		if (Files.isDirectory(path)) {
+			try (Stream<Path> stream = Files.walk(path)) {
+				files = stream.filter((p) -> Files.isRegularFile(p)).collect(Collectors.toList());
+			}
+		} else {
+			files = List.of(path);
+		}
+
+		List<GMLInput> inputs = new ArrayList<>();
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			if (name.toLowerCase().endsWith(".zip")) {
+				try (ZipFile zip = new ZipFile(file.toFile())) {
+					Enumeration<? extends ZipEntry> entries = zip.entries();
+					while (entries.hasMoreElements()) {
+						ZipEntry zipEntry = entries.nextElement();
+						if (!zipEntry.isDirectory() && isGMLName(zipEntry.getName())) {
+							inputs.add(new GMLInput(file, zipEntry));
+						}
+					}
+				}
+			} else if (isGMLName(name) || !Files.isDirectory(path)) {
+				// explicitly given files are always used
+				inputs.add(new GMLInput(file));
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Open the decompressed document.
+	 *
+	 * @return Stream of the document
+	 * @throws IOException File cannot be opened
+	 */
+	public InputStream open() throws IOException {
+		return open(null);
+	}
+
+	/**
+	 * Open the decompressed document and hash the file while it is read.
+	 *
+	 * The digest includes the whole file once the end of the document has been
+	 * read, see {@link #contentHash(MessageDigest)}. It is not used for entries
+	 * of zip archives.
+	 *
+	 * @param digest Digest updated with the content of the file, not used if
+	 *               {@code null}
+	 * @return Stream of the document
+	 * @throws IOException File cannot be opened
+	 */
+	public InputStream open(MessageDigest digest) throws IOException {
+		if (entry != null) {
+			ZipFile zip = new ZipFile(file.toFile());
+			// close the archive together with the stream
+			return new FilterInputStream(
+					new BufferedInputStream(zip.getInputStream(zip.getEntry(entry)), BUFFER_SIZE)) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					zip.close();
+				}
+			};
+		}
+		String name = file.getFileName().toString().toLowerCase();
+		InputStream raw = Files.newInputStream(file);
+		if (digest != null) {
+			raw = new DigestInputStream(raw, digest);
+		}
+		InputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+		InputStream decompressed;
+		if (name.endsWith(".gz")) {
+			decompressed = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+		} else if (name.endsWith(".zst")) {
+			decompressed = new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+		} else {
+			return in;
+		}
+		if (digest == null) {
+			return decompressed;
+		}
+		// the decompressor may stop before the end of the file, so read the rest
+		// for the digest at the end of the document
+		InputStream rawFile = raw;
+		return new FilterInputStream(decompressed) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b < 0) {
+					rawFile.transferTo(OutputStream.nullOutputStream());
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n < 0) {
+					rawFile.transferTo(OutputStream.nullOutputStream());
+				}
+				return n;
+			}
+		};
+	}
+
+	/**
+	 * Create a digest for {@link #open(MessageDigest)}.
+	 *
+	 * @return SHA-256 digest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	/**
+	 * Hash of the content: SHA-256 of the file, or CRC and size of a zip entry
+	 * (given in the archive, so the entry does not have to be read).
+	 *
+	 * @return Hash
+	 * @throws IOException File cannot be read
+	 */
+	public byte[] contentHash() throws IOException {
+		if (entry != null) {
+			return contentHash(null);
+		}
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return contentHash(digest);
+	}
+
+	/**
+	 * Hash of the content as {@link #contentHash()}, but from the digest of a
+	 * document read completely with {@link #open(MessageDigest)}.
+	 *
+	 * @param digest Digest given to {@link #open(MessageDigest)}, not used for
+	 *               entries of zip archives
+	 * @return Hash
+	 */
+	public byte[] contentHash(MessageDigest digest) {
+		if (entry != null) {
+			return ByteBuffer.allocate(2 * Long.BYTES).putLong(entryCrc).putLong(entrySize).array();
+		}
+		return digest.digest();
+	}
+
+	@Override
+	public String toString() {
+		if (entry != null) {
+			return file + "!" + entry;
+		}
+		return file.toString();
+	}
+
+}
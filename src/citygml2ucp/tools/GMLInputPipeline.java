@@ -0,0 +1,396 @@
+package citygml2ucp.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Reading and decompression of CityGML documents ahead of parsing.
+ *
+ * The documents are read in order. When a document is opened, the following
+ * {@code nThreads - 1} documents are started as well. Every document is read
+ * and decompressed by its own thread into a bounded queue of blocks, so disk
+ * I/O and decompression overlap with the XML parsing while the memory
+ * required stays limited. Optionally, the content hash of every document (see
+ * {@link GMLInput#contentHash()}) is calculated while it is read, so the file
+ * does not have to be read a second time for it. Documents which are probably
+ * not needed (e.g., read from a cache) can be excluded from reading ahead by a
+ * predicate; they are read directly when opened nevertheless.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class GMLInputPipeline implements AutoCloseable {
+
+	/**
+	 * Size of a block of decompressed data
+	 */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Maximum number of blocks read ahead per document
+	 */
+	private static final int N_BLOCKS = 16;
+
+	private final List<GMLInput> inputs;
+
+	private final int nThreads;
+
+	/**
+	 * Calculate the content hashes?
+	 */
+	private final boolean hashContent;
+
+	/**
+	 * Documents not read ahead, {@code null} if all are read ahead
+	 */
+	private final IntPredicate notAhead;
+
+	private final ExecutorService exec;
+
+	/**
+	 * Reading of started documents, result is the content hash
+	 */
+	private final List<Future<byte[]>> readings;
+
+	/**
+	 * Streams of started documents
+	 */
+	private final PipelinedInputStream[] streams;
+
+	/**
+	 * Index of the next document to start
+	 */
+	private int nextToStart = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputs      Documents in the order they will be opened
+	 * @param nThreads    Number of documents read in parallel
+	 * @param hashContent Calculate the content hashes of the documents, see
+	 *                    {@link #getContentHash(int)}
+	 * @param notAhead    Test by index whether a document is probably not needed
+	 *                    and should not be read ahead, evaluated by the reading
+	 *                    threads before the document is opened, {@code null} to
+	 *                    read all documents ahead
+	 */
+	public GMLInputPipeline(List<GMLInput> inputs, int nThreads, boolean hashContent, IntPredicate notAhead) {
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("nThreads must be positive");
+		}
+		this.inputs = inputs;
+		this.nThreads = nThreads;
+		this.hashContent = hashContent;
+		this.notAhead = notAhead;
+		this.streams = new PipelinedInputStream[inputs.size()];
+		this.readings = new ArrayList<>(Collections.nCopies(inputs.size(), null));
+		this.exec = Executors.newFixedThreadPool(nThreads, (r) -> {
+			Thread thread = new Thread(r, "gml-input");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Open a document and start reading the following ones.
+	 *
+	 * @param i Index of the document
+	 * @return Decompressed stream of the document
+	 */
+	public InputStream open(int i) {
+		start(i);
+		PipelinedInputStream stream = streams[i];
+		streams[i] = null;
+		return stream;
+	}
+
+	/**
+	 * Skip a document which is not needed (e.g., read from cache), but start
+	 * reading the following ones.
+	 *
+	 * @param i Index of the document
+	 */
+	public void skip(int i) {
+		if (i < nextToStart) {
+			if (streams[i] != null) {
+				streams[i].cancel();
+				streams[i] = null;
+			}
+		} else {
+			nextToStart = i + 1;
+		}
+		start(i + 1);
+	}
+
+	/**
+	 * Get the content hash of an opened document, which is only known after the
+	 * document has been read completely. Waits until the file has been read to
+	 * the end, also if the stream of the document has been closed before.
+	 *
+	 * @param i Index of the document
+	 * @return Content hash, {@code null} if not calculated, the document could not
+	 *         be read or was not read ahead
+	 */
+	public byte[] getContentHash(int i) {
+		Future<byte[]> reading = readings.get(i);
+		if (reading == null) {
+			return null;
+		}
+		try {
+			return reading.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException | CancellationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Start reading all documents from {@code i} until {@code nThreads}
+	 * documents are in progress.
+	 */
+	private void start(int i) {
+		nextToStart = Math.max(nextToStart, i);
+		while (nextToStart < Math.min(i + nThreads, inputs.size())) {
+			streams[nextToStart] = new PipelinedInputStream(inputs.get(nextToStart), nextToStart);
+			readings.set(nextToStart, streams[nextToStart].reading);
+			nextToStart++;
+		}
+	}
+
+	@Override
+	public void close() {
+		for (int i = 0; i < streams.length; i++) {
+			if (streams[i] != null) {
+				streams[i].cancel();
+				streams[i] = null;
+			}
+		}
+		exec.shutdownNow();
+	}
+
+	/**
+	 * Stream whose data is read by a thread of the pipeline.
+	 */
+	private class PipelinedInputStream extends InputStream {
+
+		private final GMLInput input;
+
+		/**
+		 * Index of the document
+		 */
+		private final int index;
+
+		private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(N_BLOCKS);
+
+		/**
+		 * Marks the end of the document in the queue
+		 */
+		private final Object endOfStream = new Object();
+
+		/**
+		 * Marks a document not read ahead in the queue
+		 */
+		private final Object notReadAhead = new Object();
+
+		/**
+		 * Stream of a document not read ahead, opened on first read
+		 */
+		private InputStream direct;
+
+		private final Future<byte[]> reading;
+
+		/**
+		 * Set if the stream is closed, the rest of the document is then only read
+		 * for the content hash
+		 */
+		private volatile boolean closed = false;
+
+		/**
+		 * Block currently read and position within
+		 */
+		private byte[] block;
+		private int blockLength, blockPosition;
+
+		private boolean finished = false;
+
+		PipelinedInputStream(GMLInput input, int index) {
+			this.input = input;
+			this.index = index;
+			this.reading = exec.submit(this::readAll);
+		}
+
+		/**
+		 * Read and decompress the document into the queue, runs in the pipeline
+		 * thread.
+		 *
+		 * @return Content hash, {@code null} if not calculated or the document
+		 *         could not be read
+		 */
+		private byte[] readAll() {
+			if (notAhead != null && notAhead.test(index)) {
+				try {
+					put(notReadAhead);
+				} catch (InterruptedException e) {
+					// stream cancelled
+				}
+				return null;
+			}
+			MessageDigest digest = hashContent ? GMLInput.newDigest() : null;
+			try (InputStream in = input.open(digest)) {
+				while (true) {
+					byte[] data = new byte[BLOCK_SIZE];
+					int length = in.readNBytes(data, 0, BLOCK_SIZE);
+					if (length == 0) {
+						break;
+					}
+					put(length == BLOCK_SIZE ? data : Arrays.copyOf(data, length));
+				}
+				put(endOfStream);
+			} catch (IOException e) {
+				try {
+					put(e);
+				} catch (InterruptedException ie) {
+					// stream cancelled
+				}
+				return null;
+			} catch (InterruptedException e) {
+				// stream cancelled
+				return null;
+			}
+			return hashContent ? input.contentHash(digest) : null;
+		}
+
+		/**
+		 * Add to the queue unless the stream has been closed.
+		 */
+		private void put(Object next) throws InterruptedException {
+			while (!closed) {
+				if (queue.offer(next, 100, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Get the next block from the queue.
+		 *
+		 * @return another block available?
+		 * @throws IOException Error while reading the document
+		 */
+		private boolean nextBlock() throws IOException {
+			if (finished) {
+				return false;
+			}
+			Object next;
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading " + input, e);
+			}
+			if (next == endOfStream) {
+				finished = true;
+				return false;
+			}
+			if (next == notReadAhead) {
+				// needed after all, read in this thread
+				finished = true;
+				direct = input.open();
+				return false;
+			}
+			if (next instanceof IOException) {
+				finished = true;
+				throw new IOException("Cannot read " + input, (IOException) next);
+			}
+			block = (byte[]) next;
+			blockLength = block.length;
+			blockPosition = 0;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (blockPosition >= blockLength && !nextBlock()) {
+				return direct != null ? direct.read() : -1;
+			}
+			return block[blockPosition++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (blockPosition >= blockLength && !nextBlock()) {
+				return direct != null ? direct.read(b, off, len) : -1;
+			}
+			int n = Math.min(len, blockLength - blockPosition);
+			System.arraycopy(block, blockPosition, b, off, n);
+			blockPosition += n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (direct != null) {
+				return direct.available();
+			}
+			return blockLength - blockPosition;
+		}
+
+		/**
+		 * Close the stream. If the content hash is calculated, the rest of the
+		 * document is still read for it.
+		 */
+		@Override
+		public void close() {
+			closeDirect();
+			if (!hashContent) {
+				cancel();
+				return;
+			}
+			finished = true;
+			closed = true;
+			queue.clear();
+		}
+
+		private void closeDirect() {
+			if (direct != null) {
+				try {
+					direct.close();
+				} catch (IOException e) {
+					// nothing left to read
+				}
+				direct = null;
+			}
+		}
+
+		/**
+		 * Close the stream and stop reading.
+		 */
+		void cancel() {
+			closeDirect();
+			finished = true;
+			closed = true;
+			reading.cancel(true);
+			queue.clear();
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package citygml2ucp.tools;
+
+/**
+ * A field of double values whose last two dimensions are latitude and
+ * longitude, and whose values can be accessed per grid cell without range
+ * checks.
+ * 
+ * @author Sebastian Schubert
+ * 
+ */
+public interface GridField extends IndexedField {
+
+	/**
+	 * @return Value written for missing data
+	 */
+	double getMissingValue();
+
+	/**
+	 * Get the values of a grid cell.
+	 * 
+	 * The value of leading index {@code lead} (row-major index of all other
+	 * dimensions) is at {@code getCellOffset(lat, lon) + lead * getCellStride()}.
+	 * 
+	 * @param lat Latitude index
+	 * @param lon Longitude index
+	 * @return Array including the values of the cell
+	 */
+	double[] getCellData(int lat, int lon);
+
+	/**
+	 * Position of the first value of a grid cell in {@link #getCellData(int, int)}.
+	 * 
+	 * @throws IllegalStateException Field has less than 2 dimensions, so no
+	 *                               grid cells
+	 */
+	int getCellOffset(int lat, int lon);
+
+	/**
+	 * Distance of the values of a grid cell with successive leading index in
+	 * {@link #getCellData(int, int)}.
+	 * 
+	 * A field with only latitude and longitude has one value per cell and no
+	 * leading index, so there is no stride.
+	 * 
+	 * @throws IllegalStateException Field has less than 3 dimensions
+	 */
+	int getCellStride();
+
+}
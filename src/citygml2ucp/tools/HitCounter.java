@@ -0,0 +1,44 @@
+package citygml2ucp.tools;
+
+/**
+ * Counters of the hit tests of {@link Polygon3d#isHitBy(javax.vecmath.Point3d,
+ * javax.vecmath.Point3d, HitCounter)}.
+ *
+ * The counters are plain fields without synchronisation, so a counter must only
+ * be used by one thread.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class HitCounter {
+
+	/**
+	 * Number of hit tests, of tests which reached the point-in-polygon test and
+	 * of hits
+	 */
+	long calls, containsCalls, hits;
+
+	public long getCalls() {
+		return calls;
+	}
+
+	public long getContainsCalls() {
+		return containsCalls;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Add the counts of another counter.
+	 *
+	 * @param other Counter to add
+	 */
+	public void add(HitCounter other) {
+		calls += other.calls;
+		containsCalls += other.containsCalls;
+		hits += other.hits;
+	}
+
+}
@@ -0,0 +1,23 @@
+package citygml2ucp.tools;
+
+import ucar.ma2.Index;
+
+/**
+ * A field whose values are accessed by an {@code Index} of the dimensions of
+ * the field, independent of how they are stored.
+ * 
+ * @author Sebastian Schubert
+ * 
+ */
+public interface IndexedField extends NetCDFField {
+
+	/**
+	 * @return New index of the field
+	 */
+	Index getIndex();
+
+	double get(Index i);
+
+	void set(Index i, double value);
+
+}
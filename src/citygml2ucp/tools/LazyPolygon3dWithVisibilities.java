@@ -0,0 +1,150 @@
+package citygml2ucp.tools;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+/**
+ * Polygon whose geometry is only calculated on first use.
+ *
+ * Until then, only the coordinates of the exterior ring are stored. This is
+ * meant for polygons known to be valid, e.g., restored from the geometry cache,
+ * because an illegal polygon is only detected on first use. The geometry is
+ * calculated once, also if the polygon is used by several threads at the same
+ * time.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class LazyPolygon3dWithVisibilities extends Polygon3dWithVisibilities {
+
+	/**
+	 * Number of lazy polygons created and of those with calculated geometry
+	 */
+	private static final AtomicLong nCreated = new AtomicLong(), nMaterialised = new AtomicLong();
+
+	/**
+	 * Coordinates of the exterior ring, {@code null} after the geometry has been
+	 * calculated
+	 */
+	private double[] coord;
+
+	private volatile boolean materialised = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param id    ID of the polygon
+	 * @param coord Coordinates of the exterior ring as x1, y1, z1, x2, y2, z2, ...
+	 */
+	public LazyPolygon3dWithVisibilities(String id, double[] coord) {
+		super(id);
+		this.coord = coord;
+		nCreated.incrementAndGet();
+	}
+
+	/**
+	 * Calculate the geometry if not done yet.
+	 *
+	 * @throws IllegalArgumentException Illegal polygon
+	 */
+	private void materialise() {
+		if (!materialised) {
+			synchronized (this) {
+				if (!materialised) {
+					calcGeometry(coord);
+					coord = null;
+					materialised = true;
+					nMaterialised.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of lazy polygons created so far.
+	 *
+	 * @return Number of polygons
+	 */
+	public static long getNCreated() {
+		return nCreated.get();
+	}
+
+	/**
+	 * Get the number of lazy polygons whose geometry has never been calculated.
+	 *
+	 * @return Number of polygons
+	 */
+	public static long getNNotMaterialised() {
+		return nCreated.get() - nMaterialised.get();
+	}
+
+	@Override
+	public double getArea() {
+		materialise();
+		return super.getArea();
+	}
+
+	@Override
+	public double getSignedArea() {
+		materialise();
+		return super.getSignedArea();
+	}
+
+	@Override
+	public Point3d getCentroid() {
+		materialise();
+		return super.getCentroid();
+	}
+
+	@Override
+	public double getAngle() {
+		materialise();
+		return super.getAngle();
+	}
+
+	@Override
+	public Vector3d getNormalUnitVector() {
+		materialise();
+		return super.getNormalUnitVector();
+	}
+
+	@Override
+	public List<Point3d> getPoints() {
+		materialise();
+		return super.getPoints();
+	}
+
+	@Override
+	public boolean isHorizontal() {
+		materialise();
+		return super.isHorizontal();
+	}
+
+	@Override
+	public boolean checkCoplanarity() {
+		materialise();
+		return super.checkCoplanarity();
+	}
+
+	@Override
+	public boolean isHitBy(Point3d p1, Point3d p2, HitCounter counter) {
+		materialise();
+		return super.isHitBy(p1, p2, counter);
+	}
+
+	@Override
+	public double getHeight() {
+		materialise();
+		return super.getHeight();
+	}
+
+	@Override
+	public double getXYProjectedArea() {
+		materialise();
+		return super.getXYProjectedArea();
+	}
+
+}
@@ -0,0 +1,146 @@
+package citygml2ucp.tools;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+
+/**
+ * Pipelined writing of blocks of variables to a NetCDF file.
+ *
+ * The blocks are prepared (e.g. expanded and converted to the output type) by
+ * the threads of an executor, while the calling thread writes the blocks
+ * already prepared in the order they were added. The NetCDF file is only
+ * accessed by the calling thread. The number of blocks prepared ahead is
+ * limited to bound the memory needed.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class NetCDFBlockWriter {
+
+	/**
+	 * Block waiting to be written
+	 */
+	private static class Block {
+		final Variable variable;
+		final int[] origin;
+		final Future<Array> data;
+
+		Block(Variable variable, int[] origin, Future<Array> data) {
+			this.variable = variable;
+			this.origin = origin;
+			this.data = data;
+		}
+	}
+
+	private final NetcdfFileWriter ncfile;
+	private final ExecutorService exec;
+
+	/**
+	 * Maximum number of blocks prepared or being prepared, but not written yet
+	 */
+	private final int maxPending;
+
+	private final Deque<Block> pending = new ArrayDeque<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ncfile     NetCDF file to write to
+	 * @param exec       Executor preparing the blocks
+	 * @param maxPending Maximum number of blocks not written yet
+	 */
+	public NetCDFBlockWriter(NetcdfFileWriter ncfile, ExecutorService exec, int maxPending) {
+		this.ncfile = ncfile;
+		this.exec = exec;
+		this.maxPending = Math.max(1, maxPending);
+	}
+
+	public NetcdfFileWriter getNetcdfFile() {
+		return ncfile;
+	}
+
+	/**
+	 * Add a block to write. Blocks added earlier are written if too many blocks
+	 * are pending.
+	 *
+	 * @param variable Variable to write to
+	 * @param origin   Position of the block in the variable
+	 * @param block    Preparation of the block
+	 * @throws IOException
+	 * @throws InvalidRangeException
+	 */
+	public void write(Variable variable, int[] origin, Callable<Array> block)
+			throws IOException, InvalidRangeException {
+		pending.add(new Block(variable, origin, exec.submit(block)));
+		while (pending.size() > maxPending) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Write all pending blocks.
+	 *
+	 * @throws IOException
+	 * @throws InvalidRangeException
+	 */
+	public void flush() throws IOException, InvalidRangeException {
+		while (!pending.isEmpty()) {
+			writeNext();
+		}
+	}
+
+	private void writeNext() throws IOException, InvalidRangeException {
+		Block block = pending.poll();
+		Array data;
+		try {
+			data = block.data.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while preparing " + block.variable.getShortName());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof InvalidRangeException) {
+				throw (InvalidRangeException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+		ncfile.write(block.variable, block.origin, data);
+	}
+
+	/**
+	 * Convert data to another type.
+	 *
+	 * @param data Data to convert
+	 * @param type Wanted type
+	 * @return Data itself if already of the wanted type, otherwise a converted
+	 *         copy
+	 */
+	public static Array convert(Array data, DataType type) {
+		if (data.getDataType() == type) {
+			return data;
+		}
+		Array converted = Array.factory(type, data.getShape());
+		MAMath.copy(converted, data);
+		return converted;
+	}
+
+}
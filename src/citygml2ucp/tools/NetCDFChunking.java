@@ -0,0 +1,84 @@
+package citygml2ucp.tools;
+
+import ucar.nc2.Variable;
+import ucar.nc2.write.Nc4Chunking;
+
+/**
+ * Chunking and compression of the variables in NetCDF-4 files.
+ *
+ * Variables with at least 2 dimensions are chunked in the last two dimensions
+ * (latitude and longitude) with a configurable chunk size and have a chunk
+ * length of 1 in all other dimensions, so a chunk contains one horizontal
+ * slice of a field. Variables with 1 dimension are chunked only if the
+ * dimension is unlimited. Only chunked variables are compressed.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class NetCDFChunking implements Nc4Chunking {
+
+	/**
+	 * Chunk length of variables with an unlimited dimension
+	 */
+	private static final int UNLIMITED_CHUNK_LENGTH = 1 << 16;
+
+	private final int chunkLat, chunkLon;
+	private final int deflateLevel;
+	private final boolean shuffle;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkLat     Chunk length in latitude direction
+	 * @param chunkLon     Chunk length in longitude direction
+	 * @param deflateLevel Deflate level (0: no compression, 1-9)
+	 * @param shuffle      Use shuffle filter?
+	 */
+	public NetCDFChunking(int chunkLat, int chunkLon, int deflateLevel, boolean shuffle) {
+		if (chunkLat < 1 || chunkLon < 1) {
+			throw new IllegalArgumentException("chunk lengths must be positive");
+		}
+		if (deflateLevel < 0 || deflateLevel > 9) {
+			throw new IllegalArgumentException("deflate level must be between 0 and 9");
+		}
+		this.chunkLat = chunkLat;
+		this.chunkLon = chunkLon;
+		this.deflateLevel = deflateLevel;
+		this.shuffle = shuffle;
+	}
+
+	@Override
+	public boolean isChunked(Variable v) {
+		return v.getRank() >= 2 || v.isUnlimited();
+	}
+
+	@Override
+	public long[] computeChunking(Variable v) {
+		int[] shape = v.getShape();
+		int rank = shape.length;
+		long[] chunk = new long[rank];
+		if (rank < 2) {
+			for (int i = 0; i < rank; i++) {
+				chunk[i] = UNLIMITED_CHUNK_LENGTH;
+			}
+			return chunk;
+		}
+		for (int i = 0; i < rank - 2; i++) {
+			chunk[i] = 1;
+		}
+		chunk[rank - 2] = Math.max(1, Math.min(shape[rank - 2], chunkLat));
+		chunk[rank - 1] = Math.max(1, Math.min(shape[rank - 1], chunkLon));
+		return chunk;
+	}
+
+	@Override
+	public int getDeflateLevel(Variable v) {
+		return isChunked(v) ? deflateLevel : 0;
+	}
+
+	@Override
+	public boolean isShuffle(Variable v) {
+		return isChunked(v) && shuffle;
+	}
+
+}
@@ -36,8 +36,8 @@ public class NetCDFData implements NetCDFWritable {
 	 */
 	protected void addToWrite(NetCDFWritable field) {
 		toWrite.add(field);
-		if (field instanceof WritableField) {
-			dataSize += ((WritableField) field).getSavedSizeBytes();
+		if (field instanceof NetCDFField) {
+			dataSize += ((NetCDFField) field).getSavedSizeBytes();
 		}
 	}
 	
@@ -51,6 +51,29 @@ public class NetCDFData implements NetCDFWritable {
 	 */
 	public void toNetCDFfile(NetcdfFileWriter ncfile) throws IOException,
 			InvalidRangeException {
+		create(ncfile);
+		writeToNetCDFfile(ncfile);
+	}
+
+	/**
+	 * Write data to NetCDF file, preparing the data in parallel to writing.
+	 * 
+	 * @param writer
+	 *            Writer of the NetCDF file
+	 * @throws IOException
+	 * @throws InvalidRangeException
+	 */
+	public void toNetCDFfile(NetCDFBlockWriter writer) throws IOException,
+			InvalidRangeException {
+		create(writer.getNetcdfFile());
+		writeToNetCDFfile(writer);
+		writer.flush();
+	}
+
+	/**
+	 * Define dimensions and variables and leave define mode.
+	 */
+	private void create(NetcdfFileWriter ncfile) throws IOException {
 		// check whether data is larger than 2GiB (with some safety margin)
 		if (dataSize > 1900000000L) {
 			ncfile.setLargeFile(true);
@@ -59,7 +82,6 @@ public class NetCDFData implements NetCDFWritable {
 		}
 		addToNetCDFfile(ncfile);
 		ncfile.create();
-		writeToNetCDFfile(ncfile);
 	}
 
 	@Override
@@ -81,4 +103,12 @@ public class NetCDFData implements NetCDFWritable {
 		}
 	}
 
+	@Override
+	public void writeToNetCDFfile(NetCDFBlockWriter writer)
+			throws IOException, InvalidRangeException {
+		for (NetCDFWritable item : toWrite) {
+			item.writeToNetCDFfile(writer);
+		}
+	}
+
 }
@@ -0,0 +1,32 @@
+package citygml2ucp.tools;
+
+/**
+ * A field of values on dimensions that can be written to a NetCDF file,
+ * completely or in part.
+ * 
+ * @author Sebastian Schubert
+ * 
+ */
+public interface NetCDFField extends NetCDFWritable {
+
+	/**
+	 * @return Size of the field when saved to NetCDF
+	 */
+	long getSavedSizeBytes();
+
+	/**
+	 * Write the complete field.
+	 */
+	void resetDim();
+
+	/**
+	 * Write only a part of the field.
+	 * 
+	 * @param origin
+	 *            First index of every dimension
+	 * @param shape
+	 *            Number of indices of every dimension
+	 */
+	void setOutputPart(int[] origin, int[] shape);
+
+}
@@ -34,4 +34,17 @@ public interface NetCDFWritable {
 	 * @throws IOException 
 	 */
 	void writeToNetCDFfile(NetcdfFileWriter ncfile) throws IOException, InvalidRangeException;
+
+	/**
+	 * Write data to NetCDF file using a pipelined writer. By default, the data
+	 * is written directly.
+	 * 
+	 * @param writer
+	 *            Writer of the NetCDF file
+	 * @throws InvalidRangeException 
+	 * @throws IOException 
+	 */
+	default void writeToNetCDFfile(NetCDFBlockWriter writer) throws IOException, InvalidRangeException {
+		writeToNetCDFfile(writer.getNetcdfFile());
+	}
 }
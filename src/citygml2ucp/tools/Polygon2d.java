@@ -3,7 +3,10 @@
  */
 package citygml2ucp.tools;
 
+import java.util.List;
+
 import javax.vecmath.Point2d;
+import javax.vecmath.Point3d;
 
 /**
  * A 2d polygon based on {@link javax.vecmath.Point2d Point2d}.
@@ -20,12 +23,15 @@ public class Polygon2d extends ClosedSurface<Point2d> {
 
 	public static Polygon2d xyProjectedPolygon2d(Polygon3d polygon) {
 
-		double[] xcoord = new double[polygon.points.size()];
-		double[] ycoord = new double[polygon.points.size()];
+		List<Point3d> points = polygon.getPoints();
+		double[] xcoord = new double[points.size()];
+		double[] ycoord = new double[points.size()];
 
-		for (int i = 0; i < polygon.points.size(); i++) {
-			xcoord[i] = polygon.points.get(i).x;
-			ycoord[i] = polygon.points.get(i).y;
+		int i = 0;
+		for (Point3d point : points) {
+			xcoord[i] = point.x;
+			ycoord[i] = point.y;
+			i++;
 		}
 		return new Polygon2d(xcoord, ycoord); 
 	}
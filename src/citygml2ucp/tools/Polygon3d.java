@@ -70,13 +70,39 @@ public class Polygon3d extends ClosedSurface<Point3d> {
 	 * @param surfaceProperty Describes the polygon
 	 */
 	public Polygon3d(String id, SurfaceProperty surfaceProperty) {
+		this(id, CityGMLTools.coordinateArrayFromSurfaceProperty(surfaceProperty));
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param coord Coordinates of the exterior ring as x1, y1, z1, x2, y2, z2, ...
+	 */
+	public Polygon3d(String id, double[] coord) {
 		this.id = id;
+		calcGeometry(coord);
+	}
 
-		List<Double> coord = CityGMLTools.coordinatesFromSurfaceProperty(surfaceProperty);
+	/**
+	 * Constructor without calculation of the geometry, which has to be done by
+	 * {@link #calcGeometry(double[])} before the polygon is used.
+	 * 
+	 * @param id ID of the polygon
+	 */
+	protected Polygon3d(String id) {
+		this.id = id;
+	}
 
+	/**
+	 * Calculate points, base vectors, 2d polygon, area, centroid and angle.
+	 * 
+	 * @param coord Coordinates of the exterior ring as x1, y1, z1, x2, y2, z2, ...
+	 * @throws IllegalArgumentException Illegal polygon
+	 */
+	protected final void calcGeometry(double[] coord) {
 		points = new LinkedList<>();
-		for (int i = 0; i < coord.size(); i += 3) {
-			points.add(new Point3d(coord.get(i), coord.get(i + 1), coord.get(i + 2)));
+		for (int i = 0; i < coord.length; i += 3) {
+			points.add(new Point3d(coord[i], coord[i + 1], coord[i + 2]));
 		}
 
 		// create list of all possible
@@ -176,6 +202,15 @@ public class Polygon3d extends ClosedSurface<Point3d> {
 		return angle;
 	}
 
+	/**
+	 * Get the vector normal to the polygon.
+	 * 
+	 * @return Normal unit vector
+	 */
+	public Vector3d getNormalUnitVector() {
+		return this.normalUnitVector;
+	}
+
 	public List<Point3d> getPoints() {
 		return this.points;
 	}
@@ -245,6 +280,22 @@ public class Polygon3d extends ClosedSurface<Point3d> {
 	 * @return hit?
 	 */
 	public boolean isHitBy(Point3d p1, Point3d p2) {
+		return isHitBy(p1, p2, null);
+	}
+
+	/**
+	 * Does the line between two points hit the polygon?
+	 * 
+	 * @param p1      One point
+	 * @param p2      Other point
+	 * @param counter Counter of the tests, not counted if {@code null}
+	 * @return hit?
+	 */
+	public boolean isHitBy(Point3d p1, Point3d p2, HitCounter counter) {
+		if (counter != null) {
+			counter.calls++;
+		}
+
 		// vector of direction
 		Vector3d directionVectorp1p2 = new Vector3dEnh(p1, p2);
 
@@ -290,7 +341,14 @@ public class Polygon3d extends ClosedSurface<Point3d> {
 		double y = directionUnitVector2.dot(planePoint);
 
 		// check if possible point is in 2d polygon
-		return polygon2d.contains(x, y);
+		boolean hit = polygon2d.contains(x, y);
+		if (counter != null) {
+			counter.containsCalls++;
+			if (hit) {
+				counter.hits++;
+			}
+		}
+		return hit;
 	}
 
 	public double getHeight() {
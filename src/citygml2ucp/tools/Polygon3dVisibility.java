@@ -82,19 +82,35 @@ public class Polygon3dVisibility implements Comparable<Polygon3dVisibility> {
 			return cosAngle;
 		}
 
-		Vector3d connect = new Vector3d();
+		cosAngle = cosAngle(sending, receiving);
+		isSetCosAngle = true;
+		return cosAngle;
+	}
 
-		connect.sub(receiving.getCentroid(), sending.getCentroid());
-		double l1 = connect.length();
-		double l2 = sending.normalUnitVector.length();
+	/**
+	 * Calculate the cosine of the angle between the normal of the sending
+	 * surface and the connection between the centroids.
+	 * 
+	 * @param sending
+	 *            Sending surface
+	 * @param receiving
+	 *            Receiving surface
+	 * @return Cosine of the angle, 0 if undefined
+	 */
+	public static double cosAngle(Polygon3d sending, Polygon3d receiving) {
+		Point3d p1 = sending.getCentroid();
+		Point3d p2 = receiving.getCentroid();
+		double cx = p2.x - p1.x;
+		double cy = p2.y - p1.y;
+		double cz = p2.z - p1.z;
+		double l1 = Math.sqrt(cx * cx + cy * cy + cz * cz);
+		Vector3d normalUnitVector = sending.getNormalUnitVector();
+		double l2 = normalUnitVector.length();
 
 		if (l1 < 1.e-12 || l2 < 1.e-12) {
-			cosAngle = 0.;
-		} else {
-			cosAngle = connect.dot(sending.normalUnitVector) / l1 / l2;
+			return 0.;
 		}
-		isSetCosAngle = true;
-		return cosAngle;
+		return (cx * normalUnitVector.x + cy * normalUnitVector.y + cz * normalUnitVector.z) / l1 / l2;
 	}
 
 	/*
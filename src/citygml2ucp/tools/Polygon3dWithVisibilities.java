@@ -3,6 +3,7 @@
  */
 package citygml2ucp.tools;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -24,9 +25,30 @@ public class Polygon3dWithVisibilities extends Polygon3d {
 	public Polygon3dWithVisibilities(String id, SurfaceProperty surfaceProperty) {
 		super(id, surfaceProperty);
 		// we want to add elements in parallel so to be sure, use synchronizedList
-		this.visibilities = Collections.synchronizedList(new LinkedList<>());
+		this.visibilities = Collections.synchronizedList(new ArrayList<>());
+	}
+
+	/**
+	 * @param coord Coordinates of the exterior ring as x1, y1, z1, x2, y2, z2, ...
+	 */
+	public Polygon3dWithVisibilities(String id, double[] coord) {
+		super(id, coord);
+		// we want to add elements in parallel so to be sure, use synchronizedList
+		this.visibilities = Collections.synchronizedList(new ArrayList<>());
 	}
 	
+	/**
+	 * Constructor without calculation of the geometry, see
+	 * {@link Polygon3d#Polygon3d(String)}.
+	 * 
+	 * @param id ID of the polygon
+	 */
+	protected Polygon3dWithVisibilities(String id) {
+		super(id);
+		// we want to add elements in parallel so to be sure, use synchronizedList
+		this.visibilities = Collections.synchronizedList(new ArrayList<>());
+	}
+
 	public List<Polygon3dVisibility> generateVisibilityList(boolean eff) {
 		List<Polygon3dVisibility> visibilityList = new LinkedList<>();
 		for (Polygon3d receiving : visibilities) {
@@ -0,0 +1,144 @@
+package citygml2ucp.tools;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of a parallel calculation reported at a fixed interval.
+ *
+ * Workers only add to lock-free counters of finished items (e.g. buildings)
+ * and pairs (e.g. wall pairs tested). A single daemon thread prints the
+ * progress, the throughput since the last report and the estimated remaining
+ * time, either as text or as one JSON object per line.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class ProgressReporter implements AutoCloseable {
+
+	private final String phase;
+	private final String itemName, pairName;
+	private final long total;
+	private final boolean json;
+
+	private final LongAdder done = new LongAdder();
+	private final LongAdder pairs = new LongAdder();
+
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * State of the last report, only used by the reporting thread
+	 */
+	private long lastDone, lastPairs, lastTime = startTime;
+
+	/**
+	 * Reporting thread, {@code null} if not reporting
+	 */
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * Constructor, starts the reporting.
+	 *
+	 * @param phase    Name of the calculation
+	 * @param total    Number of items to process
+	 * @param itemName Name of the items
+	 * @param pairName Name of the pairs
+	 * @param interval Interval of the reports in seconds, no reports if not
+	 *                 positive
+	 * @param json     report as JSON lines?
+	 */
+	public ProgressReporter(String phase, long total, String itemName, String pairName, double interval,
+			boolean json) {
+		this.phase = phase;
+		this.total = total;
+		this.itemName = itemName;
+		this.pairName = pairName;
+		this.json = json;
+		if (interval > 0.) {
+			timer = Executors.newSingleThreadScheduledExecutor((r) -> {
+				Thread thread = new Thread(r, "progress");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = (long) (interval * 1.e9);
+			timer.scheduleAtFixedRate(this::report, period, period, TimeUnit.NANOSECONDS);
+		} else {
+			timer = null;
+		}
+	}
+
+	/**
+	 * Add finished items.
+	 *
+	 * @param n Number of items
+	 */
+	public void addDone(long n) {
+		done.add(n);
+	}
+
+	/**
+	 * Add processed pairs.
+	 *
+	 * @param n Number of pairs
+	 */
+	public void addPairs(long n) {
+		pairs.add(n);
+	}
+
+	private void report() {
+		long now = System.nanoTime();
+		long currentDone = done.sum();
+		long currentPairs = pairs.sum();
+		double seconds = (now - lastTime) * 1.e-9;
+		double elapsed = (now - startTime) * 1.e-9;
+		double itemRate = (currentDone - lastDone) / seconds;
+		double pairRate = (currentPairs - lastPairs) / seconds;
+		// remaining time from the mean rate of the whole calculation
+		double eta = currentDone > 0 ? (total - currentDone) * elapsed / currentDone : Double.NaN;
+		lastDone = currentDone;
+		lastPairs = currentPairs;
+		lastTime = now;
+
+		if (json) {
+			System.out.println(String.format(Locale.ROOT,
+					"{\"phase\":\"%s\",\"elapsed_s\":%.1f,\"done\":%d,\"total\":%d,"
+							+ "\"items_per_s\":%.1f,\"pairs_per_s\":%.1f,\"eta_s\":%s}",
+					phase, elapsed, currentDone, total, itemRate, pairRate,
+					Double.isNaN(eta) ? "null" : String.format(Locale.ROOT, "%.0f", eta)));
+		} else {
+			System.out.println(String.format(" %s: %d/%d %s (%.1f %%), %.1f %s/s, %.3g %s/s, ETA %s", phase,
+					currentDone, total, itemName, total > 0 ? 100. * currentDone / total : 100., itemRate,
+					itemName, pairRate, pairName,
+					Double.isNaN(eta) ? "unknown" : String.format("%.1f minutes", eta / 60.)));
+		}
+	}
+
+	/**
+	 * Stop reporting and print a summary.
+	 */
+	@Override
+	public void close() {
+		if (timer == null) {
+			return;
+		}
+		timer.shutdownNow();
+		try {
+			timer.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		double elapsed = (System.nanoTime() - startTime) * 1.e-9;
+		if (json) {
+			System.out.println(String.format(Locale.ROOT,
+					"{\"phase\":\"%s\",\"elapsed_s\":%.1f,\"done\":%d,\"total\":%d,\"pairs\":%d}", phase,
+					elapsed, done.sum(), total, pairs.sum()));
+		} else {
+			System.out.println(String.format(" %s: %d %s and %d %s in %.1f minutes", phase, done.sum(), itemName,
+					pairs.sum(), pairName, elapsed / 60.));
+		}
+	}
+
+}
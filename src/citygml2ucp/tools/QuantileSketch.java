@@ -0,0 +1,224 @@
+package citygml2ucp.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate quantiles of a stream of values with bounded memory (KLL
+ * sketch).
+ *
+ * The values are kept in compactors of increasing level, a value in level
+ * {@code h} stands for {@code 2^h} values of the stream. If a compactor is
+ * full, it is sorted and every second value is moved to the next level. The
+ * values kept alternate between the even and odd positions instead of being
+ * chosen randomly, so the result is reproducible. Sketches can be merged, so
+ * several streams can be summarised separately. All methods are synchronised.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class QuantileSketch {
+
+	/**
+	 * Ratio of the capacities of successive levels
+	 */
+	private static final double CAPACITY_RATIO = 2. / 3.;
+
+	/**
+	 * Capacity of the highest level, controls the accuracy
+	 */
+	private final int k;
+
+	/**
+	 * Values of the levels and their number
+	 */
+	private final List<double[]> levels = new ArrayList<>();
+	private final List<Integer> levelSizes = new ArrayList<>();
+
+	/**
+	 * Number of values kept and maximum number before compaction
+	 */
+	private int size, maxSize;
+
+	/**
+	 * Number of values added
+	 */
+	private long count;
+
+	/**
+	 * Keep the odd positions at the next compaction?
+	 */
+	private boolean oddOffset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param k Capacity of the highest level (at least 8), the rank error is
+	 *          about {@code 1.7 / k}
+	 */
+	public QuantileSketch(int k) {
+		if (k < 8) {
+			throw new IllegalArgumentException("k must be at least 8");
+		}
+		this.k = k;
+		grow();
+	}
+
+	private int capacity(int level) {
+		int depth = levels.size() - level - 1;
+		return (int) Math.ceil(Math.pow(CAPACITY_RATIO, depth) * k) + 1;
+	}
+
+	private void grow() {
+		levels.add(new double[2]);
+		levelSizes.add(0);
+		maxSize = 0;
+		for (int h = 0; h < levels.size(); h++) {
+			maxSize += capacity(h);
+		}
+	}
+
+	private void append(int level, double value) {
+		double[] values = levels.get(level);
+		int n = levelSizes.get(level);
+		if (n == values.length) {
+			values = Arrays.copyOf(values, 2 * n);
+			levels.set(level, values);
+		}
+		values[n] = value;
+		levelSizes.set(level, n + 1);
+	}
+
+	/**
+	 * Add a value.
+	 *
+	 * @param value Value
+	 */
+	public synchronized void add(double value) {
+		append(0, value);
+		size++;
+		count++;
+		if (size >= maxSize) {
+			compress();
+		}
+	}
+
+	/**
+	 * Compact levels until the sketch is below its maximum size.
+	 */
+	private void compress() {
+		for (int h = 0; h < levels.size() && size >= maxSize; h++) {
+			int n = levelSizes.get(h);
+			if (n < capacity(h)) {
+				continue;
+			}
+			if (h + 1 == levels.size()) {
+				grow();
+			}
+			double[] values = levels.get(h);
+			Arrays.sort(values, 0, n);
+			// an odd number of values leaves the smallest in this level
+			int start = n % 2;
+			int offset = oddOffset ? 1 : 0;
+			oddOffset = !oddOffset;
+			for (int i = start + offset; i < n; i += 2) {
+				append(h + 1, values[i]);
+			}
+			levelSizes.set(h, start);
+			size -= (n - start) / 2;
+		}
+	}
+
+	/**
+	 * Add all values of another sketch.
+	 *
+	 * @param other Sketch to add, not changed
+	 */
+	public void merge(QuantileSketch other) {
+		List<double[]> otherLevels;
+		List<Integer> otherSizes;
+		long otherCount;
+		synchronized (other) {
+			otherLevels = new ArrayList<>();
+			for (int h = 0; h < other.levels.size(); h++) {
+				otherLevels.add(Arrays.copyOf(other.levels.get(h), other.levelSizes.get(h)));
+			}
+			otherSizes = new ArrayList<>(other.levelSizes);
+			otherCount = other.count;
+		}
+		synchronized (this) {
+			while (levels.size() < otherLevels.size()) {
+				grow();
+			}
+			for (int h = 0; h < otherLevels.size(); h++) {
+				double[] values = otherLevels.get(h);
+				for (int i = 0; i < otherSizes.get(h); i++) {
+					append(h, values[i]);
+				}
+				size += otherSizes.get(h);
+			}
+			count += otherCount;
+			while (size >= maxSize) {
+				int before = size;
+				compress();
+				if (size == before) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of values added.
+	 *
+	 * @return Number of values
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get an approximate quantile.
+	 *
+	 * @param q Quantile between 0 and 1
+	 * @return Value of the quantile, NaN if no value has been added
+	 */
+	public synchronized double getQuantile(double q) {
+		if (q < 0. || q > 1.) {
+			throw new IllegalArgumentException("quantile must be between 0 and 1");
+		}
+		if (size == 0) {
+			return Double.NaN;
+		}
+		double[] values = new double[size];
+		long[] weights = new long[size];
+		Integer[] order = new Integer[size];
+		int i = 0;
+		for (int h = 0; h < levels.size(); h++) {
+			double[] levelValues = levels.get(h);
+			for (int j = 0; j < levelSizes.get(h); j++) {
+				values[i] = levelValues[j];
+				weights[i] = 1L << h;
+				order[i] = i;
+				i++;
+			}
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+		long totalWeight = 0;
+		for (long weight : weights) {
+			totalWeight += weight;
+		}
+		double rank = q * totalWeight;
+		long cumulated = 0;
+		for (int j = 0; j < size; j++) {
+			cumulated += weights[order[j]];
+			if (cumulated >= rank) {
+				return values[order[j]];
+			}
+		}
+		return values[order[size - 1]];
+	}
+
+}
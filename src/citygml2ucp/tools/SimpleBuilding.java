@@ -35,4 +35,14 @@ public class SimpleBuilding {
 
 	}
 
+	/**
+	 * Is the building inside of the domain? Buildings of the halo around the
+	 * domain have the grid indices -1.
+	 * 
+	 * @return inside of the domain?
+	 */
+	public boolean isInDomain() {
+		return irlat >= 0;
+	}
+
 }
@@ -0,0 +1,213 @@
+package citygml2ucp.tools;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFileWriter;
+
+/**
+ * A field whose last two dimensions are latitude and longitude, which stores
+ * values only for grid cells that have been set.
+ *
+ * All other grid cells have the default value. The values of a grid cell are
+ * allocated when the cell is first set. When written to a NetCDF file, the
+ * field is expanded in blocks of latitude rows, so the complete field never
+ * has to be held in memory. Cells can be added by several threads at the same
+ * time, but a single value must not be changed by several threads at the same
+ * time.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class SparseWritableField implements GridField {
+
+	/**
+	 * Description and writing of the field
+	 */
+	private final FieldOutput output;
+
+	/**
+	 * Full shape of the field
+	 */
+	private final int[] shape;
+
+	/**
+	 * Number of values of a grid cell (product of leading dimensions) and number
+	 * of grid cells
+	 */
+	private final int cellSize, nCells;
+
+	/**
+	 * Length of the longitude dimension
+	 */
+	private final int ie;
+
+	/**
+	 * Values of the grid cells set, key is {@code lat * ie + lon}
+	 */
+	private final Map<Integer, double[]> cells = new ConcurrentHashMap<>();
+
+	/**
+	 * Value of grid cells not set
+	 */
+	private double defaultValue = 0.;
+
+	public SparseWritableField(String name, List<WritableDimension> dimlist,
+			String standard_name, String long_name, String units,
+			String grid_mapping, DataType outputType) {
+		if (dimlist.size() < 3) {
+			throw new IllegalArgumentException("sparse field needs at least 3 dimensions");
+		}
+		this.output = new FieldOutput(name, dimlist, standard_name, long_name, units, grid_mapping,
+				outputType);
+		this.shape = output.getShape();
+		this.ie = shape[shape.length - 1];
+		this.nCells = shape[shape.length - 2] * ie;
+		int size = 1;
+		for (int i = 0; i < shape.length - 2; i++) {
+			size *= shape[i];
+		}
+		this.cellSize = size;
+	}
+
+	@Override
+	public double getMissingValue() {
+		return FieldOutput.MISSING_VALUE;
+	}
+
+	public double getDefaultValue() {
+		return defaultValue;
+	}
+
+	public void setDefaultValue(double defaultValue) {
+		this.defaultValue = defaultValue;
+	}
+
+	/**
+	 * Get the grid cells set.
+	 *
+	 * @return Sorted keys {@code lat * ie + lon} of the cells
+	 */
+	public int[] getCells() {
+		int[] keys = cells.keySet().stream().mapToInt(Integer::intValue).toArray();
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The cell is allocated with all values 0 if not set yet.
+	 */
+	@Override
+	public double[] getCellData(int lat, int lon) {
+		return cells.computeIfAbsent(lat * ie + lon, (k) -> new double[cellSize]);
+	}
+
+	@Override
+	public int getCellOffset(int lat, int lon) {
+		return 0;
+	}
+
+	@Override
+	public int getCellStride() {
+		return 1;
+	}
+
+	@Override
+	public Index getIndex() {
+		return Index.factory(shape);
+	}
+
+	@Override
+	public double get(Index i) {
+		int element = i.currentElement();
+		double[] cell = cells.get(element % nCells);
+		return cell == null ? defaultValue : cell[element / nCells];
+	}
+
+	@Override
+	public void set(Index i, double value) {
+		int element = i.currentElement();
+		int key = element % nCells;
+		getCellData(key / ie, key % ie)[element / nCells] = value;
+	}
+
+	@Override
+	public void resetDim() {
+		output.resetDim();
+	}
+
+	@Override
+	public void setOutputPart(int[] origin, int[] shape) {
+		output.setOutputPart(origin, shape);
+	}
+
+	@Override
+	public long getSavedSizeBytes() {
+		return output.getSavedSizeBytes();
+	}
+
+	@Override
+	public DimensionsAndVariables addToNetCDFfile(NetcdfFileWriter ncfile) {
+		return output.addToNetCDFfile(ncfile);
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetcdfFileWriter ncfile) throws IOException, InvalidRangeException {
+		int[] keys = getCells();
+		output.write(ncfile, (origin, count) -> getBlock(keys, origin, count));
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetCDFBlockWriter writer) throws IOException, InvalidRangeException {
+		int[] keys = getCells();
+		output.write(writer, (origin, count) -> getBlock(keys, origin, count));
+	}
+
+	/**
+	 * Expand a block of complete latitude rows and cut out the part to write.
+	 * 
+	 * @param keys   Sorted keys of the cells set
+	 * @param origin Origin of the block
+	 * @param count  Shape of the block
+	 * @return Part of the block to write
+	 * @throws InvalidRangeException
+	 */
+	private Array getBlock(int[] keys, int[] origin, int[] count) throws InvalidRangeException {
+		int rank = shape.length;
+		int lat0 = origin[rank - 2];
+		int nRows = count[rank - 2];
+		int[] blockShape = shape.clone();
+		blockShape[rank - 2] = nRows;
+		ArrayDouble block = new ArrayDouble(blockShape);
+		double[] data = (double[]) block.getStorage();
+		Arrays.fill(data, defaultValue);
+		int blockCells = nRows * ie;
+		int firstKey = lat0 * ie;
+		int k = Arrays.binarySearch(keys, firstKey);
+		if (k < 0) {
+			k = -k - 1;
+		}
+		for (; k < keys.length && keys[k] < firstKey + blockCells; k++) {
+			double[] cell = cells.get(keys[k]);
+			int offset = keys[k] - firstKey;
+			for (int lead = 0; lead < cellSize; lead++) {
+				data[lead * blockCells + offset] = cell[lead];
+			}
+		}
+
+		int[] blockOrigin = origin.clone();
+		blockOrigin[rank - 2] = 0;
+		return block.sectionNoReduce(blockOrigin, count, null);
+	}
+
+}
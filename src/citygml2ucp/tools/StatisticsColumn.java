@@ -0,0 +1,96 @@
+package citygml2ucp.tools;
+
+import java.util.Arrays;
+
+/**
+ * Growable column of values stored as float with running statistics.
+ *
+ * Minimum, maximum and mean are calculated from the values as added in double
+ * precision, approximate quantiles from a {@link QuantileSketch}. Values can
+ * be added by several threads at the same time.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class StatisticsColumn {
+
+	/**
+	 * Capacity of the highest level of the quantile sketch
+	 */
+	private static final int SKETCH_SIZE = 200;
+
+	private float[] values = new float[1024];
+	private int size;
+
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum;
+
+	private final QuantileSketch sketch = new QuantileSketch(SKETCH_SIZE);
+
+	/**
+	 * Add a value.
+	 *
+	 * @param value Value
+	 */
+	public synchronized void add(double value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, 2 * size);
+		}
+		values[size++] = (float) value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		sum += value;
+		sketch.add(value);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return Smallest value, positive infinity if empty
+	 */
+	public synchronized double getMin() {
+		return min;
+	}
+
+	/**
+	 * @return Largest value, negative infinity if empty
+	 */
+	public synchronized double getMax() {
+		return max;
+	}
+
+	/**
+	 * @return Mean value, NaN if empty
+	 */
+	public synchronized double getMean() {
+		return sum / size;
+	}
+
+	/**
+	 * Get an approximate quantile, see {@link QuantileSketch#getQuantile(double)}.
+	 *
+	 * @param q Quantile between 0 and 1
+	 * @return Value of the quantile
+	 */
+	public double getQuantile(double q) {
+		return sketch.getQuantile(q);
+	}
+
+	public QuantileSketch getSketch() {
+		return sketch;
+	}
+
+	/**
+	 * Get the backing array, whose first {@link #size()} elements are the
+	 * values. It must not be changed and is replaced when the column grows.
+	 *
+	 * @return Backing array
+	 */
+	public synchronized float[] getData() {
+		return values;
+	}
+
+}
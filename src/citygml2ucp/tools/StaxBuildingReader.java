@@ -0,0 +1,409 @@
+package citygml2ucp.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import citygml2ucp.tools.BuildingGeometry.SurfaceType;
+
+/**
+ * Lightweight reader for the building geometry of CityGML files.
+ *
+ * Instead of unmarshalling the complete CityGML model, only the elements used
+ * by the converter are extracted from the XML stream: ID, name and envelope of
+ * buildings, the exterior rings of the LoD2 multi surfaces of wall, roof and
+ * ground surfaces, and the exterior rings of the LoD1 solid. The same cases as
+ * in {@link CityGMLTools#coordinatesFromSurfaceProperty} are supported, every
+ * other polygon is returned as {@code null}. Buildings are read one by one, so
+ * a file never has to be kept in memory completely.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class StaxBuildingReader implements AutoCloseable {
+
+	/**
+	 * Namespace of GML 3.1.1 used by CityGML 1.0 and 2.0
+	 */
+	private static final String GML_NS = "http://www.opengis.net/gml";
+
+	private final InputStream in;
+
+	private final XMLStreamReader reader;
+
+	/**
+	 * Local names of the open elements outside of buildings
+	 */
+	private final Deque<String> elements = new ArrayDeque<>();
+
+	/**
+	 * Building read ahead by {@link #hasNext()}
+	 */
+	private BuildingGeometry nextBuilding;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file CityGML file
+	 * @throws IOException        File cannot be opened
+	 * @throws XMLStreamException File is no XML file
+	 */
+	public StaxBuildingReader(File file) throws IOException, XMLStreamException {
+		this(new BufferedInputStream(new FileInputStream(file)), file.toString());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in       Stream of CityGML data, closed with this reader
+	 * @param systemId Name of the stream for error messages
+	 * @throws XMLStreamException Stream includes no XML
+	 */
+	public StaxBuildingReader(InputStream in, String systemId) throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		this.in = in;
+		this.reader = factory.createXMLStreamReader(systemId, in);
+	}
+
+	/**
+	 * Is there another building in the file?
+	 *
+	 * @return another building found?
+	 * @throws XMLStreamException Error in XML
+	 */
+	public boolean hasNext() throws XMLStreamException {
+		if (nextBuilding == null) {
+			nextBuilding = findNextBuilding();
+		}
+		return nextBuilding != null;
+	}
+
+	/**
+	 * Get the next building of the file.
+	 *
+	 * @return Building
+	 * @throws XMLStreamException Error in XML
+	 */
+	public BuildingGeometry next() throws XMLStreamException {
+		if (!hasNext()) {
+			throw new NoSuchElementException("No more buildings in file.");
+		}
+		BuildingGeometry building = nextBuilding;
+		nextBuilding = null;
+		return building;
+	}
+
+	@Override
+	public void close() throws XMLStreamException, IOException {
+		reader.close();
+		in.close();
+	}
+
+	/**
+	 * Read up to the next building that is a city object member.
+	 *
+	 * @return Building or {@code null} at the end of the file
+	 * @throws XMLStreamException Error in XML
+	 */
+	private BuildingGeometry findNextBuilding() throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if ("Building".equals(reader.getLocalName()) && "cityObjectMember".equals(elements.peek())) {
+					return readBuilding();
+				}
+				elements.push(reader.getLocalName());
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				elements.pop();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Move to the next child element of the current element.
+	 *
+	 * @return {@code true} if positioned at the start of a child,
+	 *         {@code false} if positioned at the end of the current element
+	 * @throws XMLStreamException Error in XML
+	 */
+	private boolean nextChild() throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+	}
+
+	/**
+	 * Skip the current element but consider its coordinates for the calculated
+	 * envelope of the building.
+	 *
+	 * @param building Building the element belongs to
+	 * @throws XMLStreamException Error in XML
+	 */
+	private void skipElement(BuildingGeometry building) throws XMLStreamException {
+		String name = reader.getLocalName();
+		if ("posList".equals(name) || "pos".equals(name)) {
+			building.extendEnvelope(readCoordinates());
+			return;
+		}
+		while (nextChild()) {
+			skipElement(building);
+		}
+	}
+
+	private String getId() {
+		return reader.getAttributeValue(GML_NS, "id");
+	}
+
+	private boolean isGML() {
+		return GML_NS.equals(reader.getNamespaceURI());
+	}
+
+	/**
+	 * Read a building or building part.
+	 *
+	 * @return Building
+	 * @throws XMLStreamException Error in XML
+	 */
+	private BuildingGeometry readBuilding() throws XMLStreamException {
+		BuildingGeometry building = new BuildingGeometry(getId());
+		while (nextChild()) {
+			String name = reader.getLocalName();
+			if ("name".equals(name) && isGML()) {
+				building.name = building.name.concat(reader.getElementText());
+			} else if ("boundedBy".equals(name)) {
+				if (isGML()) {
+					readEnvelope(building);
+				} else {
+					readBoundarySurface(building);
+				}
+			} else if ("lod1Solid".equals(name)) {
+				building.lod1Solid = readSolid(building);
+			} else if ("consistsOfBuildingPart".equals(name)) {
+				while (nextChild()) {
+					if ("BuildingPart".equals(reader.getLocalName())) {
+						BuildingGeometry part = readBuilding();
+						building.extendEnvelope(part);
+						building.parts.add(part);
+					} else {
+						skipElement(building);
+					}
+				}
+			} else {
+				skipElement(building);
+			}
+		}
+		return building;
+	}
+
+	private void readEnvelope(BuildingGeometry building) throws XMLStreamException {
+		while (nextChild()) {
+			if ("Envelope".equals(reader.getLocalName())) {
+				while (nextChild()) {
+					String name = reader.getLocalName();
+					if ("lowerCorner".equals(name)) {
+						building.lowerCorner = readCoordinates();
+					} else if ("upperCorner".equals(name)) {
+						building.upperCorner = readCoordinates();
+					} else {
+						skipElement(building);
+					}
+				}
+			} else {
+				skipElement(building);
+			}
+		}
+	}
+
+	private void readBoundarySurface(BuildingGeometry building) throws XMLStreamException {
+		while (nextChild()) {
+			BuildingGeometry.Surface surface = new BuildingGeometry.Surface(getSurfaceType(reader.getLocalName()),
+					getId());
+			while (nextChild()) {
+				if ("lod2MultiSurface".equals(reader.getLocalName())) {
+					// MultiSurface
+					while (nextChild()) {
+						while (nextChild()) {
+							if ("surfaceMember".equals(reader.getLocalName())) {
+								surface.polygons.add(readSurfaceProperty(building));
+							} else {
+								skipElement(building);
+							}
+						}
+					}
+				} else {
+					skipElement(building);
+				}
+			}
+			building.boundarySurfaces.add(surface);
+		}
+	}
+
+	private static SurfaceType getSurfaceType(String name) {
+		switch (name) {
+		case "WallSurface":
+			return SurfaceType.WALL;
+		case "RoofSurface":
+			return SurfaceType.ROOF;
+		case "GroundSurface":
+			return SurfaceType.GROUND;
+		default:
+			return SurfaceType.OTHER;
+		}
+	}
+
+	private BuildingGeometry.Solid readSolid(BuildingGeometry building) throws XMLStreamException {
+		BuildingGeometry.Solid solid = null;
+		while (nextChild()) {
+			if ("Solid".equals(reader.getLocalName())) {
+				while (nextChild()) {
+					if ("exterior".equals(reader.getLocalName())) {
+						while (nextChild()) {
+							if ("CompositeSurface".equals(reader.getLocalName())) {
+								solid = new BuildingGeometry.Solid(getId());
+								while (nextChild()) {
+									if ("surfaceMember".equals(reader.getLocalName())) {
+										solid.polygons.add(readSurfaceProperty(building));
+									} else {
+										skipElement(building);
+									}
+								}
+							} else {
+								skipElement(building);
+							}
+						}
+					} else {
+						skipElement(building);
+					}
+				}
+			} else {
+				skipElement(building);
+			}
+		}
+		if (solid == null) {
+			solid = new BuildingGeometry.Solid(null);
+			solid.invalid = true;
+		}
+		return solid;
+	}
+
+	/**
+	 * Read a surface property (e.g. surfaceMember), which can be a polygon or an
+	 * orientable surface.
+	 *
+	 * @param building Building the surface belongs to
+	 * @return Coordinates of the exterior ring or {@code null} if not supported
+	 * @throws XMLStreamException Error in XML
+	 */
+	private double[] readSurfaceProperty(BuildingGeometry building) throws XMLStreamException {
+		double[] coord = null;
+		while (nextChild()) {
+			String name = reader.getLocalName();
+			if ("Polygon".equals(name)) {
+				coord = readPolygon(building);
+			} else if ("OrientableSurface".equals(name)) {
+				while (nextChild()) {
+					if ("baseSurface".equals(reader.getLocalName())) {
+						coord = readSurfaceProperty(building);
+					} else {
+						skipElement(building);
+					}
+				}
+			} else {
+				skipElement(building);
+			}
+		}
+		return coord;
+	}
+
+	private double[] readPolygon(BuildingGeometry building) throws XMLStreamException {
+		double[] coord = null;
+		while (nextChild()) {
+			if ("exterior".equals(reader.getLocalName())) {
+				while (nextChild()) {
+					if ("LinearRing".equals(reader.getLocalName())) {
+						while (nextChild()) {
+							if ("posList".equals(reader.getLocalName())) {
+								coord = readCoordinates();
+								building.extendEnvelope(coord);
+							} else {
+								skipElement(building);
+							}
+						}
+					} else {
+						skipElement(building);
+					}
+				}
+			} else {
+				skipElement(building);
+			}
+		}
+		return coord;
+	}
+
+	/**
+	 * Read the coordinates of the current element.
+	 *
+	 * @return Coordinates
+	 * @throws XMLStreamException Error in XML or no valid number
+	 */
+	private double[] readCoordinates() throws XMLStreamException {
+		try {
+			return parseCoordinates(reader.getElementText());
+		} catch (NumberFormatException e) {
+			throw new XMLStreamException("Invalid coordinate", reader.getLocation(), e);
+		}
+	}
+
+	/**
+	 * Parse a white space separated list of numbers.
+	 *
+	 * @param text List of numbers
+	 * @return Numbers
+	 */
+	static double[] parseCoordinates(String text) {
+		double[] coord = new double[24];
+		int n = 0;
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && Character.isWhitespace(text.charAt(i))) {
+				i++;
+			}
+			if (i == length) {
+				break;
+			}
+			int start = i;
+			while (i < length && !Character.isWhitespace(text.charAt(i))) {
+				i++;
+			}
+			if (n == coord.length) {
+				coord = Arrays.copyOf(coord, 2 * n);
+			}
+			coord[n++] = Double.parseDouble(text.substring(start, i));
+		}
+		return Arrays.copyOf(coord, n);
+	}
+
+}
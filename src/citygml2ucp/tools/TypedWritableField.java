@@ -0,0 +1,89 @@
+package citygml2ucp.tools;
+
+import java.io.IOException;
+import java.util.List;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFileWriter;
+
+/**
+ * A field which stores its values directly in the output type instead of
+ * double.
+ *
+ * The values are accessed through the {@code Index} methods of the field as
+ * for the double fields, but kept in an {@code Array} of the output type, so
+ * no converted copy is needed when written to a NetCDF file. The subclasses
+ * give direct access to the backing array of their type.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public abstract class TypedWritableField implements IndexedField {
+
+	/**
+	 * Values of the field in the output type
+	 */
+	protected final Array storage;
+
+	/**
+	 * Description and writing of the field
+	 */
+	private final FieldOutput output;
+
+	protected TypedWritableField(String name, List<WritableDimension> dimlist,
+			String standard_name, String long_name, String units,
+			String grid_mapping, DataType outputType) {
+		this.output = new FieldOutput(name, dimlist, standard_name, long_name, units, grid_mapping,
+				outputType);
+		this.storage = Array.factory(outputType, output.getShape());
+	}
+
+	@Override
+	public Index getIndex() {
+		return storage.getIndex();
+	}
+
+	@Override
+	public double get(Index i) {
+		return storage.getDouble(i);
+	}
+
+	@Override
+	public void set(Index i, double value) {
+		storage.setDouble(i, value);
+	}
+
+	@Override
+	public void resetDim() {
+		output.resetDim();
+	}
+
+	@Override
+	public void setOutputPart(int[] origin, int[] shape) {
+		output.setOutputPart(origin, shape);
+	}
+
+	@Override
+	public long getSavedSizeBytes() {
+		return storage.getSizeBytes();
+	}
+
+	@Override
+	public DimensionsAndVariables addToNetCDFfile(NetcdfFileWriter ncfile) {
+		return output.addToNetCDFfile(ncfile);
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetcdfFileWriter ncfile) throws IOException, InvalidRangeException {
+		output.write(ncfile, (origin, shape) -> storage.sectionNoReduce(origin, shape, null));
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetCDFBlockWriter writer) throws IOException, InvalidRangeException {
+		output.write(writer, (origin, shape) -> storage.sectionNoReduce(origin, shape, null));
+	}
+
+}
@@ -0,0 +1,170 @@
+package citygml2ucp.tools;
+
+import java.util.Arrays;
+
+import javax.vecmath.Point3d;
+
+/**
+ * Visibilities of a sending wall stored in primitive arrays, which are
+ * retrieved in the order of increasing distance.
+ *
+ * The order is the same as the one of the sorted list of
+ * {@link Polygon3dVisibility}: visibilities with the same distance are
+ * returned in the order of the visibility list or, optionally, ordered by the
+ * centroid of the receiving wall first. Instead of sorting all visibilities, a
+ * binary heap is used, so only the visibilities retrieved have to be ordered.
+ * The arrays are reused when the queue is filled again.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class VisibilityQueue {
+
+	/**
+	 * Distance between sending and receiving wall
+	 */
+	public double[] distance = new double[0];
+
+	/**
+	 * Area of the receiving wall
+	 */
+	public double[] area = new double[0];
+
+	/**
+	 * Cosine of the angle between the normal of the sending wall and the
+	 * connection to the receiving wall
+	 */
+	public double[] cosAngle = new double[0];
+
+	/**
+	 * Receiving wall
+	 */
+	public Polygon3d[] receiving = new Polygon3d[0];
+
+	/**
+	 * Heap of indices of the visibilities not retrieved yet
+	 */
+	private int[] heap = new int[0];
+	private int heapSize;
+
+	/**
+	 * Order visibilities with the same distance by the centroid of the receiving
+	 * wall?
+	 */
+	private boolean centroidOrder;
+
+	/**
+	 * Fill the queue with the visibilities of a wall.
+	 *
+	 * @param sending       Sending wall
+	 * @param eff           use effective distance, see
+	 *                      {@link Polygon3dVisibility#Polygon3dVisibility(Polygon3d, Polygon3d, boolean)}?
+	 * @param centroidOrder order visibilities with the same distance by the
+	 *                      centroid of the receiving wall?
+	 */
+	public void fill(Polygon3dWithVisibilities sending, boolean eff, boolean centroidOrder) {
+		int n = sending.visibilities.size();
+		if (distance.length < n) {
+			int length = Math.max(n, 2 * distance.length);
+			distance = new double[length];
+			area = new double[length];
+			cosAngle = new double[length];
+			receiving = new Polygon3d[length];
+			heap = new int[length];
+		}
+		this.centroidOrder = centroidOrder;
+
+		Point3d p1 = sending.getCentroid();
+		int i = 0;
+		for (Polygon3d receivingWall : sending.visibilities) {
+			Point3d p2 = receivingWall.getCentroid();
+			receiving[i] = receivingWall;
+			area[i] = receivingWall.getArea();
+			cosAngle[i] = Polygon3dVisibility.cosAngle(sending, receivingWall);
+			if (eff) {
+				distance[i] = p1.distance(p2) * Math.abs(cosAngle[i]);
+			} else {
+				distance[i] = p1.distance(p2);
+			}
+			heap[i] = i;
+			i++;
+		}
+		// no references to walls of earlier calls
+		Arrays.fill(receiving, n, receiving.length, null);
+
+		heapSize = n;
+		for (int k = heapSize / 2 - 1; k >= 0; k--) {
+			siftDown(k);
+		}
+	}
+
+	/**
+	 * Get the number of visibilities not retrieved yet.
+	 *
+	 * @return Number of visibilities
+	 */
+	public int remaining() {
+		return heapSize;
+	}
+
+	/**
+	 * Retrieve the visibility with the smallest distance.
+	 *
+	 * @return Index of the visibility in the arrays
+	 */
+	public int poll() {
+		int first = heap[0];
+		heapSize--;
+		heap[0] = heap[heapSize];
+		siftDown(0);
+		return first;
+	}
+
+	/**
+	 * Is visibility {@code i} before visibility {@code j}?
+	 */
+	private boolean before(int i, int j) {
+		if (distance[i] < distance[j]) {
+			return true;
+		}
+		if (distance[i] > distance[j]) {
+			return false;
+		}
+		if (centroidOrder) {
+			Point3d ci = receiving[i].getCentroid();
+			Point3d cj = receiving[j].getCentroid();
+			int compare = Double.compare(ci.x, cj.x);
+			if (compare == 0) {
+				compare = Double.compare(ci.y, cj.y);
+			}
+			if (compare == 0) {
+				compare = Double.compare(ci.z, cj.z);
+			}
+			if (compare != 0) {
+				return compare < 0;
+			}
+		}
+		// stable order as in the visibility list
+		return i < j;
+	}
+
+	private void siftDown(int k) {
+		int element = heap[k];
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], element)) {
+				break;
+			}
+			heap[k] = heap[child];
+			k = child;
+		}
+		heap[k] = element;
+	}
+
+}
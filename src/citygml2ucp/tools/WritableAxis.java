@@ -69,6 +69,17 @@ public class WritableAxis extends WritableDimension {
 	private double dv = 0.;
 
 	private boolean reduceLength = false;
+
+	/**
+	 * Values searched by {@link #getIndexOf(double)}, for periodic axes extended
+	 * by the neighbouring periodic values on both sides
+	 */
+	private double[] searchValues;
+
+	/**
+	 * Lower bounds of the cells around {@link #searchValues}
+	 */
+	private double[] lowerBounds;
 	
 	/**
 	 * Constructor for non-periodic axis with the name of the axis equal to the
@@ -159,6 +170,7 @@ public class WritableAxis extends WritableDimension {
 			}
 		}
 		this.values = values;
+		initSearch();
 	}
 
 	/**
@@ -220,6 +232,7 @@ public class WritableAxis extends WritableDimension {
 				values);
 		this.pbc = pbc;
 		isPBC = true;
+		initSearch();
 	}
 
 	/**
@@ -281,6 +294,7 @@ public class WritableAxis extends WritableDimension {
 				generate_valuefield(size, startvalue, dv));
 		isRegular = true;
 		this.dv = dv;
+		initSearch();
 	}
 
 	/**
@@ -346,6 +360,7 @@ public class WritableAxis extends WritableDimension {
 				startvalue, dv);
 		this.pbc = pbc;
 		isPBC = true;
+		initSearch();
 	}
 
 	/**
@@ -417,29 +432,100 @@ public class WritableAxis extends WritableDimension {
 	}
 
 	/**
-	 * Get the nearest index of a value for given monotonously growing array
-	 * using binary search.
+	 * Calculate the values searched by {@link #getIndexOf(double)} and the
+	 * bounds of their cells, has to be called again if the type of the axis
+	 * changes.
+	 */
+	private void initSearch() {
+		if (isPBC) {
+			searchValues = new double[values.length + 2];
+
+			// last entry in values as new entry for searchValues
+			searchValues[0] = values[values.length - 1] - pbc;
+
+			for (int i = 0; i < values.length; i++) {
+				searchValues[i + 1] = values[i];
+			}
+
+			// values.length + 2 - 1
+			searchValues[values.length + 1] = values[0] + pbc;
+		} else {
+			searchValues = values;
+		}
+
+		lowerBounds = new double[searchValues.length];
+		if (searchValues.length == 1 && !isRegular) {
+			// no grid spacing, the only index is found for every value
+			lowerBounds[0] = Double.NEGATIVE_INFINITY;
+			return;
+		}
+		for (int i = 0; i < searchValues.length; i++) {
+			lowerBounds[i] = searchValues[i] - getDValue(i, searchValues) / 2.;
+		}
+	}
+
+	/**
+	 * Get the nearest index of a value in {@link #searchValues}.
+	 * 
+	 * For a regular axis, the index is calculated directly and only corrected
+	 * for rounding errors, otherwise a binary search is used. Both give the same
+	 * result.
 	 * 
 	 * @param item
 	 *            The value to find the index for
-	 * @param values
-	 *            The grid values
-	 * @return Index of {@code values} nearest to {@code value}
+	 * @return Index of {@link #searchValues} nearest to {@code value}
 	 */
-	private int binarySearch(double item, double[] values) {
-		// it would never reach last index with code below
-		if (item >= values[values.length - 1]
-				- getDValue(values.length - 1, values) / 2.) {
-			return values.length - 1;
+	private int search(double item) {
+		if (isRegular && !Double.isNaN(item)) {
+			return searchRegular(item);
+		}
+		return searchBinary(item);
+	}
+
+	/**
+	 * Calculate the nearest index of a value in {@link #searchValues} of a
+	 * regular axis, see {@link #search(double)}.
+	 */
+	int searchRegular(double item) {
+		int last = lowerBounds.length - 1;
+		double guess = Math.floor((item - lowerBounds[0]) / dv);
+		int i;
+		if (guess < 0.) {
+			i = 0;
+		} else if (guess > last) {
+			i = last;
+		} else {
+			i = (int) guess;
+		}
+		while (i > 0 && lowerBounds[i] > item) {
+			i--;
+		}
+		while (i < last && lowerBounds[i + 1] <= item) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Find the nearest index of a value in {@link #searchValues} by a binary
+	 * search, see {@link #search(double)}.
+	 */
+	int searchBinary(double item) {
+		int last = lowerBounds.length - 1;
+
+		// it would never reach last index with code below, and not end for a
+		// single value
+		if (last == 0 || item >= lowerBounds[last]) {
+			return last;
 		}
 
 		int start = 0;
-		int end = values.length - 1;
+		int end = last;
 		int i2 = 0;
 
 		do {
 			i2 = (start + end) / 2;
-			if (values[i2] - getDValue(i2, values) / 2. > item) {
+			if (lowerBounds[i2] > item) {
 				end = i2;
 			} else {
 				start = i2;
@@ -449,6 +535,14 @@ public class WritableAxis extends WritableDimension {
 		return start;
 	}
 
+	/**
+	 * Lower bounds of the cells around the values searched by
+	 * {@link #searchRegular(double)} and {@link #searchBinary(double)}.
+	 */
+	double[] getLowerBounds() {
+		return lowerBounds;
+	}
+
 	/**
 	 * Find the index on the axis which corresponds to the axis value nearest to
 	 * the given value.
@@ -462,19 +556,7 @@ public class WritableAxis extends WritableDimension {
 	public int getIndexOf(double value) {
 		int returnValue;
 		if (isPBC) {
-			double[] expandedValues = new double[values.length + 2];
-
-			// last entry in values as new entry for expandedValues
-			expandedValues[0] = values[values.length - 1] - pbc;
-
-			for (int i = 0; i < values.length; i++) {
-				expandedValues[i + 1] = values[i];
-			}
-
-			// values.length + 2 - 1
-			expandedValues[values.length + 1] = values[0] + pbc;
-
-			int expReturn = binarySearch(value, expandedValues);
+			int expReturn = search(value);
 
 			if (expReturn == 0) {
 				returnValue = values.length - 1;
@@ -491,7 +573,7 @@ public class WritableAxis extends WritableDimension {
 						+ " out of range of axis " + this.axisname + ".");
 			}
 
-			returnValue = binarySearch(value, this.values);
+			returnValue = search(value);
 		}
 
 		return returnValue;
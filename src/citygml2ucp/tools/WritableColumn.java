@@ -0,0 +1,75 @@
+package citygml2ucp.tools;
+
+import java.io.IOException;
+import java.util.List;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFileWriter;
+
+/**
+ * A {@link StatisticsColumn} that can be written to a NetCDF file as float.
+ *
+ * The values are written in blocks directly from the backing array of the
+ * column, so no copy of the column is needed.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class WritableColumn implements NetCDFField {
+
+	private final StatisticsColumn column;
+
+	/**
+	 * Description and writing of the column
+	 */
+	private final FieldOutput output;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param column Column to write, the dimension must have its length
+	 */
+	public WritableColumn(String name, WritableDimension dim, String standard_name,
+			String long_name, String units, StatisticsColumn column) {
+		this.output = new FieldOutput(name, List.of(dim), standard_name, long_name, units, "", DataType.FLOAT);
+		this.column = column;
+	}
+
+	private Array getBlock(int[] origin, int[] shape) throws InvalidRangeException {
+		return Array.factory(DataType.FLOAT, new int[] { column.size() }, column.getData())
+				.sectionNoReduce(origin, shape, null);
+	}
+
+	@Override
+	public void resetDim() {
+		output.resetDim();
+	}
+
+	@Override
+	public void setOutputPart(int[] origin, int[] shape) {
+		output.setOutputPart(origin, shape);
+	}
+
+	@Override
+	public long getSavedSizeBytes() {
+		return 4L * column.size();
+	}
+
+	@Override
+	public DimensionsAndVariables addToNetCDFfile(NetcdfFileWriter ncfile) {
+		return output.addToNetCDFfile(ncfile);
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetcdfFileWriter ncfile) throws IOException, InvalidRangeException {
+		output.write(ncfile, this::getBlock);
+	}
+
+	@Override
+	public void writeToNetCDFfile(NetCDFBlockWriter writer) throws IOException, InvalidRangeException {
+		output.write(writer, this::getBlock);
+	}
+
+}
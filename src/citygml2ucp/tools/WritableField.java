@@ -1,166 +1,180 @@
 package citygml2ucp.tools;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
-import ucar.nc2.Attribute;
-import ucar.nc2.Dimension;
 import ucar.nc2.NetcdfFileWriter;
-import ucar.nc2.Variable;
 
 /**
  * A field that can be written to a NetCDF file.
  * 
  * During calculations, a double field is always used to be able to inherit from
- * {@code ArrayDouble}, just {@code Array} cannot be used (better idea?).
+ * {@code ArrayDouble}, just {@code Array} cannot be used (better idea?). Fields
+ * which do not need double precision can store their values in the output type,
+ * see {@link TypedWritableField}, and fields with few grid cells set only these,
+ * see {@link SparseWritableField}.
  * 
  * @author Sebastian Schubert
  * 
  */
-public class WritableField extends ArrayDouble implements NetCDFWritable {
+public class WritableField extends ArrayDouble implements GridField {
+
+	public final double missingValue = FieldOutput.MISSING_VALUE;
 
-	public final double missingValue=-999.;
-	
 	/**
-	 * Name of the field variable in the NetCDF file
+	 * Description and writing of the field
 	 */
-	protected final String name;
+	private final FieldOutput output;
+
 	/**
-	 * Standard name of the field in the NetCDF file
+	 * Strides of the dimensions in the backing array
 	 */
-	protected final String standard_name;
+	private final int[] strides;
+
+	public WritableField(String name, List<WritableDimension> dimlist,
+			String standard_name, String long_name, String units,
+			String grid_mapping, DataType outputType) {
+		this(new FieldOutput(name, dimlist, standard_name, long_name, units, grid_mapping, outputType));
+	}
+
+	private WritableField(FieldOutput output) {
+		super(output.getShape());
+		this.output = output;
+
+		int[] shape = output.getShape();
+		this.strides = new int[shape.length];
+		int stride = 1;
+		for (int i = shape.length - 1; i >= 0; i--) {
+			strides[i] = stride;
+			stride *= shape[i];
+		}
+	}
+
+	@Override
+	public double getMissingValue() {
+		return missingValue;
+	}
+
 	/**
-	 * More descriptive name of the field in the NetCDF file
+	 * Get the backing array for fast access without range checks.
+	 * 
+	 * The values are stored in row-major order, use the {@code offset} methods
+	 * for the position of an element.
+	 * 
+	 * @return Backing array
 	 */
-	protected final String long_name;
+	public double[] getData() {
+		return (double[]) getStorage();
+	}
+
 	/**
-	 * Unit of the field in NetCDF file
+	 * Position of an element of a field with 2 dimensions in the backing array,
+	 * no range checks.
 	 */
-	protected final String units;
+	public int offset(int i0, int i1) {
+		return i0 * strides[0] + i1;
+	}
+
 	/**
-	 * Information about the mapping of the field, e.g. "rotated_pole"
+	 * Position of an element of a field with 3 dimensions in the backing array,
+	 * no range checks.
 	 */
-	protected final String grid_mapping;
+	public int offset(int i0, int i1, int i2) {
+		return i0 * strides[0] + i1 * strides[1] + i2;
+	}
 
 	/**
-	 * Dimensions of the field
+	 * Position of an element of a field with 4 dimensions in the backing array,
+	 * no range checks.
 	 */
-	protected final List<WritableDimension> dimlist;
-	
+	public int offset(int i0, int i1, int i2, int i3) {
+		return i0 * strides[0] + i1 * strides[1] + i2 * strides[2] + i3;
+	}
+
 	/**
-	 * Output data type 
+	 * Position of an element of a field with 5 dimensions in the backing array,
+	 * no range checks.
 	 */
-	protected final DataType outputType;
-	
-	private boolean doOutputPart = false;
-	
-	private int[] originPart;
-	private int[] shapePart;
-	
-	protected final Map<NetcdfFileWriter,DimensionsAndVariables> dimensionsAndVariablesAddedToNetcdf;
-	
+	public int offset(int i0, int i1, int i2, int i3, int i4) {
+		return i0 * strides[0] + i1 * strides[1] + i2 * strides[2] + i3 * strides[3] + i4;
+	}
+
 	/**
-	 * Get the length of a list of dimensions.
+	 * {@inheritDoc}
 	 * 
-	 * @param diml
-	 *            List of dimensions
-	 * @return Array of lengths
+	 * This is the backing array, see {@link #getData()}.
 	 */
-	private static int[] getDimensions(List<WritableDimension> diml) {
-		int[] dimint = new int[diml.size()];
-		for (int i = 0; i < dimint.length; i++) {
-			dimint[i] = diml.get(i).getLength();
+	@Override
+	public double[] getCellData(int lat, int lon) {
+		return getData();
+	}
+
+	@Override
+	public int getCellOffset(int lat, int lon) {
+		if (strides.length < 2) {
+			throw new IllegalStateException(output.getName() + " has no latitude and longitude dimensions");
 		}
-		return dimint;
+		return lat * strides[strides.length - 2] + lon;
 	}
 
-	public WritableField(String name, List<WritableDimension> dimlist,
-			String standard_name, String long_name, String units,
-			String grid_mapping, DataType outputType) {
-		super(getDimensions(dimlist));
-		this.name = name;
-		this.standard_name = standard_name;
-		this.long_name = long_name;
-		this.units = units;
-		this.grid_mapping = grid_mapping;
-		this.dimlist = new ArrayList<>();
-		this.dimlist.addAll(dimlist);
-		this.outputType = outputType;
-		
-		this.dimensionsAndVariablesAddedToNetcdf = new HashMap<>();
+	@Override
+	public int getCellStride() {
+		if (strides.length < 3) {
+			throw new IllegalStateException(output.getName() + " has one value per grid cell, no stride");
+		}
+		return strides[strides.length - 3];
 	}
 
+	@Override
 	public void resetDim() {
-		int[] origin = new int[dimlist.size()];
-		int[] shape = new int[dimlist.size()];
-		for (int i = 0; i < origin.length; i++) {
-			origin[i] = 0;
-			shape[i] = dimlist.get(i).getLength();
-		}
-		setOutputPart(origin, shape);
+		output.resetDim();
 	}
 	
+	@Override
 	public void setOutputPart(int[] origin, int[] shape) {
-		doOutputPart = true;
-		this.originPart = origin;
-		this.shapePart = shape;
+		output.setOutputPart(origin, shape);
 	}
 	
 	public int[] getOriginPart() {
-		return originPart;
+		return output.getOriginPart();
 	}
 
 	public int[] getShapePart() {
-		return shapePart;
+		return output.getShapePart();
 	}
 
-	/**
-	 * @return Size of the field when saved to NetCDF
-	 */
+	@Override
 	public long getSavedSizeBytes() {
-		return this.getSizeBytes();
+		return output.getSavedSizeBytes();
 	}
 	
 	@Override
 	public DimensionsAndVariables addToNetCDFfile(NetcdfFileWriter ncfile) {
-		DimensionsAndVariables dimensionsAndVariables = this.dimensionsAndVariablesAddedToNetcdf.get(ncfile);
-		if (Objects.isNull(dimensionsAndVariables)) {
-			List<Dimension> ncdims = new ArrayList<>();
-			this.dimlist.forEach( (dim) -> ncdims.addAll(dim.addToNetCDFfile(ncfile).dimension) );
-			
-			Variable var = ncfile.addVariable(null, this.name, this.outputType, ncdims);
-			ncfile.addVariableAttribute(var, new Attribute("standard_name",
-					standard_name));
-			ncfile.addVariableAttribute(var, new Attribute("long_name", long_name));
-			ncfile.addVariableAttribute(var, new Attribute("_FillValue", missingValue));
-			if (!units.isEmpty()) {
-				ncfile.addVariableAttribute(var, new Attribute("units", units));
-			}
-			if (!grid_mapping.isEmpty()) {
-				ncfile.addVariableAttribute(var, new Attribute("grid_mapping",
-						grid_mapping));
-			}
-			dimensionsAndVariables = new DimensionsAndVariables(ncdims, Arrays.asList(var));
-			this.dimensionsAndVariablesAddedToNetcdf.put(ncfile, dimensionsAndVariables);
-		}
-		return dimensionsAndVariables;
+		return output.addToNetCDFfile(ncfile);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The field is written in blocks of rows, which are converted to the output
+	 * type one by one.
+	 */
 	@Override
 	public void writeToNetCDFfile(NetcdfFileWriter ncfile) throws IOException, InvalidRangeException {
-		DimensionsAndVariables dimensionsAndVariables = this.dimensionsAndVariablesAddedToNetcdf.get(ncfile);
-		if (doOutputPart) {
-			ncfile.write(dimensionsAndVariables.variable.get(0), this.sectionNoReduce(originPart, shapePart, null));
-		} else {
-			ncfile.write(dimensionsAndVariables.variable.get(0), this);
-		}
+		output.write(ncfile, (origin, shape) -> sectionNoReduce(origin, shape, null));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The field is written in blocks of rows, which are converted to the output
+	 * type in parallel.
+	 */
+	@Override
+	public void writeToNetCDFfile(NetCDFBlockWriter writer) throws IOException, InvalidRangeException {
+		output.write(writer, (origin, shape) -> sectionNoReduce(origin, shape, null));
 	}
 }
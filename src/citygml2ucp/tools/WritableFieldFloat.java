@@ -3,14 +3,15 @@ package citygml2ucp.tools;
 import java.util.List;
 
 import ucar.ma2.DataType;
+import ucar.ma2.Index;
 
 /**
- * A field that can be written to a NetCDF file as float.
+ * A field that can be written to a NetCDF file as float, stored as float.
  * 
  * @author Sebastian Schubert
  * 
  */
-public class WritableFieldFloat extends WritableField {
+public class WritableFieldFloat extends TypedWritableField {
 
 	public WritableFieldFloat(String name, List<WritableDimension> dimlist,
 			String standard_name, String long_name, String units,
@@ -19,9 +20,22 @@ public class WritableFieldFloat extends WritableField {
 				DataType.FLOAT);
 	}
 
-	@Override
-	public long getSavedSizeBytes() {
-		return this.getSizeBytes()/2;
+	/**
+	 * Get the backing array for fast access without range checks, see
+	 * {@link WritableField#getData()}.
+	 * 
+	 * @return Backing array
+	 */
+	public float[] getFloatData() {
+		return (float[]) storage.getStorage();
 	}
-	
+
+	public float getFloat(Index i) {
+		return storage.getFloat(i);
+	}
+
+	public void setFloat(Index i, float value) {
+		storage.setFloat(i, value);
+	}
+
 }
@@ -3,14 +3,15 @@ package citygml2ucp.tools;
 import java.util.List;
 
 import ucar.ma2.DataType;
+import ucar.ma2.Index;
 
 /**
- * A field that can be written to a NetCDF file as integer.
+ * A field that can be written to a NetCDF file as integer, stored as integer.
  * 
  * @author Sebastian Schubert
  * 
  */
-public class WritableFieldInt extends WritableField {
+public class WritableFieldInt extends TypedWritableField {
 
 	public WritableFieldInt(String name, List<WritableDimension> dimlist,
 			String standard_name, String long_name, String units,
@@ -19,9 +20,22 @@ public class WritableFieldInt extends WritableField {
 				DataType.INT);
 	}
 
-	@Override
-	public long getSavedSizeBytes() {
-		return this.getSizeBytes()/2;
+	/**
+	 * Get the backing array for fast access without range checks, see
+	 * {@link WritableField#getData()}.
+	 * 
+	 * @return Backing array
+	 */
+	public int[] getIntData() {
+		return (int[]) storage.getStorage();
 	}
-	
+
+	public int getInt(Index i) {
+		return storage.getInt(i);
+	}
+
+	public void setInt(Index i, int value) {
+		storage.setInt(i, value);
+	}
+
 }
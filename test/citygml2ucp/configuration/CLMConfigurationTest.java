@@ -0,0 +1,36 @@
+package citygml2ucp.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * True coordinates of {@link CLMConfiguration} calculated in the background and
+ * on demand.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class CLMConfigurationTest {
+
+	@Test
+	public void sameTrueLatLonInBackground() throws Exception {
+		CLMConfiguration expected = new CLMConfiguration(32.5, -170., 0.008, 0.008, -7.972, -1.252, 31, 19);
+
+		CLMConfiguration actual = new CLMConfiguration(32.5, -170., 0.008, 0.008, -7.972, -1.252, 31, 19);
+		ExecutorService exec = Executors.newFixedThreadPool(3);
+		actual.startTrueLatLon(exec);
+		exec.shutdown();
+
+		for (int j = 0; j < expected.getJe_tot(); j++) {
+			for (int i = 0; i < expected.getIe_tot(); i++) {
+				assertEquals(expected.getLat(j, i), actual.getLat(j, i), "lat at " + j + ", " + i);
+				assertEquals(expected.getLon(j, i), actual.getLon(j, i), "lon at " + j + ", " + i);
+			}
+		}
+	}
+
+}
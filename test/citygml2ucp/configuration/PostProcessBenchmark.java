@@ -0,0 +1,70 @@
+package citygml2ucp.configuration;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Post-processing of the urban fields by
+ * {@link UrbanCLMConfiguration#postProcess(boolean, double, int)} compared to
+ * the sequential chain of steps.
+ *
+ * The fields are created and filled again before every invocation, because
+ * the post-processing works in place. {@code nThreads} does not apply to the
+ * sequential chain.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostProcessBenchmark {
+
+	/**
+	 * Number of grid cells in each direction
+	 */
+	@Param({ "100", "300" })
+	int n;
+
+	@Param({ "false", "true" })
+	boolean sparse;
+
+	@Param({ "1", "4" })
+	int nThreads;
+
+	private UrbanCLMConfiguration uclm;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		uclm = UrbanCLMConfigurationTest.create(n, n, sparse);
+		UrbanCLMConfigurationTest.fill(uclm, 1);
+	}
+
+	@Benchmark
+	public UrbanCLMConfiguration sequential() {
+		UrbanCLMConfigurationTest.sequential(uclm, true, 0.3);
+		return uclm;
+	}
+
+	@Benchmark
+	public UrbanCLMConfiguration postProcess() throws Exception {
+		uclm.postProcess(true, 0.3, nThreads);
+		return uclm;
+	}
+
+}
@@ -0,0 +1,540 @@
+package citygml2ucp.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import citygml2ucp.tools.IndexedField;
+import citygml2ucp.tools.SparseWritableField;
+import ucar.ma2.Array;
+import ucar.ma2.Index;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+
+/**
+ * Equivalence of {@link UrbanCLMConfiguration#postProcess(boolean, double, int)}
+ * with the sequential chain of post-processing steps and with the original
+ * loops over all grid cells, and of dense and sparse urban fields.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class UrbanCLMConfigurationTest {
+
+	private static final int IE_TOT = 23, JE_TOT = 17;
+
+	/**
+	 * Variables of the urban fraction and the urban fields in the output
+	 */
+	private static final String[] URBAN_VARIABLES = { "FR_URB", "FR_UCLASS", "FR_BUILD", "FR_UDIR", "W_STREET",
+			"W_BUILD", "FR_ROOF_AD", "FR_ROOF" };
+
+	@TempDir
+	Path tempDir;
+
+	static UrbanCLMConfiguration create(int ie_tot, int je_tot, boolean sparse) {
+		return new UrbanCLMConfiguration(40., -170., 0.01, 0.01, -0.1, -0.1, ie_tot, je_tot, 2,
+				new double[] { -45., 0., 45., 90. }, new int[] { 3, 5 }, new double[] { 0., 3., 7., 10., 13. },
+				sparse);
+	}
+
+	/**
+	 * Add the same random sums as after the visibility calculation, about half
+	 * of the cells without buildings. Most cells are valid, a few have an urban
+	 * fraction below the limit or more buildings than urban area.
+	 */
+	static void fill(UrbanCLMConfiguration uclm, long seed) {
+		fill(uclm, new Sums() {
+			public void setUrbanFrac(int lat, int lon, double value) {
+				uclm.setUrbanFrac(lat, lon, value);
+			}
+
+			public void incBuildingFrac(int uc, int lat, int lon, double incr) {
+				uclm.incBuildingFrac(uc, lat, lon, incr);
+			}
+
+			public void incStreetWidth(int uc, int dir, int lat, int lon, double value) {
+				uclm.incStreetWidth(uc, dir, lat, lon, value);
+			}
+
+			public void incStreetSurfaceSum(int uc, int dir, int lat, int lon, double value) {
+				uclm.incStreetSurfaceSum(uc, dir, lat, lon, value);
+			}
+
+			public void incBuildProbAdjusted(int uc, int dir, int lat, int lon, double value) {
+				uclm.incBuildProbAdjusted(uc, dir, lat, lon, value);
+			}
+
+			public void incBuildProb(int uc, int dir, int lev, int lat, int lon, double value) {
+				uclm.incBuildProb(uc, dir, lev, lat, lon, value);
+			}
+		}, seed);
+	}
+
+	/**
+	 * Receiver of the sums of {@link #fill(UrbanCLMConfiguration, long)}
+	 */
+	private interface Sums {
+		void setUrbanFrac(int lat, int lon, double value);
+
+		void incBuildingFrac(int uc, int lat, int lon, double incr);
+
+		void incStreetWidth(int uc, int dir, int lat, int lon, double value);
+
+		void incStreetSurfaceSum(int uc, int dir, int lat, int lon, double value);
+
+		void incBuildProbAdjusted(int uc, int dir, int lat, int lon, double value);
+
+		void incBuildProb(int uc, int dir, int lev, int lat, int lon, double value);
+	}
+
+	/**
+	 * Add the random sums of {@link #fill(UrbanCLMConfiguration, long)} to
+	 * {@code sums}, the grid is the one of {@code uclm}.
+	 */
+	private static void fill(UrbanCLMConfiguration uclm, Sums sums, long seed) {
+		Random random = new Random(seed);
+		for (int lat = 0; lat < uclm.getJe_tot(); lat++) {
+			for (int lon = 0; lon < uclm.getIe_tot(); lon++) {
+				double frUrb = random.nextDouble();
+				sums.setUrbanFrac(lat, lon, frUrb);
+				if (random.nextBoolean()) {
+					continue;
+				}
+				for (int uc = 0; uc < uclm.getNuclasses(); uc++) {
+					// some classes without buildings or with tiny fractions
+					if (random.nextInt(4) == 0) {
+						continue;
+					}
+					sums.incBuildingFrac(uc, lat, lon, 0.6 * frUrb * uclm.getArea(lat) * random.nextDouble());
+					for (int dir = 0; dir < uclm.getNstreedir(); dir++) {
+						if (random.nextInt(3) == 0) {
+							continue;
+						}
+						double surface = 1000. * random.nextDouble();
+						sums.incStreetWidth(uc, dir, lat, lon, 30. * random.nextDouble() * surface);
+						sums.incStreetSurfaceSum(uc, dir, lat, lon, surface);
+						sums.incBuildProbAdjusted(uc, dir, lat, lon, 10. * random.nextDouble());
+						for (int lev = 0; lev < uclm.getKe_urban(uc); lev++) {
+							sums.incBuildProb(uc, dir, lev, lat, lon, 100. * random.nextDouble());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	static void sequential(UrbanCLMConfiguration uclm, boolean consistentOutput, double frUrbLimit) {
+		uclm.fakeUrbanClassFrac();
+		uclm.normBuildingFrac();
+		uclm.normBuildProbAndCalcStreetFraction();
+		uclm.normStreetWidth();
+		uclm.calculateBuildingWidth();
+		if (consistentOutput) {
+			uclm.defineMissingData(frUrbLimit);
+		}
+	}
+
+	/**
+	 * Compare all values of a field bitwise.
+	 */
+	private static void assertSameField(String name, IndexedField expected, IndexedField actual) {
+		Index expectedIndex = expected.getIndex();
+		Index actualIndex = actual.getIndex();
+		int[] shape = expectedIndex.getShape();
+		int[] counter = new int[shape.length];
+		long size = 1;
+		for (int length : shape) {
+			size *= length;
+		}
+		for (long i = 0; i < size; i++) {
+			expectedIndex.set(counter);
+			actualIndex.set(counter);
+			assertEquals(expected.get(expectedIndex), actual.get(actualIndex),
+					name + " at " + Arrays.toString(counter));
+			for (int k = shape.length - 1; k >= 0; k--) {
+				if (++counter[k] < shape[k]) {
+					break;
+				}
+				counter[k] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Post-processing of the urban fields as implemented before the fused pass,
+	 * with the original loops over all grid cells on plain arrays.
+	 */
+	private static class Baseline implements Sums {
+		final UrbanCLMConfiguration uclm;
+		final int nuc, ndir, kemax, je, ie;
+		final double[][] fr_urb;
+		final double[][][] fr_uclass, fr_build;
+		final double[][][][] fr_udir, w_street, w_build, fr_roof_adj, streetSurfaceSum;
+		final double[][][][][] fr_roof;
+
+		/**
+		 * @param uclm Configuration with the grid and the urban dimensions
+		 */
+		Baseline(UrbanCLMConfiguration uclm) {
+			this.uclm = uclm;
+			nuc = uclm.getNuclasses();
+			ndir = uclm.getNstreedir();
+			kemax = uclm.getKe_urbanMax();
+			je = uclm.getJe_tot();
+			ie = uclm.getIe_tot();
+			fr_urb = new double[je][ie];
+			fr_uclass = new double[nuc][je][ie];
+			fr_build = new double[nuc][je][ie];
+			fr_udir = new double[nuc][ndir][je][ie];
+			w_street = new double[nuc][ndir][je][ie];
+			w_build = new double[nuc][ndir][je][ie];
+			fr_roof_adj = new double[nuc][ndir][je][ie];
+			streetSurfaceSum = new double[nuc][ndir][je][ie];
+			fr_roof = new double[nuc][ndir][kemax][je][ie];
+		}
+
+		public void setUrbanFrac(int lat, int lon, double value) {
+			fr_urb[lat][lon] = value;
+		}
+
+		public void incBuildingFrac(int uc, int lat, int lon, double incr) {
+			fr_build[uc][lat][lon] += incr;
+		}
+
+		public void incStreetWidth(int uc, int dir, int lat, int lon, double value) {
+			w_street[uc][dir][lat][lon] += value;
+		}
+
+		public void incStreetSurfaceSum(int uc, int dir, int lat, int lon, double value) {
+			streetSurfaceSum[uc][dir][lat][lon] += value;
+		}
+
+		public void incBuildProbAdjusted(int uc, int dir, int lat, int lon, double value) {
+			fr_roof_adj[uc][dir][lat][lon] += value;
+		}
+
+		public void incBuildProb(int uc, int dir, int lev, int lat, int lon, double value) {
+			fr_roof[uc][dir][lev][lat][lon] += value;
+		}
+
+		void fakeUrbanClassFrac() {
+			for (int uc = 0; uc < nuc; uc++) {
+				for (int lat = 0; lat < je; lat++) {
+					for (int lon = 0; lon < ie; lon++) {
+						fr_uclass[uc][lat][lon] = 1.;
+					}
+				}
+			}
+		}
+
+		void normBuildingFrac() {
+			for (int uc = 0; uc < nuc; uc++) {
+				for (int lat = 0; lat < je; lat++) {
+					for (int lon = 0; lon < ie; lon++) {
+						fr_build[uc][lat][lon] = fr_build[uc][lat][lon] / uclm.getArea(lat);
+					}
+				}
+			}
+		}
+
+		void normStreetWidth() {
+			for (int uc = 0; uc < nuc; uc++) {
+				for (int dir = 0; dir < ndir; dir++) {
+					for (int lat = 0; lat < je; lat++) {
+						for (int lon = 0; lon < ie; lon++) {
+							if (streetSurfaceSum[uc][dir][lat][lon] > 0) {
+								w_street[uc][dir][lat][lon] = w_street[uc][dir][lat][lon]
+										/ streetSurfaceSum[uc][dir][lat][lon];
+							}
+						}
+					}
+				}
+			}
+		}
+
+		void calculateBuildingWidth() {
+			for (int uc = 0; uc < nuc; uc++) {
+				for (int dir = 0; dir < ndir; dir++) {
+					for (int lat = 0; lat < je; lat++) {
+						for (int lon = 0; lon < ie; lon++) {
+							double bfrac = fr_build[uc][lat][lon];
+							if (bfrac > 1.e-12) {
+								w_build[uc][dir][lat][lon] = bfrac
+										/ (fr_urb[lat][lon] * fr_uclass[uc][lat][lon] - bfrac)
+										* w_street[uc][dir][lat][lon];
+							} else {
+								w_build[uc][dir][lat][lon] = 0.;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		void normBuildProbAndCalcStreetFraction() {
+			for (int uc = 0; uc < nuc; uc++) {
+				int ke = uclm.getKe_urban(uc);
+				for (int lat = 0; lat < je; lat++) {
+					for (int lon = 0; lon < ie; lon++) {
+						double sum = 0.;
+						double[] sumStreet = new double[ndir];
+						for (int sd = 0; sd < ndir; sd++) {
+							sumStreet[sd] = 0.;
+							for (int lev = 0; lev < ke; lev++) {
+								sumStreet[sd] += fr_roof[uc][sd][lev][lat][lon];
+							}
+							sum += sumStreet[sd];
+						}
+						if (sum > 1e-14) {
+							sum = 1. / sum;
+							for (int sd = 0; sd < ndir; sd++) {
+								if (sumStreet[sd] > 1.e-12) {
+									for (int lev = 0; lev < ke; lev++) {
+										fr_roof[uc][sd][lev][lat][lon] = fr_roof[uc][sd][lev][lat][lon]
+												/ sumStreet[sd];
+									}
+									fr_roof_adj[uc][sd][lat][lon] = fr_roof_adj[uc][sd][lat][lon] / sumStreet[sd];
+								} else {
+									for (int lev = 0; lev < ke; lev++) {
+										fr_roof[uc][sd][lev][lat][lon] = 0.;
+									}
+								}
+								for (int lev = ke; lev < kemax; lev++) {
+									fr_roof[uc][sd][lev][lat][lon] = 0.;
+								}
+								fr_udir[uc][sd][lat][lon] = sum * sumStreet[sd];
+							}
+						} else {
+							for (int sd = 0; sd < ndir; sd++) {
+								for (int lev = 0; lev < kemax; lev++) {
+									fr_roof[uc][sd][lev][lat][lon] = 0.;
+								}
+								fr_udir[uc][sd][lat][lon] = 0.;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		void defineMissingData(double frUrbLimit) {
+			for (int uc = 0; uc < nuc; uc++) {
+				for (int lat = 0; lat < je; lat++) {
+					for (int lon = 0; lon < ie; lon++) {
+						boolean setUndef = true;
+						for (int id = 0; id < ndir; id++) {
+							if (fr_udir[uc][id][lat][lon] > 1.e-10) {
+								setUndef = false;
+								break;
+							}
+						}
+						for (int id = 0; id < ndir; id++) {
+							if (w_street[uc][id][lat][lon] < 0.) {
+								setUndef = true;
+								break;
+							}
+							if (w_build[uc][id][lat][lon] < 0.) {
+								setUndef = true;
+								break;
+							}
+						}
+						setUndef = (fr_build[uc][lat][lon] < 1.e-12) || (fr_build[uc][lat][lon] > 1.)
+								|| (fr_urb[lat][lon] < frUrbLimit) || setUndef;
+						if (setUndef) {
+							for (int sd = 0; sd < ndir; sd++) {
+								w_build[uc][sd][lat][lon] = uclm.w_build.getMissingValue();
+								fr_udir[uc][sd][lat][lon] = uclm.fr_udir.getMissingValue();
+								w_street[uc][sd][lat][lon] = uclm.fr_udir.getMissingValue();
+								fr_uclass[uc][lat][lon] = uclm.fr_uclass.getMissingValue();
+								for (int h = 0; h < kemax; h++) {
+									fr_roof[uc][sd][h][lat][lon] = uclm.fr_roof.getMissingValue();
+								}
+							}
+							fr_urb[lat][lon] = uclm.fr_urb.missingValue;
+							fr_build[uc][lat][lon] = uclm.fr_build.getMissingValue();
+						}
+					}
+				}
+			}
+		}
+
+		void postProcess(boolean consistentOutput, double frUrbLimit) {
+			fakeUrbanClassFrac();
+			normBuildingFrac();
+			normBuildProbAndCalcStreetFraction();
+			normStreetWidth();
+			calculateBuildingWidth();
+			if (consistentOutput) {
+				defineMissingData(frUrbLimit);
+			}
+		}
+	}
+
+	/**
+	 * Compare every value of the urban fields and the urban fraction with the
+	 * baseline.
+	 */
+	private static void assertSameAsBaseline(Baseline expected, UrbanCLMConfiguration actual, String name) {
+		for (int lat = 0; lat < expected.je; lat++) {
+			for (int lon = 0; lon < expected.ie; lon++) {
+				String at = name + " at " + lat + ", " + lon;
+				assertEquals(expected.fr_urb[lat][lon], actual.fr_urb.get(actual.fr_urb.getIndex().set(lat, lon)),
+						"fr_urb " + at);
+				for (int uc = 0; uc < expected.nuc; uc++) {
+					Index ucIndex = actual.fr_build.getIndex().set(uc, lat, lon);
+					assertEquals(expected.fr_uclass[uc][lat][lon], actual.fr_uclass.get(ucIndex),
+							"fr_uclass " + uc + " " + at);
+					assertEquals(expected.fr_build[uc][lat][lon], actual.fr_build.get(ucIndex),
+							"fr_build " + uc + " " + at);
+					for (int dir = 0; dir < expected.ndir; dir++) {
+						String dirAt = uc + ", " + dir + " " + at;
+						Index dirIndex = actual.fr_udir.getIndex().set(uc, dir, lat, lon);
+						assertEquals(expected.fr_udir[uc][dir][lat][lon], actual.fr_udir.get(dirIndex),
+								"fr_udir " + dirAt);
+						assertEquals(expected.w_street[uc][dir][lat][lon], actual.w_street.get(dirIndex),
+								"w_street " + dirAt);
+						assertEquals(expected.w_build[uc][dir][lat][lon], actual.w_build.get(dirIndex),
+								"w_build " + dirAt);
+						assertEquals(expected.fr_roof_adj[uc][dir][lat][lon], actual.fr_roof_adj.get(dirIndex),
+								"fr_roof_adj " + dirAt);
+						for (int lev = 0; lev < expected.kemax; lev++) {
+							Index roofIndex = actual.fr_roof.getIndex().set(uc, dir, lev, lat, lon);
+							assertEquals(expected.fr_roof[uc][dir][lev][lat][lon], actual.fr_roof.get(roofIndex),
+									"fr_roof " + lev + ", " + dirAt);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the configuration to a NetCDF file in the temporary folder.
+	 */
+	private Path write(UrbanCLMConfiguration uclm, String name) throws Exception {
+		Path file = tempDir.resolve(name);
+		NetcdfFileWriter ncfile = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.toString());
+		uclm.toNetCDFfile(ncfile);
+		ncfile.close();
+		return file;
+	}
+
+	/**
+	 * Compare all values of the urban variables of two NetCDF files.
+	 */
+	private static void assertSameOutput(Path expected, Path actual, String name) throws Exception {
+		try (NetcdfFile expectedFile = NetcdfFile.open(expected.toString());
+				NetcdfFile actualFile = NetcdfFile.open(actual.toString())) {
+			for (String variable : URBAN_VARIABLES) {
+				Array expectedValues = expectedFile.findVariable(variable).read();
+				Array actualValues = actualFile.findVariable(variable).read();
+				assertArrayEquals(expectedValues.getShape(), actualValues.getShape(), variable + " " + name);
+				for (int i = 0; i < expectedValues.getSize(); i++) {
+					assertEquals(expectedValues.getDouble(i), actualValues.getDouble(i),
+							variable + " " + name + " at " + i);
+				}
+			}
+		}
+	}
+
+	private static void assertSameResult(boolean sparse, boolean consistentOutput) throws Exception {
+		double frUrbLimit = 0.3;
+		UrbanCLMConfiguration expected = create(IE_TOT, JE_TOT, sparse);
+		fill(expected, 7);
+		sequential(expected, consistentOutput, frUrbLimit);
+
+		UrbanCLMConfiguration actual = create(IE_TOT, JE_TOT, sparse);
+		fill(actual, 7);
+		actual.postProcess(consistentOutput, frUrbLimit, 4);
+
+		assertSameField("fr_urb", expected.fr_urb, actual.fr_urb);
+		assertSameField("fr_uclass", expected.fr_uclass, actual.fr_uclass);
+		assertSameField("fr_build", expected.fr_build, actual.fr_build);
+		assertSameField("fr_udir", expected.fr_udir, actual.fr_udir);
+		assertSameField("w_street", expected.w_street, actual.w_street);
+		assertSameField("w_build", expected.w_build, actual.w_build);
+		assertSameField("fr_roof", expected.fr_roof, actual.fr_roof);
+		assertSameField("fr_roof_adj", expected.fr_roof_adj, actual.fr_roof_adj);
+	}
+
+	@Test
+	public void postProcessDense() throws Exception {
+		assertSameResult(false, false);
+	}
+
+	@Test
+	public void postProcessDenseConsistentOutput() throws Exception {
+		assertSameResult(false, true);
+	}
+
+	@Test
+	public void postProcessSparse() throws Exception {
+		assertSameResult(true, false);
+	}
+
+	@Test
+	public void postProcessSparseConsistentOutput() throws Exception {
+		assertSameResult(true, true);
+	}
+
+	@Test
+	public void postProcessMatchesBaseline() throws Exception {
+		double frUrbLimit = 0.3;
+		for (boolean sparse : new boolean[] { false, true }) {
+			for (boolean consistentOutput : new boolean[] { false, true }) {
+				UrbanCLMConfiguration actual = create(IE_TOT, JE_TOT, sparse);
+				fill(actual, 11);
+				actual.postProcess(consistentOutput, frUrbLimit, 4);
+
+				Baseline expected = new Baseline(actual);
+				fill(actual, expected, 11);
+				expected.postProcess(consistentOutput, frUrbLimit);
+
+				assertSameAsBaseline(expected, actual, "sparse = " + sparse + ", consistent = " + consistentOutput);
+			}
+		}
+	}
+
+	/**
+	 * Sparse fields have to give the same values as dense fields also in the
+	 * cells without buildings, where they are defined by the default values of
+	 * the sparse fields, and in the output.
+	 */
+	@Test
+	public void sparseSameAsDense() throws Exception {
+		double frUrbLimit = 0.3;
+		for (boolean consistentOutput : new boolean[] { false, true }) {
+			UrbanCLMConfiguration dense = create(IE_TOT, JE_TOT, false);
+			fill(dense, 13);
+			dense.postProcess(consistentOutput, frUrbLimit, 4);
+
+			UrbanCLMConfiguration sparse = create(IE_TOT, JE_TOT, true);
+			fill(sparse, 13);
+			sparse.postProcess(consistentOutput, frUrbLimit, 4);
+			// the sums include cells without buildings
+			assertTrue(((SparseWritableField) sparse.fr_build).getCells().length < IE_TOT * JE_TOT);
+
+			String name = "consistent = " + consistentOutput;
+			assertSameField("fr_urb " + name, dense.fr_urb, sparse.fr_urb);
+			assertSameField("fr_uclass " + name, dense.fr_uclass, sparse.fr_uclass);
+			assertSameField("fr_build " + name, dense.fr_build, sparse.fr_build);
+			assertSameField("fr_udir " + name, dense.fr_udir, sparse.fr_udir);
+			assertSameField("w_street " + name, dense.w_street, sparse.w_street);
+			assertSameField("w_build " + name, dense.w_build, sparse.w_build);
+			assertSameField("fr_roof " + name, dense.fr_roof, sparse.fr_roof);
+			assertSameField("fr_roof_adj " + name, dense.fr_roof_adj, sparse.fr_roof_adj);
+
+			assertSameOutput(write(dense, "dense-" + consistentOutput + ".nc"),
+					write(sparse, "sparse-" + consistentOutput + ".nc"), name);
+		}
+	}
+
+}
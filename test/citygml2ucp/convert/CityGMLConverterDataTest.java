@@ -0,0 +1,67 @@
+package citygml2ucp.convert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import citygml2ucp.tools.Polygon3dVisibility;
+import citygml2ucp.tools.Polygon3dWithVisibilities;
+import citygml2ucp.tools.TestWalls;
+import citygml2ucp.tools.VisibilityQueue;
+
+/**
+ * Equivalence of the street width kernel
+ * {@link CityGMLConverterData#meanDistance} with the sorted list of
+ * {@link Polygon3dVisibility}.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class CityGMLConverterDataTest {
+
+	/**
+	 * Mean distance until the area of the sending wall is reached from the
+	 * sorted visibility list, as calculated before the queue was introduced.
+	 */
+	private static double listStreetWidth(Polygon3dWithVisibilities sending, boolean eff, double mindist) {
+		List<Polygon3dVisibility> visibilityList = sending.generateVisibilityList(eff);
+		Collections.sort(visibilityList);
+
+		double sumArea = 0;
+		double distance = 0;
+		int ind = 0;
+		while (ind < visibilityList.size() - 1 && visibilityList.get(ind).distance < mindist) {
+			ind++;
+		}
+		do {
+			double weight = visibilityList.get(ind).receiving.getArea();
+			if (eff) {
+				weight *= Math.abs(visibilityList.get(ind).getCosAngle());
+			}
+			distance += visibilityList.get(ind).distance * weight;
+			sumArea += weight;
+			ind += 1;
+		} while (sumArea < sending.getArea() && ind < visibilityList.size());
+		return distance / sumArea;
+	}
+
+	@Test
+	public void sameStreetWidth() {
+		// reused queue as in the kernel, filled with shrinking and growing lists
+		VisibilityQueue queue = new VisibilityQueue();
+		for (boolean eff : new boolean[] { false, true }) {
+			for (double mindist : new double[] { 0., 20., 1.e6 }) {
+				for (int n : new int[] { 1000, 1, 10, 10000, 3 }) {
+					Polygon3dWithVisibilities sending = TestWalls.sendingWithVisibilities(n, 42 + n);
+					assertEquals(listStreetWidth(sending, eff, mindist),
+							CityGMLConverterData.meanDistance(queue, sending, eff, mindist, false, null, null, null),
+							"n = " + n + ", eff = " + eff + ", mindist = " + mindist);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package citygml2ucp.convert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.proj4.PJ;
+
+import citygml2ucp.configuration.UrbanCLMConfiguration;
+import citygml2ucp.tools.GMLInput;
+import citygml2ucp.tools.SimpleBuilding;
+import citygml2ucp.tools.StaxBuildingReader;
+import citygml2ucp.tools.WritableRotatedPole;
+import ucar.unidata.geoloc.ProjectionPoint;
+
+/**
+ * Run log and buildings of the sample file {@code buildings.gml} with and
+ * without the geometry cache.
+ *
+ * The grid only covers building b1 of the sample, all other buildings are
+ * outside of domain and halo, so their diagnostics must not be logged, no
+ * matter whether the file is read, read and cached, or loaded from the cache.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class CityGMLGeometryCacheTest {
+
+	private static final String SAMPLE = "buildings.gml";
+
+	/**
+	 * Pole of the rotated grid
+	 */
+	private static final double POLLAT = 32.5, POLLON = -170.;
+
+	/**
+	 * Grid spacing in degrees, about 11 m
+	 */
+	private static final double DLATLON = 0.0001;
+
+	@TempDir
+	Path tempDir;
+
+	private static PJ sourcePJ() throws Exception {
+		return new PJ("+init=epsg:3068");
+	}
+
+	private static PJ targetPJ() throws Exception {
+		return new PJ("+init=epsg:4326 +latlong");
+	}
+
+	/**
+	 * Rotated coordinates of the centre of b1 as calculated by the city data.
+	 */
+	private static ProjectionPoint b1Location() throws Exception {
+		double[] xyz = { 25006., 21006., 34.5 };
+		sourcePJ().transform(targetPJ(), 3, xyz, 0, 1);
+		return new WritableRotatedPole(POLLAT, POLLON).latLonToProj(xyz[1], xyz[0]);
+	}
+
+	/**
+	 * City data of a grid of 3x3 cells centred at b1.
+	 *
+	 * @param logFile Name of the run log in the temporary folder
+	 */
+	private CityGMLConverterData newData(String logFile) throws Exception {
+		CityGMLConverterConf conf = new CityGMLConverterConf();
+		conf.logFile = tempDir.resolve(logFile).toString();
+		conf.maxbuild_radius = 1.;
+		conf.maxcheck_radius = 1.;
+		ProjectionPoint b1 = b1Location();
+		UrbanCLMConfiguration uclm = new UrbanCLMConfiguration(POLLAT, POLLON, DLATLON, DLATLON,
+				b1.getY() - DLATLON, b1.getX() - DLATLON, 3, 3, 1, new double[] { -45., 0., 45., 90. },
+				new int[] { 5 }, new double[] { 0., 3., 7., 10., 13. }, false);
+		return new CityGMLConverterData(uclm, conf, sourcePJ(), targetPJ(), new CityGMLConverterStats(conf),
+				new DecimalFormat());
+	}
+
+	private GMLInput copySample() throws Exception {
+		Path folder = Files.createDirectories(tempDir.resolve("input"));
+		try (InputStream in = CityGMLGeometryCacheTest.class.getResourceAsStream(SAMPLE)) {
+			Files.copy(in, folder.resolve(SAMPLE));
+		}
+		return GMLInput.find(folder).get(0);
+	}
+
+	private static void read(CityGMLConverterData data, GMLInput input) throws Exception {
+		StaxBuildingReader reader = new StaxBuildingReader(input.open(), input.toString());
+		while (reader.hasNext()) {
+			data.addBuilding(reader.next());
+		}
+		reader.close();
+	}
+
+	private static String log(CityGMLConverterData data) throws Exception {
+		data.stats.writeLogs();
+		return Files.readString(Path.of(data.conf.logFile));
+	}
+
+	private static List<String> ids(CityGMLConverterData data) {
+		List<String> ids = new ArrayList<>();
+		for (SimpleBuilding building : data.buildings) {
+			ids.add(building.id);
+		}
+		return ids;
+	}
+
+	@Test
+	public void sameLogWithAndWithoutCache() throws Exception {
+		GMLInput input = copySample();
+		CityGMLGeometryCache cache = new CityGMLGeometryCache(input, tempDir.resolve("cache"), true);
+
+		CityGMLConverterData direct = newData("direct.log");
+		read(direct, input);
+		String expected = log(direct);
+		assertEquals(List.of("b1"), ids(direct));
+		assertTrue(expected.contains("b1_wall3"), expected);
+		assertFalse(expected.contains("b2"), expected);
+
+		CityGMLConverterData recording = newData("recording.log");
+		recording.startRecording();
+		read(recording, input);
+		cache.write(recording.stopRecording(), null);
+		assertEquals(expected, log(recording));
+		assertEquals(List.of("b1"), ids(recording));
+
+		CityGMLConverterData cached = newData("cached.log");
+		assertTrue(cache.load(cached));
+		assertEquals(expected, log(cached));
+		assertEquals(List.of("b1"), ids(cached));
+	}
+
+}
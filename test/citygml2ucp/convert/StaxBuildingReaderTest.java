@@ -0,0 +1,177 @@
+package citygml2ucp.convert;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStream;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.vecmath.Point3d;
+
+import org.citygml4j.CityGMLContext;
+import org.citygml4j.model.citygml.CityGML;
+import org.citygml4j.model.citygml.CityGMLClass;
+import org.citygml4j.model.citygml.core.CityModel;
+import org.citygml4j.xml.io.CityGMLInputFactory;
+import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.junit.jupiter.api.Test;
+import org.proj4.PJ;
+
+import citygml2ucp.configuration.UrbanCLMConfiguration;
+import citygml2ucp.convert.CityGMLConverterData.RecordedBuilding;
+import citygml2ucp.convert.CityGMLConverterStats.Diagnostic;
+import citygml2ucp.tools.Polygon3dWithVisibilities;
+import citygml2ucp.tools.SimpleBuilding;
+import citygml2ucp.tools.StaxBuildingReader;
+
+/**
+ * Buildings of a sample CityGML file read with {@link StaxBuildingReader} and
+ * with citygml4j.
+ *
+ * The sample file {@code buildings.gml} covers the cases of both readers: LoD2
+ * boundary surfaces with and without envelope, LoD1 solids, building parts,
+ * polygons which cannot be handled and buildings without walls, roofs or
+ * grounds. The buildings are recorded, so all of them are created independent
+ * of the domain.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class StaxBuildingReaderTest {
+
+	private static final String SAMPLE = "buildings.gml";
+
+	/**
+	 * Buildings and diagnostics of the sample file
+	 */
+	private static class Result {
+		List<SimpleBuilding> buildings;
+		List<Object[]> diagnostics;
+	}
+
+	private static InputStream open() {
+		return StaxBuildingReaderTest.class.getResourceAsStream(SAMPLE);
+	}
+
+	private static CityGMLConverterData newData() throws Exception {
+		CityGMLConverterConf conf = new CityGMLConverterConf();
+		conf.logFile = "run.log";
+		UrbanCLMConfiguration uclm = new UrbanCLMConfiguration(32.5, -170., 0.008, 0.008, -7.972, -1.252, 51, 51, 1,
+				new double[] { -45., 0., 45., 90. }, new int[] { 5 }, new double[] { 0., 3., 7., 10., 13. }, false);
+		// coordinates of the sample file are in EPSG:3068
+		CityGMLConverterData data = new CityGMLConverterData(uclm, conf, new PJ("+init=epsg:3068"),
+				new PJ("+init=epsg:4326 +latlong"), new CityGMLConverterStats(conf), new DecimalFormat());
+		data.startRecording();
+		return data;
+	}
+
+	private static Result stopRecording(CityGMLConverterData data) {
+		Result result = new Result();
+		result.buildings = new ArrayList<>();
+		result.diagnostics = new ArrayList<>();
+		for (RecordedBuilding recorded : data.stopRecording()) {
+			result.buildings.add(recorded.building);
+			result.diagnostics.addAll(recorded.diagnostics);
+		}
+		return result;
+	}
+
+	private static Result readStax() throws Exception {
+		CityGMLConverterData data = newData();
+		StaxBuildingReader reader = new StaxBuildingReader(open(), SAMPLE);
+		while (reader.hasNext()) {
+			data.addBuilding(reader.next());
+		}
+		reader.close();
+		return stopRecording(data);
+	}
+
+	private static Result readCityGML4j() throws Exception {
+		CityGMLConverterData data = newData();
+		CityGMLInputFactory in = CityGMLContext.getInstance().createCityGMLBuilder().createCityGMLInputFactory();
+		InputStream stream = open();
+		CityGMLReader reader = in.createCityGMLReader(SAMPLE, stream);
+		while (reader.hasNext()) {
+			CityGML citygml = reader.nextFeature();
+			if (citygml.getCityGMLClass() == CityGMLClass.CITY_MODEL) {
+				data.addBuildings((CityModel) citygml);
+			}
+		}
+		reader.close();
+		stream.close();
+		return stopRecording(data);
+	}
+
+	/**
+	 * Diagnostics as "kind building surface" for readable differences.
+	 */
+	private static List<String> describe(List<Object[]> diagnostics) {
+		List<String> described = new ArrayList<>();
+		for (Object[] diagnostic : diagnostics) {
+			described.add(diagnostic[0] + " " + diagnostic[1] + " " + diagnostic[2]);
+		}
+		return described;
+	}
+
+	private static double[] vertices(Polygon3dWithVisibilities polygon) {
+		List<Point3d> points = polygon.getPoints();
+		double[] vertices = new double[3 * points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			vertices[3 * i] = points.get(i).x;
+			vertices[3 * i + 1] = points.get(i).y;
+			vertices[3 * i + 2] = points.get(i).z;
+		}
+		return vertices;
+	}
+
+	private static void assertSamePolygons(String name, List<Polygon3dWithVisibilities> expected,
+			List<Polygon3dWithVisibilities> actual) {
+		assertEquals(expected.size(), actual.size(), name);
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).id, actual.get(i).id, name + " " + i);
+			assertArrayEquals(vertices(expected.get(i)), vertices(actual.get(i)), name + " " + i);
+		}
+	}
+
+	private static void assertSameBuilding(SimpleBuilding expected, SimpleBuilding actual) {
+		String id = expected.id;
+		assertEquals(expected.id, actual.id);
+		assertEquals(expected.name, actual.name, id);
+		assertEquals(expected.height, actual.height, id);
+		assertEquals(expected.area, actual.area, id);
+		assertEquals(expected.location, actual.location, id);
+		assertSamePolygons(id + " walls", expected.walls, actual.walls);
+		assertSamePolygons(id + " roofs", expected.roofs, actual.roofs);
+	}
+
+	@Test
+	public void sameBuildingsAsCityGML4j() throws Exception {
+		Result expected = readCityGML4j();
+		Result actual = readStax();
+
+		assertEquals(expected.buildings.size(), actual.buildings.size());
+		for (int i = 0; i < expected.buildings.size(); i++) {
+			assertSameBuilding(expected.buildings.get(i), actual.buildings.get(i));
+		}
+		assertEquals(describe(expected.diagnostics), describe(actual.diagnostics));
+	}
+
+	@Test
+	public void sampleCoversAllDiagnostics() throws Exception {
+		Result result = readStax();
+
+		assertEquals(7, result.buildings.size());
+		assertEquals("Haus Eins", result.buildings.get(0).name);
+		Set<Diagnostic> kinds = EnumSet.noneOf(Diagnostic.class);
+		for (Object[] diagnostic : result.diagnostics) {
+			kinds.add((Diagnostic) diagnostic[0]);
+		}
+		assertEquals(EnumSet.of(Diagnostic.INVALID, Diagnostic.NON_PLANAR, Diagnostic.IGNORED_BUILDING_PART,
+				Diagnostic.NO_WALL, Diagnostic.NO_ROOF, Diagnostic.NO_GROUND), kinds);
+	}
+
+}
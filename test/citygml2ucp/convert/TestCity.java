@@ -0,0 +1,101 @@
+package citygml2ucp.convert;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.vecmath.Point3d;
+
+import citygml2ucp.configuration.UrbanCLMConfiguration;
+import citygml2ucp.tools.Polygon3dWithVisibilities;
+import citygml2ucp.tools.ProgressReporter;
+import citygml2ucp.tools.SimpleBuilding;
+import citygml2ucp.tools.TestWalls;
+
+/**
+ * Regular blocks of box-shaped buildings for tests and benchmarks of the
+ * visibility calculation.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+class TestCity {
+
+	/**
+	 * Width of the buildings and distance of their centres
+	 */
+	static final double WIDTH = 20., SPACING = 40.;
+
+	/**
+	 * Create {@code nSide}² buildings with random heights.
+	 *
+	 * @param nSide Number of buildings in each direction
+	 * @param seed  Seed of the heights
+	 * @return Buildings
+	 */
+	static List<SimpleBuilding> buildings(int nSide, long seed) {
+		Random random = new Random(seed);
+		List<SimpleBuilding> buildings = new ArrayList<>();
+		double a = 0.5 * WIDTH;
+		for (int j = 0; j < nSide; j++) {
+			for (int i = 0; i < nSide; i++) {
+				String id = "b" + j + "_" + i;
+				double x = i * SPACING;
+				double y = j * SPACING;
+				double h = 6. + 24. * random.nextDouble();
+				List<Polygon3dWithVisibilities> walls = new ArrayList<>();
+				walls.add(TestWalls.wall(id + "s", x, y - a, 0., WIDTH, h));
+				walls.add(TestWalls.wall(id + "e", x + a, y, 0.5 * Math.PI, WIDTH, h));
+				walls.add(TestWalls.wall(id + "n", x, y + a, Math.PI, WIDTH, h));
+				walls.add(TestWalls.wall(id + "w", x - a, y, 1.5 * Math.PI, WIDTH, h));
+				List<Polygon3dWithVisibilities> roofs = new ArrayList<>();
+				roofs.add(new Polygon3dWithVisibilities(id + "r", new double[] { x - a, y - a, h, x + a, y - a, h,
+						x + a, y + a, h, x - a, y + a, h, x - a, y - a, h }));
+				buildings.add(new SimpleBuilding(id, id, new Point3d(x, y, 0.), h, WIDTH * WIDTH, roofs, walls, 0, 0));
+			}
+		}
+		return buildings;
+	}
+
+	/**
+	 * Create the data of the city for the visibility calculation.
+	 *
+	 * @param buildings Buildings
+	 * @param metrics   collect metrics?
+	 * @return City data
+	 * @throws Exception
+	 */
+	static CityGMLConverterData data(List<SimpleBuilding> buildings, boolean metrics) throws Exception {
+		CityGMLConverterConf conf = new CityGMLConverterConf();
+		conf.maxbuild_radius = 100.;
+		conf.maxcheck_radius = 100.;
+		conf.saveMemory = false;
+		conf.metrics = metrics;
+		CityGMLConverterData data = new CityGMLConverterData(new UrbanCLMConfiguration(), conf, null, null, null,
+				new DecimalFormat());
+		data.buildings.addAll(buildings);
+		return data;
+	}
+
+	/**
+	 * Calculate the visibilities of all buildings in one chunk.
+	 */
+	static void calcVisibility(CityGMLConverterData data) {
+		ProgressReporter progress = new ProgressReporter("Visibility", data.buildings.size(), "buildings",
+				"wall pairs", 0., false);
+		new CityGMLVisibilityRunnable(data, 0, data.buildings.size(), 0, 1, data.conf, progress).run();
+	}
+
+	/**
+	 * Remove the visibilities of a previous calculation.
+	 */
+	static void clearVisibilities(List<SimpleBuilding> buildings) {
+		for (SimpleBuilding building : buildings) {
+			for (Polygon3dWithVisibilities wall : building.walls) {
+				wall.visibilities.clear();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package citygml2ucp.convert;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import citygml2ucp.tools.SimpleBuilding;
+
+/**
+ * Visibility calculation of a regular city with and without
+ * {@link VisibilityMetrics}.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class VisibilityMetricsBenchmark {
+
+	/**
+	 * Number of buildings in each direction
+	 */
+	@Param({ "10", "20" })
+	int nSide;
+
+	@Param({ "false", "true" })
+	boolean metrics;
+
+	private List<SimpleBuilding> buildings;
+
+	private CityGMLConverterData data;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		buildings = TestCity.buildings(nSide, 1);
+		data = TestCity.data(buildings, metrics);
+	}
+
+	@Setup(Level.Invocation)
+	public void clear() {
+		TestCity.clearVisibilities(buildings);
+	}
+
+	@Benchmark
+	public CityGMLConverterData visibility() {
+		TestCity.calcVisibility(data);
+		return data;
+	}
+
+}
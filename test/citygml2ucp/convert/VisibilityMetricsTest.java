@@ -0,0 +1,64 @@
+package citygml2ucp.convert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import citygml2ucp.tools.Polygon3dWithVisibilities;
+import citygml2ucp.tools.SimpleBuilding;
+
+/**
+ * Counters of {@link VisibilityMetrics} for a regular city.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class VisibilityMetricsTest {
+
+	private static List<List<Polygon3dWithVisibilities>> visibilities(List<SimpleBuilding> buildings) {
+		List<List<Polygon3dWithVisibilities>> visibilities = new ArrayList<>();
+		for (SimpleBuilding building : buildings) {
+			for (Polygon3dWithVisibilities wall : building.walls) {
+				visibilities.add(new ArrayList<>(wall.visibilities));
+			}
+		}
+		return visibilities;
+	}
+
+	@Test
+	public void candidatesArePairsOfBuildings() throws Exception {
+		List<SimpleBuilding> buildings = TestCity.buildings(6, 1);
+		CityGMLConverterData data = TestCity.data(buildings, true);
+		TestCity.calcVisibility(data);
+		VisibilityMetrics.Counters total = data.metrics.getTotal();
+
+		long pairs = 0, wallPairs = 0;
+		for (int i = 0; i < buildings.size(); i++) {
+			for (int j = i + 1; j < buildings.size(); j++) {
+				if (buildings.get(i).location.distance(buildings.get(j).location) <= data.conf.maxbuild_radius) {
+					pairs++;
+					wallPairs += buildings.get(i).walls.size() * buildings.get(j).walls.size();
+				}
+			}
+		}
+		assertEquals(pairs, total.candidateBuildings);
+		assertEquals(wallPairs, total.wallPairs);
+		assertTrue(total.visiblePairs > 0 && total.visiblePairs < wallPairs);
+	}
+
+	@Test
+	public void sameVisibilitiesWithoutMetrics() throws Exception {
+		List<SimpleBuilding> buildings = TestCity.buildings(6, 1);
+		TestCity.calcVisibility(TestCity.data(buildings, true));
+		List<List<Polygon3dWithVisibilities>> expected = visibilities(buildings);
+
+		TestCity.clearVisibilities(buildings);
+		TestCity.calcVisibility(TestCity.data(buildings, false));
+		assertEquals(expected, visibilities(buildings));
+	}
+
+}
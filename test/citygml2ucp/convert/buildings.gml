@@ -0,0 +1,874 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!-- Buildings covering the cases of the building readers, coordinates in EPSG:3068 -->
+<core:CityModel xmlns:core="http://www.opengis.net/citygml/2.0"
+    xmlns:bldg="http://www.opengis.net/citygml/building/2.0"
+    xmlns:gml="http://www.opengis.net/gml">
+ <!-- LoD2 with envelope and two names, one non-planar wall -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b1">
+   <gml:name>Haus</gml:name>
+   <gml:name> Eins</gml:name>
+   <gml:boundedBy>
+    <gml:Envelope srsName="EPSG:3068" srsDimension="3">
+     <gml:lowerCorner>25000 21000 34.5</gml:lowerCorner>
+     <gml:upperCorner>25012 21012 43.5</gml:upperCorner>
+    </gml:Envelope>
+   </gml:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b1_wall1">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21000 34.5 25012 21000 34.5 25012 21000 43.5 25000 21000 43.5 25000 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b1_wall2">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25012 21000 34.5 25012 21010 34.5 25012 21010 43.5 25012 21000 43.5 25012 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b1_wall3">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25012 21010 34.5 25000 21010 34.5 25000 21012 43.5 25012 21010 43.5 25012 21010 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b1_wall4">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21010 34.5 25000 21000 34.5 25000 21000 43.5 25000 21010 43.5 25000 21010 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:RoofSurface gml:id="b1_roof">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21000 43.5 25012 21000 43.5 25012 21010 43.5 25000 21010 43.5 25000 21000 43.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:RoofSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:GroundSurface gml:id="b1_ground">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21000 34.5 25000 21010 34.5 25012 21010 34.5 25012 21000 34.5 25000 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:GroundSurface>
+   </bldg:boundedBy>
+  </bldg:Building>
+ </core:cityObjectMember>
+ <!-- LoD2 without envelope, wall given by positions, degenerate roof polygon, orientable surface -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b2">
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b2_wall1">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21000 34.5 25038 21000 34.5 25038 21000 46.5 25030 21000 46.5 25030 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b2_wall2">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:pos>25038 21000 34.5</gml:pos>
+           <gml:pos>25038 21015 34.5</gml:pos>
+           <gml:pos>25038 21015 46.5</gml:pos>
+           <gml:pos>25038 21000 46.5</gml:pos>
+           <gml:pos>25038 21000 34.5</gml:pos>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b2_wall3">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25038 21015 34.5 25030 21015 34.5 25030 21015 46.5 25038 21015 46.5 25038 21015 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b2_wall4">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:OrientableSurface orientation="-">
+         <gml:baseSurface>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25030 21015 34.5 25030 21015 46.5 25030 21000 46.5 25030 21000 34.5 25030 21015 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:baseSurface>
+        </gml:OrientableSurface>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:RoofSurface gml:id="b2_roof">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21000 46.5 25038 21000 46.5 25038 21015 46.5 25030 21015 46.5 25030 21000 46.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21000 46.5 25034 21000 46.5 25038 21000 46.5 25030 21000 46.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:RoofSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:GroundSurface gml:id="b2_ground">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21000 34.5 25030 21015 34.5 25038 21015 34.5 25038 21000 34.5 25030 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:GroundSurface>
+   </bldg:boundedBy>
+  </bldg:Building>
+ </core:cityObjectMember>
+ <!-- LoD2 with an ignored building part and without ground -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b3">
+   <gml:boundedBy>
+    <gml:Envelope srsName="EPSG:3068" srsDimension="3">
+     <gml:lowerCorner>25060 21000 34.5</gml:lowerCorner>
+     <gml:upperCorner>25075 21010 40.5</gml:upperCorner>
+    </gml:Envelope>
+   </gml:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b3_wall1">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25060 21000 34.5 25070 21000 34.5 25070 21000 40.5 25060 21000 40.5 25060 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b3_wall2">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25070 21000 34.5 25070 21010 34.5 25070 21010 40.5 25070 21000 40.5 25070 21000 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b3_wall3">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25070 21010 34.5 25060 21010 34.5 25060 21010 40.5 25070 21010 40.5 25070 21010 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:WallSurface gml:id="b3_wall4">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25060 21010 34.5 25060 21000 34.5 25060 21000 40.5 25060 21010 40.5 25060 21010 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:WallSurface>
+   </bldg:boundedBy>
+   <bldg:boundedBy>
+    <bldg:RoofSurface gml:id="b3_roof">
+     <bldg:lod2MultiSurface>
+      <gml:MultiSurface>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25060 21000 40.5 25070 21000 40.5 25070 21010 40.5 25060 21010 40.5 25060 21000 40.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:MultiSurface>
+     </bldg:lod2MultiSurface>
+    </bldg:RoofSurface>
+   </bldg:boundedBy>
+   <bldg:consistsOfBuildingPart>
+    <bldg:BuildingPart gml:id="b3_part">
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b3_part_wall1">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25070 21000 34.5 25075 21000 34.5 25075 21000 38.5 25070 21000 38.5 25070 21000 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b3_part_wall2">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25075 21000 34.5 25075 21010 34.5 25075 21010 38.5 25075 21000 38.5 25075 21000 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b3_part_wall3">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25075 21010 34.5 25070 21010 34.5 25070 21010 38.5 25075 21010 38.5 25075 21010 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b3_part_wall4">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25070 21010 34.5 25070 21000 34.5 25070 21000 38.5 25070 21010 38.5 25070 21010 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:RoofSurface gml:id="b3_part_roof">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25070 21000 38.5 25075 21000 38.5 25075 21010 38.5 25070 21010 38.5 25070 21000 38.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:RoofSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:GroundSurface gml:id="b3_part_ground">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25070 21000 34.5 25070 21010 34.5 25075 21010 34.5 25075 21000 34.5 25070 21000 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:GroundSurface>
+     </bldg:boundedBy>
+    </bldg:BuildingPart>
+   </bldg:consistsOfBuildingPart>
+  </bldg:Building>
+ </core:cityObjectMember>
+ <!-- LoD1 solid with a building part -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b4">
+   <gml:boundedBy>
+    <gml:Envelope srsName="EPSG:3068" srsDimension="3">
+     <gml:lowerCorner>25000 21040 34.5</gml:lowerCorner>
+     <gml:upperCorner>25016 21050 49.5</gml:upperCorner>
+    </gml:Envelope>
+   </gml:boundedBy>
+   <bldg:lod1Solid>
+    <gml:Solid>
+     <gml:exterior>
+      <gml:CompositeSurface gml:id="b4_solid">
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21040 34.5 25010 21040 34.5 25010 21040 49.5 25000 21040 49.5 25000 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25010 21040 34.5 25010 21050 34.5 25010 21050 49.5 25010 21040 49.5 25010 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25010 21050 34.5 25000 21050 34.5 25000 21050 49.5 25010 21050 49.5 25010 21050 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21050 34.5 25000 21040 34.5 25000 21040 49.5 25000 21050 49.5 25000 21050 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21040 49.5 25010 21040 49.5 25010 21050 49.5 25000 21050 49.5 25000 21040 49.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25000 21040 34.5 25000 21050 34.5 25010 21050 34.5 25010 21040 34.5 25000 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:CompositeSurface>
+     </gml:exterior>
+    </gml:Solid>
+   </bldg:lod1Solid>
+   <bldg:consistsOfBuildingPart>
+    <bldg:BuildingPart gml:id="b4_part">
+     <bldg:lod1Solid>
+      <gml:Solid>
+       <gml:exterior>
+        <gml:CompositeSurface gml:id="b4_part_solid">
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25010 21040 34.5 25016 21040 34.5 25016 21040 39.5 25010 21040 39.5 25010 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25016 21040 34.5 25016 21050 34.5 25016 21050 39.5 25016 21040 39.5 25016 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25016 21050 34.5 25010 21050 34.5 25010 21050 39.5 25016 21050 39.5 25016 21050 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25010 21050 34.5 25010 21040 34.5 25010 21040 39.5 25010 21050 39.5 25010 21050 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25010 21040 39.5 25016 21040 39.5 25016 21050 39.5 25010 21050 39.5 25010 21040 39.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25010 21040 34.5 25010 21050 34.5 25016 21050 34.5 25016 21040 34.5 25010 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:CompositeSurface>
+       </gml:exterior>
+      </gml:Solid>
+     </bldg:lod1Solid>
+    </bldg:BuildingPart>
+   </bldg:consistsOfBuildingPart>
+  </bldg:Building>
+ </core:cityObjectMember>
+ <!-- LoD1 solid with a degenerate polygon and a building part without solid -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b5">
+   <gml:boundedBy>
+    <gml:Envelope srsName="EPSG:3068" srsDimension="3">
+     <gml:lowerCorner>25030 21040 34.5</gml:lowerCorner>
+     <gml:upperCorner>25040 21050 41.5</gml:upperCorner>
+    </gml:Envelope>
+   </gml:boundedBy>
+   <bldg:lod1Solid>
+    <gml:Solid>
+     <gml:exterior>
+      <gml:CompositeSurface gml:id="b5_solid">
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21040 34.5 25040 21040 34.5 25040 21040 41.5 25030 21040 41.5 25030 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25040 21040 34.5 25040 21050 34.5 25040 21050 41.5 25040 21040 41.5 25040 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25040 21050 34.5 25030 21050 34.5 25030 21050 41.5 25040 21050 41.5 25040 21050 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21050 34.5 25030 21040 34.5 25030 21040 41.5 25030 21050 41.5 25030 21050 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21040 41.5 25040 21040 41.5 25040 21050 41.5 25030 21050 41.5 25030 21040 41.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21040 34.5 25030 21050 34.5 25040 21050 34.5 25040 21040 34.5 25030 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+       <gml:surfaceMember>
+        <gml:Polygon>
+         <gml:exterior>
+          <gml:LinearRing>
+           <gml:posList srsDimension="3">25030 21040 34.5 25035 21040 34.5 25040 21040 34.5 25030 21040 34.5</gml:posList>
+          </gml:LinearRing>
+         </gml:exterior>
+        </gml:Polygon>
+       </gml:surfaceMember>
+      </gml:CompositeSurface>
+     </gml:exterior>
+    </gml:Solid>
+   </bldg:lod1Solid>
+   <bldg:consistsOfBuildingPart>
+    <bldg:BuildingPart gml:id="b5_part">
+     <gml:name>Anbau</gml:name>
+    </bldg:BuildingPart>
+   </bldg:consistsOfBuildingPart>
+  </bldg:Building>
+ </core:cityObjectMember>
+ <!-- only building parts with boundary surfaces, without ground -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b6">
+   <gml:boundedBy>
+    <gml:Envelope srsName="EPSG:3068" srsDimension="3">
+     <gml:lowerCorner>25060 21040 34.5</gml:lowerCorner>
+     <gml:upperCorner>25073 21049 44.5</gml:upperCorner>
+    </gml:Envelope>
+   </gml:boundedBy>
+   <bldg:consistsOfBuildingPart>
+    <bldg:BuildingPart gml:id="b6_part1">
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part1_wall1">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25060 21040 34.5 25069 21040 34.5 25069 21040 44.5 25060 21040 44.5 25060 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part1_wall2">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25069 21040 34.5 25069 21049 34.5 25069 21049 44.5 25069 21040 44.5 25069 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part1_wall3">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25069 21049 34.5 25060 21049 34.5 25060 21049 44.5 25069 21049 44.5 25069 21049 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part1_wall4">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25060 21049 34.5 25060 21040 34.5 25060 21040 44.5 25060 21049 44.5 25060 21049 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:RoofSurface gml:id="b6_part1_roof">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25060 21040 44.5 25069 21040 44.5 25069 21049 44.5 25060 21049 44.5 25060 21040 44.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:RoofSurface>
+     </bldg:boundedBy>
+    </bldg:BuildingPart>
+   </bldg:consistsOfBuildingPart>
+   <bldg:consistsOfBuildingPart>
+    <bldg:BuildingPart gml:id="b6_part2">
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part2_wall1">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25069 21040 34.5 25073 21040 34.5 25073 21040 37.5 25069 21040 37.5 25069 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part2_wall2">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25073 21040 34.5 25073 21049 34.5 25073 21049 37.5 25073 21040 37.5 25073 21040 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part2_wall3">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25073 21049 34.5 25069 21049 34.5 25069 21049 37.5 25073 21049 37.5 25073 21049 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:WallSurface gml:id="b6_part2_wall4">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25069 21049 34.5 25069 21040 34.5 25069 21040 37.5 25069 21049 37.5 25069 21049 34.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:WallSurface>
+     </bldg:boundedBy>
+     <bldg:boundedBy>
+      <bldg:RoofSurface gml:id="b6_part2_roof">
+       <bldg:lod2MultiSurface>
+        <gml:MultiSurface>
+         <gml:surfaceMember>
+          <gml:Polygon>
+           <gml:exterior>
+            <gml:LinearRing>
+             <gml:posList srsDimension="3">25069 21040 37.5 25073 21040 37.5 25073 21049 37.5 25069 21049 37.5 25069 21040 37.5</gml:posList>
+            </gml:LinearRing>
+           </gml:exterior>
+          </gml:Polygon>
+         </gml:surfaceMember>
+        </gml:MultiSurface>
+       </bldg:lod2MultiSurface>
+      </bldg:RoofSurface>
+     </bldg:boundedBy>
+    </bldg:BuildingPart>
+   </bldg:consistsOfBuildingPart>
+  </bldg:Building>
+ </core:cityObjectMember>
+ <!-- no geometry, only an envelope -->
+ <core:cityObjectMember>
+  <bldg:Building gml:id="b7">
+   <gml:name>Ohne Geometrie</gml:name>
+   <gml:boundedBy>
+    <gml:Envelope srsName="EPSG:3068" srsDimension="3">
+     <gml:lowerCorner>25090 21000 34.5</gml:lowerCorner>
+     <gml:upperCorner>25100 21010 42.5</gml:upperCorner>
+    </gml:Envelope>
+   </gml:boundedBy>
+  </bldg:Building>
+ </core:cityObjectMember>
+</core:CityModel>
@@ -0,0 +1,61 @@
+package citygml2ucp.tools;
+
+import java.util.Random;
+
+/**
+ * Vertical rectangular walls for tests and benchmarks.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class TestWalls {
+
+	/**
+	 * Create a vertical rectangular wall standing on the ground.
+	 *
+	 * @param id     ID of the wall
+	 * @param x      x coordinate of the centre of the bottom edge
+	 * @param y      y coordinate of the centre of the bottom edge
+	 * @param angle  Direction of the bottom edge in radians
+	 * @param width  Width
+	 * @param height Height
+	 * @return Wall
+	 */
+	public static Polygon3dWithVisibilities wall(String id, double x, double y, double angle, double width,
+			double height) {
+		double dx = 0.5 * width * Math.cos(angle);
+		double dy = 0.5 * width * Math.sin(angle);
+		return new Polygon3dWithVisibilities(id, new double[] { x - dx, y - dy, 0., x + dx, y + dy, 0., x + dx,
+				y + dy, height, x - dx, y - dy, height, x - dx, y - dy, 0. });
+	}
+
+	/**
+	 * Create a sending wall at the origin which sees {@code n} random walls in
+	 * front of it. Some walls share their distance to test the order of equal
+	 * distances.
+	 *
+	 * @param n    Number of visible walls
+	 * @param seed Seed of the random walls
+	 * @return Sending wall
+	 */
+	public static Polygon3dWithVisibilities sendingWithVisibilities(int n, long seed) {
+		Random random = new Random(seed);
+		Polygon3dWithVisibilities sending = wall("sending", 0., 0., 0.5 * Math.PI, 10., 10.);
+		double[][] walls = new double[n][];
+		for (int i = 0; i < n; i++) {
+			if (i > 0 && random.nextInt(10) == 0) {
+				// mirror an earlier wall at the normal of the sending wall, same
+				// distance, area and angle
+				double[] mirrored = walls[random.nextInt(i)];
+				walls[i] = new double[] { mirrored[0], -mirrored[1], -mirrored[2], mirrored[3], mirrored[4] };
+			} else {
+				walls[i] = new double[] { 5. + 200. * random.nextDouble(), 200. * (random.nextDouble() - 0.5),
+						0.5 * Math.PI + random.nextDouble() - 0.5, 2. + 20. * random.nextDouble(),
+						3. + 30. * random.nextDouble() };
+			}
+			sending.visibilities.add(wall("r" + i, walls[i][0], walls[i][1], walls[i][2], walls[i][3], walls[i][4]));
+		}
+		return sending;
+	}
+
+}
@@ -0,0 +1,93 @@
+package citygml2ucp.tools;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Street width kernel of one sending wall over {@link VisibilityQueue} compared
+ * to the sorted list of {@link Polygon3dVisibility}.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisibilityQueueBenchmark {
+
+	/**
+	 * Number of visible walls
+	 */
+	@Param({ "100", "1000", "10000" })
+	int nReceiving;
+
+	@Param({ "false", "true" })
+	boolean eff;
+
+	private Polygon3dWithVisibilities sending;
+
+	private final VisibilityQueue queue = new VisibilityQueue();
+
+	@Setup
+	public void setup() {
+		sending = TestWalls.sendingWithVisibilities(nReceiving, 1);
+	}
+
+	@Benchmark
+	public double queue() {
+		queue.fill(sending, eff, false);
+		double sumArea = 0;
+		double distance = 0;
+		while (queue.remaining() > 0 && sumArea < sending.getArea()) {
+			int ind = queue.poll();
+			double weight = queue.area[ind];
+			if (eff) {
+				weight *= Math.abs(queue.cosAngle[ind]);
+			}
+			distance += queue.distance[ind] * weight;
+			sumArea += weight;
+		}
+		return distance / sumArea;
+	}
+
+	@Benchmark
+	public double sortedList() {
+		List<Polygon3dVisibility> visibilityList = sending.generateVisibilityList(eff);
+		Collections.sort(visibilityList);
+		double sumArea = 0;
+		double distance = 0;
+		for (int ind = 0; ind < visibilityList.size() && sumArea < sending.getArea(); ind++) {
+			double weight = visibilityList.get(ind).receiving.getArea();
+			if (eff) {
+				weight *= Math.abs(visibilityList.get(ind).getCosAngle());
+			}
+			distance += visibilityList.get(ind).distance * weight;
+			sumArea += weight;
+		}
+		return distance / sumArea;
+	}
+
+	@Benchmark
+	public void fillOnly(Blackhole blackhole) {
+		queue.fill(sending, eff, false);
+		blackhole.consume(queue.remaining());
+	}
+
+}
@@ -0,0 +1,42 @@
+package citygml2ucp.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Equivalence of the order of {@link VisibilityQueue} with the sorted list of
+ * {@link Polygon3dVisibility}.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class VisibilityQueueTest {
+
+	@Test
+	public void sameOrderAsSortedList() {
+		VisibilityQueue queue = new VisibilityQueue();
+		for (boolean eff : new boolean[] { false, true }) {
+			for (int n : new int[] { 1, 2, 17, 100, 1000 }) {
+				Polygon3dWithVisibilities sending = TestWalls.sendingWithVisibilities(n, n);
+				List<Polygon3dVisibility> visibilityList = sending.generateVisibilityList(eff);
+				Collections.sort(visibilityList);
+
+				queue.fill(sending, eff, false);
+				for (Polygon3dVisibility visibility : visibilityList) {
+					int ind = queue.poll();
+					assertSame(visibility.receiving, queue.receiving[ind], "order for n = " + n);
+					assertEquals(visibility.distance, queue.distance[ind]);
+					assertEquals(visibility.receiving.getArea(), queue.area[ind]);
+					assertEquals(visibility.getCosAngle(), queue.cosAngle[ind], 1.e-12);
+				}
+				assertEquals(0, queue.remaining());
+			}
+		}
+	}
+
+}
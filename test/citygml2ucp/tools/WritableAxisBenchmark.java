@@ -0,0 +1,81 @@
+package citygml2ucp.tools;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Index search of {@value #N_ITEMS} random values on a regular axis with the
+ * direct calculation compared to the binary search.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WritableAxisBenchmark {
+
+	private static final int N_ITEMS = 10000;
+
+	/**
+	 * Length of the axis
+	 */
+	@Param({ "100", "1000", "100000" })
+	int size;
+
+	private WritableAxis axis;
+
+	private final double[] items = new double[N_ITEMS];
+
+	@Setup
+	public void setup() {
+		axis = WritableAxisTest.regular(size, -12.345, 0.0275);
+		Random random = new Random(1);
+		for (int i = 0; i < items.length; i++) {
+			items[i] = -12.345 + (size - 1) * 0.0275 * random.nextDouble();
+		}
+	}
+
+	@Benchmark
+	public long searchRegular() {
+		long sum = 0;
+		for (double item : items) {
+			sum += axis.searchRegular(item);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long searchBinary() {
+		long sum = 0;
+		for (double item : items) {
+			sum += axis.searchBinary(item);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long getIndexOf() {
+		long sum = 0;
+		for (double item : items) {
+			sum += axis.getIndexOf(item);
+		}
+		return sum;
+	}
+
+}
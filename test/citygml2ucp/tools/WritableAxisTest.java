@@ -0,0 +1,173 @@
+package citygml2ucp.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The direct index calculation of regular axes in {@link WritableAxis} gives
+ * the same index as the binary search, and {@link WritableAxis#getIndexOf}
+ * finds the nearest axis value.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class WritableAxisTest {
+
+	static WritableAxis regular(int size, double start, double dv) {
+		return new WritableAxis("x", size, "X", "x", "x", "1", start, dv);
+	}
+
+	static WritableAxis regularPeriodic(int size, double start, double dv, double pbc) {
+		return new WritableAxis("x", size, "X", "x", "x", "1", start, dv, pbc);
+	}
+
+	static WritableAxis irregular(double[] values) {
+		return new WritableAxis("x", values.length, "X", "x", "x", "1", values);
+	}
+
+	static WritableAxis irregularPeriodic(double[] values, double pbc) {
+		return new WritableAxis("x", values.length, "X", "x", "x", "1", values, pbc);
+	}
+
+	/**
+	 * Values exactly on the cell bounds and the neighbouring doubles, outside of
+	 * the axis and random values.
+	 */
+	static double[] testValues(WritableAxis axis, int nRandom, long seed) {
+		double[] bounds = axis.getLowerBounds();
+		List<Double> items = new ArrayList<>();
+		for (double bound : bounds) {
+			items.add(bound);
+			items.add(Math.nextDown(bound));
+			items.add(Math.nextUp(bound));
+		}
+		double min = bounds[0];
+		double max = bounds[bounds.length - 1] + (bounds.length > 1 ? bounds[1] - bounds[0] : 1.);
+		double width = max - min;
+		items.add(min - width);
+		items.add(max + width);
+		items.add(Math.nextDown(max));
+		items.add(max);
+		Random random = new Random(seed);
+		for (int i = 0; i < nRandom; i++) {
+			items.add(min - 0.1 * width + 1.2 * width * random.nextDouble());
+		}
+		return items.stream().mapToDouble(Double::doubleValue).toArray();
+	}
+
+	/**
+	 * Index of the last cell whose lower bound is not larger than the value, 0
+	 * below the first cell.
+	 */
+	private static int linearSearch(double[] bounds, double item) {
+		int index = 0;
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] <= item) {
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	private static void assertSameSearch(WritableAxis axis) {
+		double[] bounds = axis.getLowerBounds();
+		for (double item : testValues(axis, 10000, 3)) {
+			int expected = linearSearch(bounds, item);
+			assertEquals(expected, axis.searchBinary(item), "binary search of " + item);
+			if (axis.isRegular()) {
+				assertEquals(expected, axis.searchRegular(item), "regular search of " + item);
+			}
+		}
+	}
+
+	/**
+	 * Index of the nearest axis value, ignoring values in the middle of two axis
+	 * values.
+	 */
+	private static void assertNearest(WritableAxis axis, double pbc, double min, double max) {
+		Random random = new Random(5);
+		int n = axis.getLength();
+		for (int k = 0; k < 10000; k++) {
+			double item = min + (max - min) * random.nextDouble();
+			int nearest = -1;
+			double dNearest = Double.MAX_VALUE;
+			double dSecond = Double.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				double d = Math.abs(item - axis.getValue(i));
+				if (pbc > 0.) {
+					d = Math.min(d, pbc - d);
+				}
+				if (d < dNearest) {
+					dSecond = dNearest;
+					dNearest = d;
+					nearest = i;
+				} else if (d < dSecond) {
+					dSecond = d;
+				}
+			}
+			if (dSecond - dNearest < 1.e-9 * (max - min)) {
+				continue;
+			}
+			assertEquals(nearest, axis.getIndexOf(item), "index of " + item);
+		}
+	}
+
+	@Test
+	public void regularAxis() {
+		WritableAxis axis = regular(500, -12.345, 0.0275);
+		assertSameSearch(axis);
+		assertNearest(axis, 0., -12.345 - 0.0275 / 2., -12.345 + 499.5 * 0.0275);
+		assertThrows(IllegalArgumentException.class, () -> axis.getIndexOf(-13.));
+		assertThrows(IllegalArgumentException.class, () -> axis.getIndexOf(2.));
+	}
+
+	@Test
+	public void regularAxisUnevenSpacing() {
+		// spacing which is not exactly representable, bounds suffer from rounding
+		assertSameSearch(regular(1000, 0.1, 0.1));
+		assertSameSearch(regular(3, -1.e-3, 1. / 3.));
+		assertSameSearch(regular(1, 5., 0.2));
+	}
+
+	@Test
+	public void regularPeriodicAxis() {
+		WritableAxis axis = regularPeriodic(4, -45., 45., 180.);
+		assertSameSearch(axis);
+		assertNearest(axis, 180., -90., 90.);
+		assertEquals(0, axis.getIndexOf(-67.5));
+		assertEquals(3, axis.getIndexOf(Math.nextDown(-67.5)));
+		assertEquals(3, axis.getIndexOf(-90.));
+		assertEquals(3, axis.getIndexOf(90.));
+		assertEquals(0, axis.getIndexOf(112.5));
+
+		WritableAxis longitude = regularPeriodic(360, -179.5, 1., 360.);
+		assertSameSearch(longitude);
+		assertNearest(longitude, 360., -180., 180.);
+	}
+
+	@Test
+	public void irregularAxis() {
+		WritableAxis axis = irregular(new double[] { 0., 3., 7., 10., 13., 19., 25., 30., 38., 45. });
+		assertSameSearch(axis);
+		assertNearest(axis, 0., -1.5, 48.5);
+		assertEquals(1, axis.getIndexOf(1.5));
+		assertEquals(0, axis.getIndexOf(Math.nextDown(1.5)));
+		assertEquals(9, axis.getIndexOf(48.5));
+		assertThrows(IllegalArgumentException.class, () -> axis.getIndexOf(Math.nextUp(48.5)));
+		assertSameSearch(irregular(new double[] { 2. }));
+	}
+
+	@Test
+	public void irregularPeriodicAxis() {
+		WritableAxis axis = irregularPeriodic(new double[] { 0., 30., 100., 200., 300. }, 360.);
+		assertSameSearch(axis);
+		assertNearest(axis, 360., 0., 360.);
+	}
+
+}
@@ -0,0 +1,53 @@
+package citygml2ucp.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Layout of the grid cells of {@link WritableField}.
+ *
+ * @author Sebastian Schubert
+ *
+ */
+public class WritableFieldTest {
+
+	private static final int IE = 7, JE = 5;
+
+	private static List<WritableDimension> latLon() {
+		List<WritableDimension> dimlist = new ArrayList<>();
+		dimlist.add(new WritableAxis("rlat", JE, "rlat", "Y", "grid_latitude", "rotated latitude", "degrees", 0.,
+				0.01));
+		dimlist.add(new WritableAxis("rlon", IE, "rlon", "X", "grid_longitude", "rotated longitude", "degrees", 0.,
+				0.01));
+		return dimlist;
+	}
+
+	@Test
+	public void cellOfFieldWithLeadingDimensions() {
+		List<WritableDimension> dimlist = latLon();
+		dimlist.add(0, new WritableDimension("uclass", 3));
+		WritableFieldDouble field = new WritableFieldDouble("FR_BUILD", dimlist, "", "", "1", "");
+
+		int stride = field.getCellStride();
+		assertEquals(IE * JE, stride);
+		for (int uc = 0; uc < 3; uc++) {
+			field.set(field.getIndex().set(uc, 3, 4), uc + 1.);
+			assertEquals(uc + 1., field.getCellData(3, 4)[field.getCellOffset(3, 4) + uc * stride]);
+		}
+	}
+
+	@Test
+	public void cellOfFieldWithoutLeadingDimensions() {
+		WritableFieldDouble field = new WritableFieldDouble("FR_URB", latLon(), "", "", "1", "");
+
+		field.set(field.getIndex().set(3, 4), 0.5);
+		assertEquals(0.5, field.getCellData(3, 4)[field.getCellOffset(3, 4)]);
+		assertThrows(IllegalStateException.class, field::getCellStride);
+	}
+
+}